@@ -7,19 +7,29 @@ import os
 # Configuration: Define the ranges to test
 TEST_RANGES = [10000, 25000, 50000, 75000, 100000, 250000, 500000, 750000, 1000000]
 
+# Index layouts to compare at every range: "flat" is DBConversion (2 * RANGE tokens),
+# "range_cover" the hierarchical RangeCoverConversion (one token per non-empty node)
+INDEX_MODES = ["flat", "range_cover"]
+
+# Files generated at every range (index_range in queen.cpp). Kept apart from RANGE so that
+# growing the domain does not also grow the data, and the two layouts index the same files.
+FILE_COUNT = 10000
+
 DATA_FILE = "visual/data.json"
 
-def run_benchmark(range_val):
-    print(f"\n>>> Running benchmark for RANGE={range_val}...")
+def run_benchmark(range_val, index_mode="flat"):
+    print(f"\n>>> Running benchmark for RANGE={range_val}, {FILE_COUNT} files ({index_mode} index)...")
     
     # Compilation command with definitions
     compile_cmd = [
         "g++", "queen.cpp", "./FAST/Search.cpp", "./FAST/Update.cpp", 
         "./FAST/Setup.cpp", "./FAST/Utilities.cpp", 
         "-lcryptopp", "-lrocksdb", 
-        f"-DRANGE={range_val}", f"-Dindex_range={range_val}", "-DAUTOMATED_SEARCH",
+        f"-DRANGE={range_val}", f"-Dindex_range={FILE_COUNT}", "-DAUTOMATED_SEARCH",
         "-o", "queen_bench"
     ]
+    if index_mode == "range_cover":
+        compile_cmd.insert(-2, "-DRANGE_COVER")
     
     # 1. Clean up
     subprocess.run(["rm", "-rf", "Sigma_map1", "Server_map2"], check=True)
@@ -44,6 +54,7 @@ def run_benchmark(range_val):
         "search_2_client_s": 0.0,
         "search_2_server_s": 0.0,
         "post_processing_time_s": 0.0,
+        "update_tokens": 0.0,
         "c1": 0.0,
         "c2": 0.0
     }
@@ -67,6 +78,7 @@ def run_benchmark(range_val):
             "update_client_time_s": r"Update Client takes: ([\d.eE+-]+) seconds",
             "update_server_time_s": r"Update Server takes: ([\d.eE+-]+) seconds",
             "post_processing_time_s": r"Post Processing took: ([\d.eE+-]+) seconds",
+            "update_tokens": r"Update tokens: (\d+)",
         }
 
         for key, pattern in patterns.items():
@@ -103,6 +115,8 @@ def run_benchmark(range_val):
     # 4. Average and Construct Data Object
     data = {
         "input_index_range": range_val,
+        "index_mode": index_mode,
+        "file_count": FILE_COUNT,
         "search": {}, # Structure kept for compatibility
         "results": last_results
     }
@@ -131,10 +145,11 @@ def main():
     all_results = []
     
     for range_val in TEST_RANGES:
-        res = run_benchmark(range_val)
-        if res:
-            res["run"] = len(all_results) + 1
-            all_results.append(res)
+        for index_mode in INDEX_MODES:
+            res = run_benchmark(range_val, index_mode)
+            if res:
+                res["run"] = len(all_results) + 1
+                all_results.append(res)
             
     # Save to file
     os.makedirs(os.path.dirname(DATA_FILE), exist_ok=True)
@@ -19,7 +19,10 @@ def export_json_to_csv():
         "Setup",
         "Avg Client search time (s)",
         "Avg Server search time (s)",
-        "Post processing"
+        "Post processing",
+        "Index mode",
+        "Update tokens",
+        "Files"
     ]
 
     with open(OUTPUT_FILE, 'w', newline='') as f:
@@ -36,7 +39,10 @@ def export_json_to_csv():
                 entry.get("setup_time_s", 0),
                 avg_client,
                 avg_server,
-                entry.get("post_processing_time_s", 0)
+                entry.get("post_processing_time_s", 0),
+                entry.get("index_mode", "flat"),
+                entry.get("update_tokens", 0),
+                entry.get("file_count", entry.get("input_index_range", 0))
             ]
             writer.writerow(row)
 
@@ -29,14 +29,17 @@ def generate_latex():
     \centering
     \scriptsize
     \rowcolors{2}{white}{lightgrey}
-    \begin{tabular}{| S[table-format=8.0] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=1.4] |}
+    \begin{tabular}{| S[table-format=8.0] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=1.4] | S[table-format=8.0] |}
         \hline
         \rowcolor{lightgray!50}
-        {\textbf{DB size}} & {\textbf{DBConv (ms)}} & {\textbf{Setup (ms)}} & {\textbf{Avg Cli (ms)}} & {\textbf{Avg Svr (ms)}} & {\textbf{Post (ms)}} \\
+        {\textbf{DB size}} & {\textbf{DBConv (ms)}} & {\textbf{Setup (ms)}} & {\textbf{Avg Cli (ms)}} & {\textbf{Avg Svr (ms)}} & {\textbf{Post (ms)}} & {\textbf{Tokens}} \\
         \hline
 """
     for row in rows:
         db_size = row[0]
+        # Range-cover rows are labelled; older CSVs without the mode column are all flat
+        if len(row) > 6 and row[6] == "range_cover":
+            db_size = "{" + db_size + " (RC)}"
         # Format values to ms with consistent precision
         def clean_val(x):
             try:
@@ -49,8 +52,10 @@ def generate_latex():
         avg_cli = clean_val(row[3])
         avg_svr = clean_val(row[4])
         post = clean_val(row[5])
+        # Update tokens; left empty for older CSVs without the column
+        tokens = "{:.0f}".format(float(row[7])) if len(row) > 7 and row[7] else "{}"
         
-        latex_content += fr"        {db_size} & {db_conv} & {setup} & {avg_cli} & {avg_svr} & {post} \\ \hline"
+        latex_content += fr"        {db_size} & {db_conv} & {setup} & {avg_cli} & {avg_svr} & {post} & {tokens} \\ \hline"
         latex_content += "\n"
 
     latex_content += r"""    \end{tabular}
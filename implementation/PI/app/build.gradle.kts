@@ -42,13 +42,20 @@ android {
         viewBinding = true
         buildConfig = true
     }
+    testOptions {
+        // JVM unit tests run against the stub android.jar; logging there is a no-op
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.constraintlayout)
+    implementation(libs.recyclerview)
     testImplementation(libs.junit)
+    // The real org.json for JVM tests; android.jar only has stubs of it
+    testImplementation(libs.json)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 }
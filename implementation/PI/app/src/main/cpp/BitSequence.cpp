@@ -6,6 +6,7 @@
 #include <cstdint>
 #include <stdexcept>
 #include <limits>
+#include <utility>
 
 /**
  * @brief Unified BitSequence class that supports both "First K" and "Range [A, B]" initializations.
@@ -117,6 +118,35 @@ public:
         std::cout << std::endl;
     }
 
+    /**
+     * @brief Maximal runs of set bits as half-open [start, end) pairs, in ascending order.
+     * Blocks that are all zeros or all ones are skipped whole; inside a mixed block each
+     * run boundary is found with one count-trailing-zeros instead of testing every bit.
+     */
+    std::vector<std::pair<size_t, size_t>> set_runs() const {
+        std::vector<std::pair<size_t, size_t>> runs;
+        bool in_run = false;
+        size_t run_start = 0;
+        for (size_t b = 0; b < blocks.size(); ++b) {
+            T block = blocks[b];
+            if (block == (in_run ? std::numeric_limits<T>::max() : static_cast<T>(0))) continue;
+
+            // Find the next bit that flips the current state, starting at pos
+            size_t pos = 0;
+            while (pos < BITS_PER_BLOCK) {
+                T flips = (in_run ? ~block : block) & (~static_cast<T>(0) << pos);
+                if (flips == 0) break;
+                pos = __builtin_ctzll(static_cast<unsigned long long>(flips));
+                size_t bit = b * BITS_PER_BLOCK + pos;
+                if (in_run) runs.emplace_back(run_start, bit);
+                else run_start = bit;
+                in_run = !in_run;
+            }
+        }
+        if (in_run) runs.emplace_back(run_start, total_bits);
+        return runs;
+    }
+
     const std::vector<T>& get_blocks() const { return blocks; }
     size_t num_blocks() const { return blocks.size(); }
     size_t size() const { return total_bits; }
@@ -22,6 +22,9 @@
 
 #include <rocksdb/db.h>
 #include <rocksdb/options.h>
+#include <rocksdb/write_batch.h>
+#include <unordered_map>
+#include <memory>
 
 //#include <rocksdb/iterator.h>                                               // to iterate the db over the keys
 
@@ -36,6 +39,20 @@ void decryptAES(const SecByteBlock &key, const string &ciphertext, string &plain
 void encryptFile(const SecByteBlock &key, const string &inputPath, const string &outputPath);
 void decryptFile(const SecByteBlock &key, const string &inputPath, const string &outputPath);
 
+// Incremental form of decryptFile: ciphertext is pushed in chunks as it arrives and only the
+// plaintext is written to outputPath. Finish() flushes the last block and checks the padding.
+class FileDecryptStream
+{
+    public:
+        FileDecryptStream(const SecByteBlock &key, const string &outputPath);
+        void Put(const CryptoPP::byte *data, size_t length);
+        void Finish();
+
+    private:
+        CBC_Mode<AES>::Decryption decryptor;
+        unique_ptr<StreamTransformationFilter> filter;
+};
+
 string SecByteBlockToString(const SecByteBlock& block);
 SecByteBlock StringToSecByteBlock(const string& str); 
 
@@ -57,6 +74,10 @@ class DSSE
 
         SecByteBlock secret_key;
 
+        // Staged Sigma (map1) state while a client batch is open: keyword -> st||c
+        bool batching = false;
+        unordered_map<string, string> pending_state;
+
     public:
         struct SetupResult 
         {
@@ -92,6 +113,21 @@ class DSSE
         void Setup(const string &storage_path = "");                                                                       // Declaration of function for Setup Algorithm
 
         void Update_client(const string &ind, const string &keyword, const bool op, tuple<string, string> &u_token);     
+
+        // Same derivation as Update_client, but reads and writes Sigma state through staged_state
+        // (falling back to map1 for reads). Safe to call from several threads as long as each
+        // thread owns its staged_state and no keyword is handled by two threads at once.
+        void Update_client_staged(const string &ind, const string &keyword, const bool op,
+                                  unordered_map<string, string> &staged_state, tuple<string, string> &u_token);
+
+        // Client batches keep Update_client state changes in memory until they are committed,
+        // so a caller can persist the generated tokens first and only then advance Sigma.
+        void Begin_client_batch();
+        bool Commit_client_batch(const string &marker_key = "", const string &marker_value = "");       // Writes all staged state (and an optional marker) in one RocksDB WriteBatch
+        bool Read_client_marker(const string &marker_key, string &marker_value);                        // Reads a marker written by Commit_client_batch
+        bool Erase_client_marker(const string &marker_key);                                             // Removes a marker once nothing needs it any more
+        void Discard_client_batch();                                                                    // Drops staged state; Sigma stays where it was
+        void Merge_client_batch(unordered_map<string, string> &staged_state);                           // Adds state staged by worker threads to the open batch
         
         void Search_client(const string &keyword, tuple<string, string, int> &s_token); // Declaration of function for Search protocol
 };
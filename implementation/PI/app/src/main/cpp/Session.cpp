@@ -0,0 +1,75 @@
+#include <condition_variable>
+#include <mutex>
+#include "Session.h"
+
+// Registry of open sessions. Explicit handles hold strong references; the by-path map only
+// holds weak ones, so a session without handles closes as soon as its last call returns.
+// A path whose session is still closing stays in sessions_by_path (expired) until its
+// RocksDB lock is released, and openers wait for that before opening it again.
+static mutex registry_mutex;
+static condition_variable session_closed;
+static unordered_map<string, weak_ptr<DSSESession>> sessions_by_path;
+static unordered_map<int64_t, shared_ptr<DSSESession>> sessions_by_handle;
+static int64_t next_handle = 1;
+
+static void close_session(DSSESession *closing)
+{
+    string storage_path = closing->storage_path;
+    delete closing;                                                                         // ~DSSE closes Sigma_map1
+
+    lock_guard<mutex> guard(registry_mutex);
+    auto entry = sessions_by_path.find(storage_path);
+    if(entry != sessions_by_path.end() && entry->second.expired()) sessions_by_path.erase(entry);
+    session_closed.notify_all();
+}
+
+shared_ptr<DSSESession> Session_for_path(const string &storage_path)
+{
+    unique_lock<mutex> guard(registry_mutex);
+
+    while(true)
+    {
+        auto found = sessions_by_path.find(storage_path);
+        if(found == sessions_by_path.end()) break;
+        shared_ptr<DSSESession> session = found->second.lock();
+        if(session) return session;
+        session_closed.wait(guard);                                                         // Previous session for this path is still closing
+    }
+
+    shared_ptr<DSSESession> session(new DSSESession(), close_session);
+    session->storage_path = storage_path;
+    session->dsse.Setup(storage_path);
+    sessions_by_path[storage_path] = session;
+    return session;
+}
+
+int64_t Session_open(const string &storage_path)
+{
+    shared_ptr<DSSESession> session = Session_for_path(storage_path);
+    if(!session->dsse.Data.map1) return 0;                                                  // Sigma_map1 could not be opened
+
+    lock_guard<mutex> guard(registry_mutex);
+    int64_t handle = next_handle++;
+    sessions_by_handle[handle] = std::move(session);
+    return handle;
+}
+
+shared_ptr<DSSESession> Session_get(int64_t handle)
+{
+    lock_guard<mutex> guard(registry_mutex);
+    auto found = sessions_by_handle.find(handle);
+    return found != sessions_by_handle.end() ? found->second : nullptr;
+}
+
+bool Session_close(int64_t handle)
+{
+    shared_ptr<DSSESession> closing;
+    {
+        lock_guard<mutex> guard(registry_mutex);
+        auto found = sessions_by_handle.find(handle);
+        if(found == sessions_by_handle.end()) return false;
+        closing = std::move(found->second);
+        sessions_by_handle.erase(found);
+    }
+    return true;                                                                            // Closes here unless a call still uses it
+}
@@ -0,0 +1,25 @@
+#ifndef DSSE_SESSION
+#define DSSE_SESSION
+
+#include <cstdint>
+#include <memory>
+#include <mutex>
+#include <shared_mutex>
+#include "FAST.h"
+
+// An open DSSE client for one space: master key loaded and Sigma_map1 kept open across JNI
+// calls. Searches and file decryption take `lock` shared, update batches take it exclusively.
+// There is at most one session per storage path, since RocksDB allows a single opener.
+struct DSSESession
+{
+    string storage_path;
+    DSSE dsse;
+    shared_mutex lock;
+};
+
+shared_ptr<DSSESession> Session_for_path(const string &storage_path);                   // Open session for the path, opening one if needed
+int64_t Session_open(const string &storage_path);                                       // Handle keeping the session open until Session_close; 0 on failure
+shared_ptr<DSSESession> Session_get(int64_t handle);                                    // nullptr for unknown or closed handles
+bool Session_close(int64_t handle);
+
+#endif
@@ -1,6 +1,22 @@
 #include "FAST.h"
 
 void DSSE::Update_client(const string &ind, const string &keyword, const bool op, tuple<string, string> &u_token)
+{
+    if(this->batching)
+    {
+        Update_client_staged(ind, keyword, op, this->pending_state, u_token);
+        return;
+    }
+
+    unordered_map<string, string> staged_state;
+    Update_client_staged(ind, keyword, op, staged_state, u_token);
+
+    const string &state = staged_state[keyword];
+    Store_tupple_DB(this->Data.map1, keyword, state.substr(0, 16), std::stoi(state.substr(16)));
+}
+
+void DSSE::Update_client_staged(const string &ind, const string &keyword, const bool op,
+                                unordered_map<string, string> &staged_state, tuple<string, string> &u_token)
 {
     // Client Side
     string t_keyword;
@@ -11,7 +27,17 @@ void DSSE::Update_client(const string &ind, const string &keyword, const bool op
     int c = 0;
     int decision = 0;
 
-    decision = Retrive_tupple_DB(this->Data.map1, keyword, st_c, c);                                   // Retrieveing the value stored (st, c) corresponding to the "keyword" in the database map1 if exists
+    auto staged = staged_state.find(keyword);
+    if(staged != staged_state.end())
+    {
+        st_c = staged->second.substr(0, 16);                                                            // Same st||c layout as Store_tupple_DB
+        c = std::stoi(staged->second.substr(16));
+        decision = 1;
+    }
+    else
+    {
+        decision = Retrive_tupple_DB(this->Data.map1, keyword, st_c, c);                               // Retrieveing the value stored (st, c) corresponding to the "keyword" in the database map1 if exists
+    }
     if(decision == 0)
     {
         st_c = generate128BitString();
@@ -25,7 +51,7 @@ void DSSE::Update_client(const string &ind, const string &keyword, const bool op
     
     c = c + 1;
 
-    Store_tupple_DB(this->Data.map1, keyword, st_c_plus_1, c);
+    staged_state[keyword] = st_c_plus_1 + to_string(c);
 
     // display_map(map1, f2);                                                                // Looking all the stored key pairs
 
@@ -40,4 +66,69 @@ void DSSE::Update_client(const string &ind, const string &keyword, const bool op
     get<0>(u_token) = sha256(temp1);                                                        // u
     get<1>(u_token) = xorStrings(temp2, hashSHAKE(temp1,32));                               // e
     
-}
\ No newline at end of file
+}
+
+void DSSE::Begin_client_batch()
+{
+    this->pending_state.clear();
+    this->batching = true;
+}
+
+bool DSSE::Commit_client_batch(const string &marker_key, const string &marker_value)
+{
+    this->batching = false;
+    if(this->pending_state.empty() && marker_key.empty()) return true;
+    if(!this->Data.map1)
+    {
+        cerr << "Error: Database is not initialised !" << endl;
+        return false;
+    }
+
+    rocksdb::WriteBatch batch;
+    for(const auto &entry : this->pending_state)
+    {
+        batch.Put(entry.first, entry.second);
+    }
+    if(!marker_key.empty())
+    {
+        batch.Put(marker_key, marker_value);                                                            // Lands atomically with the state it describes
+    }
+    this->pending_state.clear();
+
+    rocksdb::Status status = this->Data.map1->Write(rocksdb::WriteOptions(), &batch);
+    if(!status.ok())
+    {
+        std::cerr << "Error committing client batch to RocksDB: " << status.ToString() << std::endl;
+        return false;
+    }
+    return true;
+}
+
+bool DSSE::Read_client_marker(const string &marker_key, string &marker_value)
+{
+    if(!this->Data.map1) return false;
+    rocksdb::Status status = this->Data.map1->Get(rocksdb::ReadOptions(), marker_key, &marker_value);
+    return status.ok();
+}
+
+bool DSSE::Erase_client_marker(const string &marker_key)
+{
+    if(!this->Data.map1) return false;
+    rocksdb::Status status = this->Data.map1->Delete(rocksdb::WriteOptions(), marker_key);
+    return status.ok();
+}
+
+void DSSE::Merge_client_batch(unordered_map<string, string> &staged_state)
+{
+    for(auto &entry : staged_state)
+    {
+        this->pending_state[entry.first] = std::move(entry.second);
+    }
+    staged_state.clear();
+}
+
+void DSSE::Discard_client_batch()
+{
+    this->batching = false;
+    this->pending_state.clear();
+}
@@ -86,6 +86,23 @@ void decryptFile(const SecByteBlock &key, const string &inputPath, const string
     FileSource(inputPath.c_str(), true, new StreamTransformationFilter(decryptor, new FileSink(outputPath.c_str())));
 }
 
+FileDecryptStream::FileDecryptStream(const SecByteBlock &key, const string &outputPath)
+{
+    CryptoPP::byte iv[AES::BLOCKSIZE] = {0};
+    decryptor.SetKeyWithIV(key, key.size(), iv);
+    filter.reset(new StreamTransformationFilter(decryptor, new FileSink(outputPath.c_str())));
+}
+
+void FileDecryptStream::Put(const CryptoPP::byte *data, size_t length)
+{
+    filter->Put(data, length);
+}
+
+void FileDecryptStream::Finish()
+{
+    filter->MessageEnd();
+}
+
 string SecByteBlockToString(const SecByteBlock& block) 
 {
     string result;
@@ -2,10 +2,14 @@
 #include <string>
 #include <vector>
 #include <tuple>
+#include <utility>
 #include <algorithm>
+#include <functional>
+#include <thread>
 #include <android/log.h>
 #include <cryptopp/base64.h>
 #include "FAST.h"
+#include "Session.h"
 
 #define LOG_TAG "PI_NATIVE"
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
@@ -44,10 +48,24 @@ Java_com_example_pi_MainActivity_initializeNative(
     // For now, let's just make everything explicit.
 }
 
-// Forward declarations from queen.cpp
-std::vector<std::tuple<std::string, std::string>> queen_process(std::vector<std::tuple<std::string, int>> &inp, const std::string &storage_path, std::vector<std::string> &encrypted_paths);
-std::tuple<std::string, std::string, int> queen_search_client(std::string keyword, const std::string &storage_path);
-std::vector<int> queen_post_process(int index_range, std::string res1_0, std::string res1_1, std::string res2_0, std::string res2_1);
+// Forward declarations from queen.cpp (and v2.cpp, which it includes)
+int domainFor(const std::vector<std::tuple<std::string, int>> &inp);
+long long tokenCount(std::vector<int> keywords, int range, bool range_cover);
+std::vector<std::tuple<std::string, std::string>> queen_process(std::vector<std::tuple<std::string, int>> &inp, int range, bool range_cover, const std::string &storage_path,
+                                                                std::vector<std::string> &encrypted_paths, unsigned threads);
+bool queen_process_streaming(std::vector<std::tuple<std::string, int>> &inp, int range, bool range_cover, const std::string &storage_path,
+                             bool encrypt_files, std::vector<std::string> &encrypted_paths, size_t chunk_size, size_t skip_tokens,
+                             unsigned threads, const std::function<bool(std::vector<std::string> &)> &on_encrypted,
+                             const std::function<bool(std::vector<std::tuple<std::string, std::string>> &)> &on_chunk);
+size_t queen_committed_tokens(const std::string &storage_path);
+bool queen_clear_committed_tokens(const std::string &storage_path);
+std::tuple<std::string, std::string, int> queen_search_client(DSSESession &session, const std::string &keyword);
+std::vector<std::tuple<std::string, std::string, int>> queen_search_client_batch(DSSESession &session, const std::vector<std::string> &keywords);
+std::vector<std::tuple<std::string, std::string, int>> queen_range_cover_tokens(DSSESession &session, const std::vector<long long> &bounds, int range);
+void queen_decrypt_file(DSSESession &session, const std::string &encrypted_path, const std::string &decrypted_path);
+FileDecryptStream *queen_open_decrypt_stream(DSSESession &session, const std::string &decrypted_path);
+std::vector<std::pair<size_t, size_t>> queen_post_process(int index_range, std::string res1_0, std::string res1_1, std::string res2_0, std::string res2_1);
+std::vector<std::pair<size_t, size_t>> queen_range_cover_post_process(const std::string &low_end, const std::string &high_end);
 
 extern "C" JNIEXPORT jstring JNICALL
 Java_com_example_pi_MainActivity_stringFromJNI(
@@ -57,18 +75,8 @@ Java_com_example_pi_MainActivity_stringFromJNI(
     return env->NewStringUTF(hello.c_str());
 }
 
-extern "C" JNIEXPORT jobjectArray JNICALL
-Java_com_example_pi_UpdateActivity_generateTokens(
-        JNIEnv* env,
-        jobject /* this */,
-        jstring storagePath,
-        jobjectArray filePaths,
-        jintArray keywords) {
-    
-    const char* storageChars = env->GetStringUTFChars(storagePath, nullptr);
-    std::string sPath(storageChars);
-    env->ReleaseStringUTFChars(storagePath, storageChars);
-
+// Helper to collect (file path, keyword) pairs from the Java update arrays
+static std::vector<std::tuple<std::string, int>> readUpdateInput(JNIEnv* env, jobjectArray filePaths, jintArray keywords) {
     int len = env->GetArrayLength(filePaths);
     jint* keywordsPtr = env->GetIntArrayElements(keywords, nullptr);
     
@@ -84,10 +92,41 @@ Java_com_example_pi_UpdateActivity_generateTokens(
     }
     
     env->ReleaseIntArrayElements(keywords, keywordsPtr, JNI_ABORT);
+    return input;
+}
+
+// Helper to turn a list of paths into a Java String[]
+static jobjectArray toJavaStringArray(JNIEnv* env, const std::vector<std::string>& values) {
+    jclass stringClass = env->FindClass("java/lang/String");
+    jobjectArray array = env->NewObjectArray(values.size(), stringClass, nullptr);
+    for (size_t i = 0; i < values.size(); i++) {
+        jstring str = env->NewStringUTF(values[i].c_str());
+        env->SetObjectArrayElement(array, i, str);
+        env->DeleteLocalRef(str);
+    }
+    return array;
+}
+
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_pi_UpdateActivity_generateTokens(
+        JNIEnv* env,
+        jobject /* this */,
+        jstring storagePath,
+        jobjectArray filePaths,
+        jintArray keywords,
+        jint domain,
+        jboolean rangeCover) {
+    
+    const char* storageChars = env->GetStringUTFChars(storagePath, nullptr);
+    std::string sPath(storageChars);
+    env->ReleaseStringUTFChars(storagePath, storageChars);
+
+    std::vector<std::tuple<std::string, int>> input = readUpdateInput(env, filePaths, keywords);
     
     // Call the redirection logic in queen.cpp to get (u, e) tokens
     std::vector<std::string> encrypted_paths;
-    auto result = queen_process(input, sPath, encrypted_paths);
+    auto result = queen_process(input, domain > 0 ? (int)domain : domainFor(input), rangeCover == JNI_TRUE, sPath, encrypted_paths,
+                                std::thread::hardware_concurrency());
     
     LOGI("Token generation complete. Result size: %zu, Files: %zu", result.size(), encrypted_paths.size());
     
@@ -97,7 +136,7 @@ Java_com_example_pi_UpdateActivity_generateTokens(
     
     // Fill tokens - WE MUST CAREFULLY MANAGE LOCAL REFERENCES HERE
     // Android JNI local ref table has a small limit (often 512).
-    // We are generating 400k tokens, so we MUST use DeleteLocalRef.
+    // A flat index has 2 * domain tokens (400k strings for a domain of 100000), so we MUST use DeleteLocalRef.
     for (size_t i = 0; i < result.size(); i++) {
         std::string u_b64 = toBase64(std::get<0>(result[i]));
         std::string e_b64 = toBase64(std::get<1>(result[i]));
@@ -124,52 +163,162 @@ Java_com_example_pi_UpdateActivity_generateTokens(
     return combinedArray;
 }
 
-extern "C" JNIEXPORT jboolean JNICALL
-Java_com_example_pi_SearchActivity_decryptResultFile(
+// Streaming export: tokens are handed to sink.onTokenChunk(byte[], int) in chunks of chunkSize
+// while they are generated, so neither side ever holds the full token list (2 * domain tokens
+// for a flat index, one per non-empty node with rangeCover). Each record is the raw 32-byte u
+// followed by the raw 32-byte e. skipTokens resumes an interrupted run: that many leading
+// tokens were already delivered and committed. A domain of 0 or less is derived from the
+// largest keyword. Unless encryptFiles is false (an interrupted run already encrypted them),
+// the files are encrypted first and their paths handed to sink.onFilesEncrypted(String[]).
+// Returns the encrypted file paths (empty if none were encrypted), or null if the sink threw
+// (the exception is rethrown in Java) or a keyword lies outside the domain.
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_pi_UpdateActivity_streamTokens(
         JNIEnv* env,
         jobject /* this */,
         jstring storagePath,
-        jstring encryptedPath,
-        jstring decryptedPath) {
-    
+        jobjectArray filePaths,
+        jintArray keywords,
+        jint domain,
+        jboolean rangeCover,
+        jboolean encryptFiles,
+        jint chunkSize,
+        jint skipTokens,
+        jint threads,
+        jobject sink) {
+
     const char* storageChars = env->GetStringUTFChars(storagePath, nullptr);
     std::string sPath(storageChars);
     env->ReleaseStringUTFChars(storagePath, storageChars);
 
-    const char* encPathChars = env->GetStringUTFChars(encryptedPath, nullptr);
-    const char* decPathChars = env->GetStringUTFChars(decryptedPath, nullptr);
-    
-    try {
-        DSSE FAST_;
-        FAST_.Setup(sPath);
-        SecByteBlock key = FAST_.Get_Client_sk();
-        
-        decryptFile(key, std::string(encPathChars), std::string(decPathChars));
-        
-        env->ReleaseStringUTFChars(encryptedPath, encPathChars);
-        env->ReleaseStringUTFChars(decryptedPath, decPathChars);
-        return JNI_TRUE;
-    } catch (const std::exception& e) {
-        LOGI("Decryption error: %s", e.what());
-        env->ReleaseStringUTFChars(encryptedPath, encPathChars);
-        env->ReleaseStringUTFChars(decryptedPath, decPathChars);
-        return JNI_FALSE;
-    }
+    std::vector<std::tuple<std::string, int>> input = readUpdateInput(env, filePaths, keywords);
+
+    jclass sinkClass = env->GetObjectClass(sink);
+    jmethodID onTokenChunk = env->GetMethodID(sinkClass, "onTokenChunk", "([BI)V");
+    jmethodID onFilesEncrypted = env->GetMethodID(sinkClass, "onFilesEncrypted", "([Ljava/lang/String;)V");
+    env->DeleteLocalRef(sinkClass);
+    if (onTokenChunk == nullptr || onFilesEncrypted == nullptr) return nullptr;
+
+    const size_t recordSize = 64; // 32-byte u || 32-byte e
+    std::string records;
+    std::vector<std::string> encrypted_paths;
+
+    int range = domain > 0 ? (int)domain : domainFor(input);
+    bool completed = queen_process_streaming(input, range, rangeCover == JNI_TRUE, sPath, encryptFiles == JNI_TRUE,
+        encrypted_paths, chunkSize > 0 ? (size_t)chunkSize : 0, skipTokens > 0 ? (size_t)skipTokens : 0,
+        threads > 0 ? (unsigned)threads : 1,
+        [&](std::vector<std::string> &paths) {
+            jobjectArray pathArray = toJavaStringArray(env, paths);
+            if (pathArray == nullptr) return false;
+            env->CallVoidMethod(sink, onFilesEncrypted, pathArray);
+            env->DeleteLocalRef(pathArray);
+            return !env->ExceptionCheck();
+        },
+        [&](std::vector<std::tuple<std::string, std::string>> &chunk) {
+            records.clear();
+            records.reserve(chunk.size() * recordSize);
+            for (const auto& token : chunk) {
+                records.append(std::get<0>(token));
+                records.append(std::get<1>(token));
+            }
+
+            jbyteArray chunkArray = env->NewByteArray(records.size());
+            if (chunkArray == nullptr) return false; // OutOfMemoryError pending
+            env->SetByteArrayRegion(chunkArray, 0, records.size(), reinterpret_cast<const jbyte*>(records.data()));
+            env->CallVoidMethod(sink, onTokenChunk, chunkArray, (jint)chunk.size());
+            env->DeleteLocalRef(chunkArray);
+
+            // Stop generating as soon as the Java side throws, e.g. because an upload failed
+            return !env->ExceptionCheck();
+        });
+
+    if (!completed) return nullptr;
+
+    LOGI("Token streaming complete. Files: %zu", encrypted_paths.size());
+    return toJavaStringArray(env, encrypted_paths);
 }
 
-extern "C" JNIEXPORT jobjectArray JNICALL
-Java_com_example_pi_SearchActivity_getSearchToken(
+extern "C" JNIEXPORT jint JNICALL
+Java_com_example_pi_UpdateActivity_getCommittedTokenCount(
         JNIEnv* env,
         jobject /* this */,
-        jstring storagePath,
-        jstring keyword) {
-    
+        jstring storagePath) {
+
     const char* storageChars = env->GetStringUTFChars(storagePath, nullptr);
     std::string sPath(storageChars);
     env->ReleaseStringUTFChars(storagePath, storageChars);
 
+    return (jint) queen_committed_tokens(sPath);
+}
+
+// Drops the committed-token count of a finished generation; see queen_clear_committed_tokens
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_pi_UpdateActivity_clearCommittedTokenCount(
+        JNIEnv* env,
+        jobject /* this */,
+        jstring storagePath) {
+
+    const char* storageChars = env->GetStringUTFChars(storagePath, nullptr);
+    std::string sPath(storageChars);
+    env->ReleaseStringUTFChars(storagePath, storageChars);
+
+    return queen_clear_committed_tokens(sPath) ? JNI_TRUE : JNI_FALSE;
+}
+
+// Tokens an update of these keywords derives, for progress reporting; see tokenCount
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_pi_UpdateActivity_countTokens(
+        JNIEnv* env,
+        jobject /* this */,
+        jintArray keywords,
+        jint domain,
+        jboolean rangeCover) {
+
+    jsize count = env->GetArrayLength(keywords);
+    std::vector<int> values(count);
+    if (count > 0) env->GetIntArrayRegion(keywords, 0, count, reinterpret_cast<jint*>(values.data()));
+
+    int range = domain;
+    if (range <= 0) {
+        range = 1;
+        for (int value : values) range = std::max(range, value + 1);
+    }
+    return (jlong) tokenCount(values, range, rangeCover == JNI_TRUE);
+}
+
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_pi_DsseSession_openSession(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jstring storagePath) {
+
+    const char* storageChars = env->GetStringUTFChars(storagePath, nullptr);
+    std::string sPath(storageChars);
+    env->ReleaseStringUTFChars(storagePath, storageChars);
+
+    return (jlong) Session_open(sPath);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_pi_DsseSession_closeSession(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong handle) {
+    Session_close(handle);
+}
+
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_pi_DsseSession_getSearchToken(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong handle,
+        jstring keyword) {
+
+    std::shared_ptr<DSSESession> session = Session_get(handle);
+    if (!session) return nullptr;
+
     const char* keywordChars = env->GetStringUTFChars(keyword, nullptr);
-    auto result = queen_search_client(std::string(keywordChars), sPath);
+    auto result = queen_search_client(*session, std::string(keywordChars));
     env->ReleaseStringUTFChars(keyword, keywordChars);
     
     jclass stringClass = env->FindClass("java/lang/String");
@@ -185,6 +334,170 @@ Java_com_example_pi_SearchActivity_getSearchToken(
     return tokenArray;
 }
 
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_pi_DsseSession_getSearchTokens(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong handle,
+        jobjectArray keywords) {
+
+    std::shared_ptr<DSSESession> session = Session_get(handle);
+    if (!session) return nullptr;
+
+    jsize count = env->GetArrayLength(keywords);
+    std::vector<std::string> keywordList;
+    keywordList.reserve(count);
+    for (jsize i = 0; i < count; i++) {
+        jstring keyword = (jstring) env->GetObjectArrayElement(keywords, i);
+        const char* keywordChars = env->GetStringUTFChars(keyword, nullptr);
+        keywordList.emplace_back(keywordChars);
+        env->ReleaseStringUTFChars(keyword, keywordChars);
+        env->DeleteLocalRef(keyword);
+    }
+
+    auto results = queen_search_client_batch(*session, keywordList);
+
+    // Flattened (t_keyword, st_c, c) triples in keyword order
+    std::vector<std::string> flattened;
+    flattened.reserve(results.size() * 3);
+    for (const auto& result : results) {
+        flattened.push_back(toBase64(std::get<0>(result)));
+        flattened.push_back(toBase64(std::get<1>(result)));
+        flattened.push_back(std::to_string(std::get<2>(result)));
+    }
+    return toJavaStringArray(env, flattened);
+}
+
+// Range-cover search tokens for the given bounds, flattened as in getSearchTokens
+extern "C" JNIEXPORT jobjectArray JNICALL
+Java_com_example_pi_DsseSession_getRangeCoverTokens(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong handle,
+        jlongArray bounds,
+        jint domain) {
+
+    std::shared_ptr<DSSESession> session = Session_get(handle);
+    if (!session) return nullptr;
+
+    jsize count = env->GetArrayLength(bounds);
+    std::vector<long long> boundList(count);
+    std::vector<jlong> boundValues(count);
+    env->GetLongArrayRegion(bounds, 0, count, boundValues.data());
+    for (jsize i = 0; i < count; i++) boundList[i] = (long long) boundValues[i];
+
+    auto results = queen_range_cover_tokens(*session, boundList, (int)domain);
+
+    std::vector<std::string> flattened;
+    flattened.reserve(results.size() * 3);
+    for (const auto& result : results) {
+        flattened.push_back(toBase64(std::get<0>(result)));
+        flattened.push_back(toBase64(std::get<1>(result)));
+        flattened.push_back(std::to_string(std::get<2>(result)));
+    }
+    return toJavaStringArray(env, flattened);
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_pi_DsseSession_decryptFile(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong handle,
+        jstring encryptedPath,
+        jstring decryptedPath) {
+
+    std::shared_ptr<DSSESession> session = Session_get(handle);
+    if (!session) return JNI_FALSE;
+
+    const char* encPathChars = env->GetStringUTFChars(encryptedPath, nullptr);
+    const char* decPathChars = env->GetStringUTFChars(decryptedPath, nullptr);
+    
+    try {
+        queen_decrypt_file(*session, std::string(encPathChars), std::string(decPathChars));
+        
+        env->ReleaseStringUTFChars(encryptedPath, encPathChars);
+        env->ReleaseStringUTFChars(decryptedPath, decPathChars);
+        return JNI_TRUE;
+    } catch (const std::exception& e) {
+        LOGI("Decryption error: %s", e.what());
+        env->ReleaseStringUTFChars(encryptedPath, encPathChars);
+        env->ReleaseStringUTFChars(decryptedPath, decPathChars);
+        return JNI_FALSE;
+    }
+}
+
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_example_pi_DsseSession_openDecryptStream(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong handle,
+        jstring decryptedPath) {
+
+    std::shared_ptr<DSSESession> session = Session_get(handle);
+    if (!session) return 0;
+
+    const char* decPathChars = env->GetStringUTFChars(decryptedPath, nullptr);
+    std::string decPath(decPathChars);
+    env->ReleaseStringUTFChars(decryptedPath, decPathChars);
+
+    try {
+        return (jlong) queen_open_decrypt_stream(*session, decPath);
+    } catch (const std::exception& e) {
+        LOGI("Decrypt stream open error: %s", e.what());
+        return 0;
+    }
+}
+
+// Decrypts length bytes of a direct ByteBuffer starting at offset, without copying them in Java
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_pi_DsseSession_writeDecryptStream(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong stream,
+        jobject buffer,
+        jint offset,
+        jint length) {
+
+    auto *data = (CryptoPP::byte *) env->GetDirectBufferAddress(buffer);
+    if (stream == 0 || data == nullptr) return JNI_FALSE;
+    try {
+        ((FileDecryptStream *) stream)->Put(data + offset, (size_t) length);
+        return JNI_TRUE;
+    } catch (const std::exception& e) {
+        LOGI("Decrypt stream error: %s", e.what());
+        return JNI_FALSE;
+    }
+}
+
+// Flushes the final block and frees the stream; false means the ciphertext was not valid
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_example_pi_DsseSession_finishDecryptStream(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong stream) {
+
+    if (stream == 0) return JNI_FALSE;
+    auto *decrypt = (FileDecryptStream *) stream;
+    jboolean ok = JNI_TRUE;
+    try {
+        decrypt->Finish();
+    } catch (const std::exception& e) {
+        LOGI("Decrypt stream finish error: %s", e.what());
+        ok = JNI_FALSE;
+    }
+    delete decrypt;
+    return ok;
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_example_pi_DsseSession_abortDecryptStream(
+        JNIEnv* env,
+        jclass /* clazz */,
+        jlong stream) {
+
+    delete (FileDecryptStream *) stream;
+}
+
 extern "C" JNIEXPORT jintArray JNICALL
 Java_com_example_pi_SearchActivity_performPostProcessing(
         JNIEnv* env,
@@ -216,10 +529,49 @@ Java_com_example_pi_SearchActivity_performPostProcessing(
     env->ReleaseStringUTFChars(res2_0, r20_b64);
     env->ReleaseStringUTFChars(res2_1, r21_b64);
     
-    jintArray resultArray = env->NewIntArray(result.size());
-    if (result.size() > 0) {
-        env->SetIntArrayRegion(resultArray, 0, result.size(), (jint*)result.data());
+    // Matches as flattened [start, end) runs; a range query is usually a single run
+    std::vector<jint> runs;
+    runs.reserve(result.size() * 2);
+    for (const auto &run : result) {
+        runs.push_back((jint)run.first);
+        runs.push_back((jint)run.second);
+    }
+    jintArray resultArray = env->NewIntArray(runs.size());
+    if (!runs.empty()) {
+        env->SetIntArrayRegion(resultArray, 0, runs.size(), runs.data());
     }
     
     return resultArray;
-}
\ No newline at end of file
+}
+
+// Matching IDs of a range-cover search from the values the two bound lookups returned
+extern "C" JNIEXPORT jintArray JNICALL
+Java_com_example_pi_SearchActivity_performRangeCoverPostProcessing(
+        JNIEnv* env,
+        jobject /* this */,
+        jstring lowEnd,
+        jstring highEnd) {
+
+    const char* low_b64 = env->GetStringUTFChars(lowEnd, nullptr);
+    const char* high_b64 = env->GetStringUTFChars(highEnd, nullptr);
+
+    std::string low = (std::string(low_b64) == "-1") ? "-1" : fromBase64(low_b64);
+    std::string high = (std::string(high_b64) == "-1") ? "-1" : fromBase64(high_b64);
+
+    env->ReleaseStringUTFChars(lowEnd, low_b64);
+    env->ReleaseStringUTFChars(highEnd, high_b64);
+
+    auto result = queen_range_cover_post_process(low, high);
+
+    std::vector<jint> runs;
+    runs.reserve(result.size() * 2);
+    for (const auto &run : result) {
+        runs.push_back((jint)run.first);
+        runs.push_back((jint)run.second);
+    }
+    jintArray resultArray = env->NewIntArray(runs.size());
+    if (!runs.empty()) {
+        env->SetIntArrayRegion(resultArray, 0, runs.size(), runs.data());
+    }
+    return resultArray;
+}
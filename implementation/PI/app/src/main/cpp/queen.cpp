@@ -2,11 +2,16 @@
 #include <vector>
 #include <string>
 #include <tuple>
+#include <functional>
+#include <thread>
+#include <atomic>
+#include <unordered_map>
 #include <android/log.h>
 #include <sys/stat.h>
 #include <errno.h>
 #include "v2.cpp"
 #include "FAST.h"
+#include "Session.h"
 #include "BitSequence.cpp"
 
 #define LOG_TAG "PI_QUEEN"
@@ -14,77 +19,248 @@
 
 using namespace std;
 
-// This function calculates the update tokens for the server
-vector<tuple<string, string>> queen_process(vector<tuple<string, int>> &inp, const string &storage_path, vector<string> &encrypted_paths) {
-    LOGI("Queen redirecting to DBConversion. Input size: %zu", inp.size());
+// Sigma map1 entry holding how many update tokens have been committed so far. Keywords are
+// numeric strings or range-cover node names ("r<level>:<node>"), so this key never collides
+// with per-keyword state.
+const string UPDATE_PROGRESS_KEY = "pi:update_progress";
+
+// Number of update tokens whose Sigma state is committed in storage_path (0 if none)
+size_t queen_committed_tokens(const string &storage_path) {
+    shared_ptr<DSSESession> session = Session_for_path(storage_path);
+    shared_lock<shared_mutex> reader(session->lock);
+    string value;
+    if (!session->dsse.Read_client_marker(UPDATE_PROGRESS_KEY, value)) return 0;
+    return (size_t) stoull(value);
+}
+
+// Forgets the committed-token count once the update job has recorded that generation finished
+bool queen_clear_committed_tokens(const string &storage_path) {
+    shared_ptr<DSSESession> session = Session_for_path(storage_path);
+    unique_lock<shared_mutex> writer(session->lock);
+    return session->dsse.Erase_client_marker(UPDATE_PROGRESS_KEY);
+}
+
+// Runs work(worker) on `threads` threads (the calling thread is worker 0) and waits for all
+static void run_workers(unsigned threads, const function<void(unsigned)> &work) {
+    vector<thread> workers;
+    for (unsigned w = 1; w < threads; w++) workers.emplace_back(work, w);
+    work(0);
+    for (auto &worker : workers) worker.join();
+}
+
+// This function calculates the update tokens for the server and hands them to on_chunk
+// in groups of chunk_size as soon as they are derived, so the caller never has to hold
+// the full token list. Sigma state for a chunk is only committed after on_chunk accepts it,
+// and the first skip_tokens tokens (already generated by an interrupted run) are not derived
+// again. Files are encrypted and tokens derived on up to `threads` worker threads; tokens of
+// one keyword always stay on one thread, so every chunk holds the same tokens in the same
+// order as the single-threaded path. range is the space's value domain: keywords must lie in
+// [0, range). The flat index derives 2 * range tokens; with range_cover set the hierarchical
+// layout of RangeCoverConversion is used instead, one token per non-empty node. Returns false
+// if on_chunk asked to stop early or a keyword is outside the domain.
+// With encrypt_files unset the files were already encrypted by an interrupted run (the caller
+// has their paths), so only tokens are derived and encrypted_paths stays empty. Otherwise
+// on_encrypted, if given, is handed the encrypted paths before the first token is derived and
+// may stop the run by returning false.
+bool queen_process_streaming(vector<tuple<string, int>> &inp, int range, bool range_cover, const string &storage_path,
+                             bool encrypt_files, vector<string> &encrypted_paths, size_t chunk_size, size_t skip_tokens,
+                             unsigned threads, const function<bool(vector<string> &)> &on_encrypted,
+                             const function<bool(vector<tuple<string, string>> &)> &on_chunk) {
+    if (threads == 0) threads = 1;
+    for (const auto &entry : inp) {
+        if (get<1>(entry) < 0 || get<1>(entry) >= range) {
+            LOGI("Keyword %d is outside the value domain [0, %d)", get<1>(entry), range);
+            return false;
+        }
+    }
+    LOGI("Queen redirecting to %s. Input size: %zu, domain: %d", range_cover ? "RangeCoverConversion" : "DBConversion",
+         inp.size(), range);
     
     // 1. Convert input to index/keyword pairs. This also sorts inp by keyword.
-    auto result = DBConversion(inp);
+    vector<tuple<int, string>> result;
+    if (range_cover) {
+        result = RangeCoverConversion(inp, range);
+    } else {
+        auto pairs = DBConversion(inp, range);
+        result.reserve(pairs.size());
+        for (const auto &pair : pairs) result.emplace_back(get<0>(pair), to_string(get<1>(pair)));
+    }
     
-    LOGI("DBConversion complete. Sorted input size: %zu", inp.size());
+    LOGI("Conversion complete. Sorted input size: %zu, tokens: %zu", inp.size(), result.size());
 
     // 2. Encrypt and rename files according to their sorted order (ID0, ID1, etc.)
-    DSSE FAST_;
-    FAST_.Setup(storage_path);
+    // The space's session is held exclusively so no search reads Sigma mid-batch.
+    shared_ptr<DSSESession> session = Session_for_path(storage_path);
+    unique_lock<shared_mutex> writer(session->lock);
+    DSSE &FAST_ = session->dsse;
     SecByteBlock key = FAST_.Get_Client_sk();
 
     // Create encrypted directory if not exists
     string enc_dir = storage_path + "/encrypted";
-    if (mkdir(enc_dir.c_str(), 0777) == -1) {
+    if (encrypt_files && mkdir(enc_dir.c_str(), 0777) == -1) {
         if (errno != EEXIST) {
             LOGI("Warning: Could not create directory %s (errno: %d)", enc_dir.c_str(), errno);
         }
     }
     
-    encrypted_paths.clear();
-    for (size_t i = 0; i < inp.size(); i++) {
-        string original_path = get<0>(inp[i]);
-        
-        // Extract filename from path
-        size_t last_slash = original_path.find_last_of("/");
-        string filename_only = (last_slash != string::npos) ? original_path.substr(last_slash + 1) : original_path;
-
-        // Extract extension from filename
-        size_t last_dot = filename_only.find_last_of(".");
-        string ext = (last_dot != string::npos) ? filename_only.substr(last_dot) : "";
-        
-        string new_filename = "ID" + to_string(i) + ext;
-        string new_path = enc_dir + "/" + new_filename;
-        
-        LOGI("Encrypting file %s to %s", original_path.c_str(), new_path.c_str());
-        encryptFile(key, original_path, new_path);
-        encrypted_paths.push_back(new_path);
+    encrypted_paths.assign(encrypt_files ? inp.size() : 0, "");
+    atomic<size_t> next_file(0);
+    run_workers(min<size_t>(threads, max<size_t>(encrypted_paths.size(), 1)), [&](unsigned) {
+        for (size_t i = next_file++; i < encrypted_paths.size(); i = next_file++) {
+            string original_path = get<0>(inp[i]);
+            
+            // Extract filename from path
+            size_t last_slash = original_path.find_last_of("/");
+            string filename_only = (last_slash != string::npos) ? original_path.substr(last_slash + 1) : original_path;
+
+            // Extract extension from filename
+            size_t last_dot = filename_only.find_last_of(".");
+            string ext = (last_dot != string::npos) ? filename_only.substr(last_dot) : "";
+            
+            string new_filename = "ID" + to_string(i) + ext;
+            string new_path = enc_dir + "/" + new_filename;
+            
+            LOGI("Encrypting file %s to %s", original_path.c_str(), new_path.c_str());
+            encryptFile(key, original_path, new_path);
+            encrypted_paths[i] = new_path;
+        }
+    });
+
+    if (encrypt_files && on_encrypted && !on_encrypted(encrypted_paths)) {
+        LOGI("Encrypted file consumer stopped the run.");
+        return false;
     }
 
-    // 3. Initialize DSSE to generate tokens
+    // 3. Initialize DSSE to generate tokens, flushing every chunk_size tokens
+    if (chunk_size == 0) chunk_size = result.size();
     vector<tuple<string, string>> u_List;
+    vector<unordered_map<string, string>> staged(threads);
+
+    for (size_t begin = skip_tokens; begin < result.size(); begin += chunk_size) {
+        size_t end = min(begin + chunk_size, result.size());
+        u_List.assign(end - begin, tuple<string, string>());
+        FAST_.Begin_client_batch();
+
+        // Split the chunk into one slice per thread, moving each cut forward to a keyword
+        // boundary (both conversions emit the tokens of a keyword next to each other)
+        vector<size_t> cuts(threads + 1, end);
+        cuts[0] = begin;
+        for (unsigned w = 1; w < threads; w++) {
+            size_t cut = max(cuts[w - 1], begin + (end - begin) * w / threads);
+            while (cut > begin && cut < end && get<1>(result[cut]) == get<1>(result[cut - 1])) cut++;
+            cuts[w] = cut;
+        }
+
+        atomic<bool> failed(false);
+        run_workers(threads, [&](unsigned w) {
+            try {
+                for (size_t i = cuts[w]; i < cuts[w + 1]; i++) {
+                    string ind = to_string(get<0>(result[i]));
+                    const string &keyword = get<1>(result[i]);
+                    bool op = true; // Always update (add)
+                    FAST_.Update_client_staged(ind, keyword, op, staged[w], u_List[i - begin]);
+                }
+            } catch (const exception &e) {
+                LOGI("Token derivation failed: %s", e.what());
+                failed = true;
+            }
+        });
 
-    for(size_t i=0 ; i<result.size() ; i++){
-        tuple<string, string> u_token;
-        string ind = to_string(get<0>(result[i]));
-        string keyword = to_string(get<1>(result[i]));
-        bool op = true; // Always update (add)
-        
-        FAST_.Update_client(ind, keyword, op, u_token);
-        u_List.push_back(u_token);
+        // Group the Sigma writes of all workers into the chunk's single batch
+        for (auto &worker_state : staged) FAST_.Merge_client_batch(worker_state);
+
+        if (failed) {
+            FAST_.Discard_client_batch();
+            return false;
+        }
+        if (!on_chunk(u_List)) {
+            FAST_.Discard_client_batch();
+            LOGI("Token consumer stopped generation after %zu tokens.", end);
+            return false;
+        }
+        if (!FAST_.Commit_client_batch(UPDATE_PROGRESS_KEY, to_string(end))) {
+            LOGI("Failed to commit client state after %zu tokens.", end);
+            return false;
+        }
     }
     
-    LOGI("Token generation complete. Returning %zu tokens.", u_List.size());
+    LOGI("Token generation complete. Streamed %zu tokens.", result.size());
+    return true;
+}
+
+// This function calculates the update tokens for the server
+vector<tuple<string, string>> queen_process(vector<tuple<string, int>> &inp, int range, bool range_cover, const string &storage_path,
+                                            vector<string> &encrypted_paths, unsigned threads) {
+    vector<tuple<string, string>> u_List;
+    queen_process_streaming(inp, range, range_cover, storage_path, true, encrypted_paths, 0, 0, threads, nullptr,
+                            [&u_List](vector<tuple<string, string>> &chunk) {
+        u_List.swap(chunk);
+        return true;
+    });
     return u_List;
 }
 
-// This function generates the search token (t_keyword, st_c, c)
-tuple<string, string, int> queen_search_client(string keyword, const string &storage_path) {
-    DSSE FAST_;
-    FAST_.Setup(storage_path); // Initialize as well.
+// This function generates the search token (t_keyword, st_c, c) with an open session
+tuple<string, string, int> queen_search_client(DSSESession &session, const string &keyword) {
+    shared_lock<shared_mutex> reader(session.lock);
     
     tuple<string, string, int> s_token;
-    FAST_.Search_client(keyword, s_token);
+    session.dsse.Search_client(keyword, s_token);
     return s_token;
 }
 
-// This function performs the BitSequence post-processing
-vector<int> queen_post_process(int index_range, string res1_0, string res1_1, string res2_0, string res2_1) {
+// Search tokens for several keywords in one pass, under a single read of the session
+vector<tuple<string, string, int>> queen_search_client_batch(DSSESession &session, const vector<string> &keywords) {
+    shared_lock<shared_mutex> reader(session.lock);
+
+    vector<tuple<string, string, int>> s_tokens(keywords.size());
+    for (size_t i = 0; i < keywords.size(); i++) {
+        session.dsse.Search_client(keywords[i], s_tokens[i]);
+    }
+    return s_tokens;
+}
+
+// Search tokens for a range-cover index: for each bound, the token of the rightmost node below
+// it that holds any file, found by walking rangeCoverPrefix(bound) until Sigma knows a node.
+// That node's one stored value is the last position below the bound. A bound with no such
+// node gets the empty token (c = 0), as a keyword never updated does. Only these tokens go to
+// the server, so a range costs two lookups however large the domain.
+vector<tuple<string, string, int>> queen_range_cover_tokens(DSSESession &session, const vector<long long> &bounds, int range) {
+    shared_lock<shared_mutex> reader(session.lock);
+
+    vector<tuple<string, string, int>> s_tokens(bounds.size());
+    for (size_t i = 0; i < bounds.size(); i++) {
+        for (const string &keyword : rangeCoverPrefix(bounds[i], range)) {
+            session.dsse.Search_client(keyword, s_tokens[i]);
+            if (!get<0>(s_tokens[i]).empty()) break;
+        }
+    }
+    return s_tokens;
+}
+
+// Decrypts a downloaded result file with the session's master key
+void queen_decrypt_file(DSSESession &session, const string &encrypted_path, const string &decrypted_path) {
+    SecByteBlock key;
+    {
+        shared_lock<shared_mutex> reader(session.lock);
+        key = session.dsse.Get_Client_sk();
+    }
+    decryptFile(key, encrypted_path, decrypted_path);
+}
+
+// Decryptor for one result file fed straight from the network; the caller owns the stream
+FileDecryptStream *queen_open_decrypt_stream(DSSESession &session, const string &decrypted_path) {
+    SecByteBlock key;
+    {
+        shared_lock<shared_mutex> reader(session.lock);
+        key = session.dsse.Get_Client_sk();
+    }
+    return new FileDecryptStream(key, decrypted_path);
+}
+
+// This function performs the BitSequence post-processing. index_range is the number of files
+// in the space: every bitmap has one bit per file index, so nothing beyond them can match.
+vector<pair<size_t, size_t>> queen_post_process(int index_range, string res1_0, string res1_1, string res2_0, string res2_1) {
     // res1_0 is equal apply check for param1? No, in the queen.cpp example:
     // search_result1[1] is the value used for less_than.
     // Let's mirror the queen.cpp main exactly.
@@ -109,11 +285,17 @@ vector<int> queen_post_process(int index_range, string res1_0, string res1_1, st
     BitSequence<uint64_t> param2_LE_bitmap = param2_L_bitmap.bitwise_or(param2_E_bitmap);
     BitSequence<uint64_t> result_bitmap = param1_GE_bitmap.bitwise_and(param2_LE_bitmap);
 
-    vector<int> final_ids;
-    for (size_t j = 0; j < index_range; ++j) {
-        if (result_bitmap.get(j)) {
-            final_ids.push_back((int)j);
-        }
-    }
-    return final_ids;
+    return result_bitmap.set_runs();
+}
+
+// Post-processing of a range-cover search. low_end and high_end are the positions the lookups
+// for the bounds p1 and p2 + 1 returned ("-1" when a bound has nothing below it); the files
+// with p1 <= keyword <= p2 are then exactly the positions between them, with no bitmaps.
+vector<pair<size_t, size_t>> queen_range_cover_post_process(const string &low_end, const string &high_end) {
+    size_t low = low_end == "-1" ? 0 : stoull(low_end) + 1;
+    size_t high = high_end == "-1" ? 0 : stoull(high_end) + 1;
+
+    vector<pair<size_t, size_t>> runs;
+    if (low < high) runs.emplace_back(low, high);
+    return runs;
 }
@@ -6,11 +6,18 @@
 
 using namespace std;
 
-static const int RANGE = 100000;
+// Smallest domain that holds every keyword in inp
+int domainFor(const vector<tuple<string, int>> &inp)
+{
+    int range = 1;
+    for (const auto &entry : inp) range = max(range, get<1>(entry) + 1);
+    return range;
+}
 
-vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp)
+// Keywords must lie in [0, range); range is the space's value domain
+vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp, int range)
 {
-    vector<tuple<int, int>> res(RANGE, make_tuple(0, -1));
+    vector<tuple<int, int>> res(range, make_tuple(0, -1));
 
     if (inp.empty()) {
         return res;
@@ -42,12 +49,12 @@ vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp)
 
     //debug print 
 
-    // for(int i=0 ; i<RANGE ; i++){
+    // for(int i=0 ; i<range ; i++){
     //     cout<<i<<" - "<<get<0>(res[i])<<" : "<<get<1>(res[i])<<endl;
     // }
 
     bool flag = true;
-    for(int i=1 ; i<RANGE ; i++){
+    for(int i=1 ; i<range ; i++){
         if(get<0>(res[i]) == 0 && get<1>(res[i]) == -1){
             if(flag){
                 get<0>(res[i]) = get<1>(res[i-1])+1;
@@ -67,25 +74,26 @@ vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp)
 
     // cout<<"\nafter post processing\n"<<endl;
     
-    // for(int i=0 ; i<RANGE ; i++){
+    // for(int i=0 ; i<range ; i++){
     //     cout<<i<<" - "<<get<0>(res[i])<<" : "<<get<1>(res[i])<<endl;
     // }
 
     return res;
 }
 
-vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp){
+// Two (index, keyword) pairs per value of the domain, so 2 * range tokens in all
+vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp, int range){
     vector<tuple<int, int>> res;
-    res.reserve(RANGE*2);
+    res.reserve(range*2);
 
-    auto res1 = esGen(inp);
+    auto res1 = esGen(inp, range);
 
     //debug print
     // for(int i=0 ; i<res1.size() ; i++){
     //     cout<<i<<" - "<<get<0>(res1[i])<<" : "<<get<1>(res1[i])<<endl;
     // }
 
-    for(int i=0 ; i<RANGE ; i++){
+    for(int i=0 ; i<range ; i++){
         res.emplace_back(get<0>(res1[i]), i);
         res.emplace_back(get<1>(res1[i]), i);
     }
@@ -93,6 +101,84 @@ vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp){
     return res;
 }
 
+// Hierarchical (range-cover) layout. Values are grouped into dyadic nodes: node (l, j) holds
+// the values [j * 2^l, (j + 1) * 2^l) for levels l = 0 .. rangeCoverLevels(range), the top
+// one being a single root over the whole domain. Files are sorted by keyword as in esGen, so
+// the files of a node take up consecutive positions. Each node holding at least one file
+// gets a single token recording the position of its last file; empty nodes get none.
+
+// Levels below the root: the smallest L with 2^L >= range
+int rangeCoverLevels(int range)
+{
+    int levels = 0;
+    while (levels < 31 && (1LL << levels) < range) levels++;
+    return levels;
+}
+
+string rangeCoverKeyword(int level, long long node)
+{
+    return "r" + to_string(level) + ":" + to_string(node);
+}
+
+// Calls visit(i, level, node) for every non-empty node, level by level, with i the position
+// of the node's last file; keywordAt(i) is the keyword of the i-th of n files sorted by keyword
+template <typename KeywordAt, typename Visit>
+void forEachRangeCoverNode(size_t n, int range, KeywordAt keywordAt, Visit visit)
+{
+    int levels = rangeCoverLevels(range);
+    for (int level = 0; level <= levels; level++) {
+        for (size_t i = 0; i < n; i++) {
+            long long node = keywordAt(i) >> level;
+            if (i + 1 == n || (keywordAt(i + 1) >> level) != node) visit(i, level, node);
+        }
+    }
+}
+
+// One (index, keyword) pair per non-empty node: at most n * (L + 1) and about 2 * range,
+// so a space's token count follows its files, not the size of its domain
+vector<tuple<int, string>> RangeCoverConversion(vector<tuple<string, int>> &inp, int range)
+{
+    vector<tuple<int, string>> res;
+
+    sort(inp.begin(), inp.end(),
+    [](const tuple<string,int>& a,
+        const tuple<string,int>& b) {
+        return get<1>(a) < get<1>(b);
+    });
+
+    forEachRangeCoverNode(inp.size(), range,
+        [&](size_t i) { return get<1>(inp[i]); },
+        [&](size_t i, int level, long long node) { res.emplace_back((int)i, rangeCoverKeyword(level, node)); });
+    return res;
+}
+
+// Number of tokens DBConversion or RangeCoverConversion derives for these keywords, without
+// deriving them
+long long tokenCount(vector<int> keywords, int range, bool range_cover)
+{
+    if (!range_cover) return 2LL * range;
+    sort(keywords.begin(), keywords.end());
+    long long count = 0;
+    forEachRangeCoverNode(keywords.size(), range,
+        [&](size_t i) { return keywords[i]; },
+        [&](size_t, int, long long) { count++; });
+    return count;
+}
+
+// Keywords of the nodes that exactly cover the values [0, bound), rightmost node first: one
+// per set bit of bound, so at most L + 1 of them. The first of these that holds any file
+// ends at the number of files with a keyword below bound.
+vector<string> rangeCoverPrefix(long long bound, int range)
+{
+    vector<string> keywords;
+    int levels = rangeCoverLevels(range);
+    bound = max(0LL, min(bound, 1LL << levels));
+    for (int level = 0; level <= levels; level++) {
+        if ((bound >> level) & 1) keywords.push_back(rangeCoverKeyword(level, (bound >> level) - 1));
+    }
+    return keywords;
+}
+
 // int main() {
 //     vector<tuple<string, int>> inp = {
 //         {"ID1", 22},
@@ -103,7 +189,7 @@ vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp){
 //         {"ID6", 22},
 //         {"ID7", 18}
 //     };
-//     auto res = DBConversion(inp);
+//     auto res = DBConversion(inp, domainFor(inp));
 
 //     //debug print
 //     for(int i=0 ; i<res.size() ; i++){
@@ -8,6 +8,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.ProgressBar;
 import android.widget.Toast;
@@ -18,16 +19,20 @@ import com.example.pi.network.NetworkUtils;
 
 import org.json.JSONObject;
 
+import java.io.File;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class CreateSpaceActivity extends AppCompatActivity {
 
     private EditText etDbName;
+    private EditText etDomain;
+    private CheckBox cbRangeCover;
     private Button btnProceed;
     private ProgressBar progressBar;
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final NetworkUtils network = NetworkUtils.getInstance();
     private final Handler handler = new Handler(Looper.getMainLooper());
 
     private static final String PREFS_NAME = "pi_prefs";
@@ -38,6 +43,8 @@ public class CreateSpaceActivity extends AppCompatActivity {
         setContentView(R.layout.activity_create_space);
 
         etDbName = findViewById(R.id.etDbName);
+        etDomain = findViewById(R.id.etDomain);
+        cbRangeCover = findViewById(R.id.cbRangeCover);
         btnProceed = findViewById(R.id.btnProceed);
         progressBar = findViewById(R.id.progressBar);
 
@@ -58,6 +65,26 @@ public class CreateSpaceActivity extends AppCompatActivity {
             return;
         }
 
+        // A range-cover index needs tokens per file rather than per value, so it takes far larger domains
+        String indexMode = cbRangeCover.isChecked() ? SpaceParams.INDEX_RANGE_COVER : SpaceParams.INDEX_FLAT;
+        int maxDomain = SpaceParams.maxDomain(indexMode);
+
+        // Keywords the space will hold are 0 .. domain-1; 0 leaves it to be derived from the files
+        String domainText = etDomain.getText().toString().trim();
+        int domain = 0;
+        if (!domainText.isEmpty()) {
+            try {
+                domain = Integer.parseInt(domainText);
+            } catch (NumberFormatException e) {
+                domain = -1;
+            }
+            if (domain < 1 || domain > maxDomain) {
+                Toast.makeText(this, "Value domain must be 1-" + maxDomain, Toast.LENGTH_SHORT).show();
+                return;
+            }
+        }
+        int declaredDomain = domain;
+
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         String token = prefs.getString("auth_token", null);
         String ip = prefs.getString("last_ip", BuildConfig.SERVER_IP);
@@ -79,7 +106,12 @@ public class CreateSpaceActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                String response = NetworkUtils.performPostRequest(url, body.toString(), token);
+                String response = network.performPostRequest(url, body.toString(), token);
+                File storageDir = new File(getFilesDir(), dbName);
+                SpaceParams.clear(storageDir);
+                SpaceParams params = SpaceParams.load(storageDir);
+                params.setDeclaredDomain(declaredDomain);
+                params.setIndexMode(indexMode);
                 handler.post(() -> {
                     Toast.makeText(this, "Space Created Successfully!", Toast.LENGTH_SHORT).show();
                     finish();
@@ -98,5 +130,7 @@ public class CreateSpaceActivity extends AppCompatActivity {
         progressBar.setVisibility(loading ? View.VISIBLE : View.GONE);
         btnProceed.setEnabled(!loading);
         etDbName.setEnabled(!loading);
+        etDomain.setEnabled(!loading);
+        cbRangeCover.setEnabled(!loading);
     }
 }
@@ -0,0 +1,105 @@
+package com.example.pi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Ciphertext sink that decrypts into a plaintext file as bytes arrive, so a downloaded result
+ * never exists on disk in encrypted form. Bytes are gathered in a direct buffer and handed to
+ * native code a buffer at a time; direct buffers passed to write(ByteBuffer) go across JNI
+ * without any copy. close() completes the file and fails if the ciphertext was not valid.
+ *
+ * Obtained from DsseSession.openDecryptStream(). Not thread-safe, and streams opened on the
+ * same thread share its buffer, so each thread should write to one stream at a time.
+ */
+public final class DecryptingOutputStream extends OutputStream {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    private final File output;
+    private final ByteBuffer buffer = BUFFER.get();
+    private long stream;
+
+    DecryptingOutputStream(long stream, File output) {
+        this.stream = stream;
+        this.output = output;
+        buffer.clear();
+    }
+
+    public File getOutputFile() {
+        return output;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) drainBuffer();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) drainBuffer();
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    // Decrypts the remaining bytes of src; a direct buffer is read in place by native code
+    public void write(ByteBuffer src) throws IOException {
+        if (!src.isDirect()) {
+            while (src.hasRemaining()) {
+                if (!buffer.hasRemaining()) drainBuffer();
+                int n = Math.min(src.remaining(), buffer.remaining());
+                ByteBuffer slice = src.duplicate();
+                slice.limit(slice.position() + n);
+                buffer.put(slice);
+                src.position(src.position() + n);
+            }
+            return;
+        }
+        drainBuffer();
+        put(src, src.position(), src.remaining());
+        src.position(src.limit());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (stream == 0) return;
+        drainBuffer();
+        boolean valid = DsseSession.finishDecryptStream(stream);
+        stream = 0;
+        if (!valid) {
+            output.delete();
+            throw new IOException("Decryption error");
+        }
+    }
+
+    // Drops the stream and whatever plaintext was written, e.g. after a failed download
+    public void abort() {
+        if (stream != 0) {
+            DsseSession.abortDecryptStream(stream);
+            stream = 0;
+        }
+        output.delete();
+    }
+
+    private void drainBuffer() throws IOException {
+        if (buffer.position() == 0) return;
+        put(buffer, 0, buffer.position());
+        buffer.clear();
+    }
+
+    private void put(ByteBuffer direct, int offset, int length) throws IOException {
+        if (stream == 0) throw new IOException("Decrypt stream is closed");
+        if (length > 0 && !DsseSession.writeDecryptStream(stream, direct, offset, length)) {
+            abort();
+            throw new IOException("Decryption error");
+        }
+    }
+}
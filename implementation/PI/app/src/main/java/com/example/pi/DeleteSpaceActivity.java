@@ -13,11 +13,13 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.pi.network.JsonResponses;
 import com.example.pi.network.NetworkUtils;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -25,6 +27,7 @@ public class DeleteSpaceActivity extends AppCompatActivity {
 
     private LinearLayout llSpaceList;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final NetworkUtils network = NetworkUtils.getInstance();
     private final Handler handler = new Handler(Looper.getMainLooper());
 
     private static final String PREFS_NAME = "pi_prefs";
@@ -59,9 +62,7 @@ public class DeleteSpaceActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                String response = NetworkUtils.performGetRequest(url, token);
-                JSONObject jsonResponse = new JSONObject(response);
-                JSONArray spaces = jsonResponse.optJSONArray("spaces");
+                List<String> spaces = network.performGetRequest(url, token, JsonResponses.spaceNames());
                 handler.post(() -> updateSpaceList(spaces));
             } catch (Exception e) {
                 e.printStackTrace();
@@ -69,9 +70,9 @@ public class DeleteSpaceActivity extends AppCompatActivity {
         });
     }
 
-    private void updateSpaceList(JSONArray spaces) {
+    private void updateSpaceList(List<String> spaces) {
         llSpaceList.removeAllViews();
-        if (spaces == null || spaces.length() == 0) {
+        if (spaces.isEmpty()) {
             TextView empty = new TextView(this);
             empty.setText("No spaces to delete.");
             empty.setTextColor(getResources().getColor(R.color.text_dim));
@@ -82,19 +83,14 @@ public class DeleteSpaceActivity extends AppCompatActivity {
         }
 
         LayoutInflater inflater = LayoutInflater.from(this);
-        try {
-            for (int i = 0; i < spaces.length(); i++) {
-                String name = spaces.getString(i);
-                View card = inflater.inflate(R.layout.item_space_card, llSpaceList, false);
-                TextView tvName = card.findViewById(R.id.tvSpaceName);
-                tvName.setText(name);
-                tvName.setTextColor(0xFFFF4444); // Reddish for delete
-
-                card.setOnClickListener(v -> deleteSpace(name, v));
-                llSpaceList.addView(card);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
+        for (String name : spaces) {
+            View card = inflater.inflate(R.layout.item_space_card, llSpaceList, false);
+            TextView tvName = card.findViewById(R.id.tvSpaceName);
+            tvName.setText(name);
+            tvName.setTextColor(0xFFFF4444); // Reddish for delete
+
+            card.setOnClickListener(v -> deleteSpace(name, v));
+            llSpaceList.addView(card);
         }
     }
 
@@ -113,7 +109,11 @@ public class DeleteSpaceActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                NetworkUtils.performDeleteRequest(url, body.toString(), token);
+                network.performDeleteRequest(url, body.toString(), token);
+                // A new space under the same name must not be answered from the old one's results
+                SearchResultCache.getInstance(this).invalidate(name);
+                ResultFileCache.getInstance(this).invalidate(name);
+                SpaceParams.clear(new File(getFilesDir(), name));
                 handler.post(() -> {
                     Toast.makeText(this, "Space Deleted", Toast.LENGTH_SHORT).show();
                     refreshList();
@@ -0,0 +1,115 @@
+package com.example.pi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Handle to an open native DSSE client for one space. The master key and the Sigma_map1
+ * RocksDB stay open until close(), so search tokens and file decryption no longer pay for
+ * Setup on every call. A session may be used from several threads at once; native code
+ * serializes it against token generation for the same space.
+ *
+ * A session is reference counted: open() returns the first reference and acquire() hands
+ * out more, each released by one close(). The native session is only closed with the last
+ * reference, so one user letting go never pulls it from under another.
+ */
+public final class DsseSession implements AutoCloseable {
+
+    static {
+        System.loadLibrary("pi");
+    }
+
+    private static native long openSession(String storagePath);
+    private static native void closeSession(long handle);
+    private static native String[] getSearchToken(long handle, String keyword);
+    private static native String[] getSearchTokens(long handle, String[] keywords);
+    private static native String[] getRangeCoverTokens(long handle, long[] bounds, int domain);
+    private static native boolean decryptFile(long handle, String encryptedPath, String decryptedPath);
+    private static native long openDecryptStream(long handle, String decryptedPath);
+    static native boolean writeDecryptStream(long stream, ByteBuffer buffer, int offset, int length);
+    static native boolean finishDecryptStream(long stream);
+    static native void abortDecryptStream(long stream);
+
+    private final String storagePath;
+    private volatile long handle;
+    // Guarded by this
+    private int references = 1;
+
+    private DsseSession(String storagePath, long handle) {
+        this.storagePath = storagePath;
+        this.handle = handle;
+    }
+
+    public static DsseSession open(String storagePath) throws IOException {
+        long handle = openSession(storagePath);
+        if (handle == 0) throw new IOException("Could not open DSSE storage at " + storagePath);
+        return new DsseSession(storagePath, handle);
+    }
+
+    // Another reference to this open session, to be released with its own close()
+    public synchronized DsseSession acquire() {
+        if (handle == 0) throw new IllegalStateException("DSSE session is closed");
+        references++;
+        return this;
+    }
+
+    public String getStoragePath() {
+        return storagePath;
+    }
+
+    // Search token (t_keyword, st_c, c) as Base64 / Base64 / decimal strings
+    public String[] getSearchToken(String keyword) {
+        String[] token = getSearchToken(checkOpen(), keyword);
+        if (token == null) throw new IllegalStateException("DSSE session is closed");
+        return token;
+    }
+
+    // Tokens for several keywords from one native call; result[i] is the token of keywords[i]
+    public String[][] getSearchTokens(String... keywords) {
+        String[] flat = getSearchTokens(checkOpen(), keywords);
+        if (flat == null) throw new IllegalStateException("DSSE session is closed");
+        String[][] tokens = new String[keywords.length][];
+        for (int i = 0; i < keywords.length; i++) {
+            tokens[i] = new String[]{flat[3 * i], flat[3 * i + 1], flat[3 * i + 2]};
+        }
+        return tokens;
+    }
+
+    // Tokens of a range-cover space for the bounds low and high (exclusive): per bound, the rightmost
+    // node below it that holds a file, or a token with count 0 if there is none
+    public String[][] getRangeCoverTokens(long low, long high, int domain) {
+        String[] flat = getRangeCoverTokens(checkOpen(), new long[]{low, high}, domain);
+        if (flat == null) throw new IllegalStateException("DSSE session is closed");
+        return new String[][]{
+                {flat[0], flat[1], flat[2]},
+                {flat[3], flat[4], flat[5]}
+        };
+    }
+
+    public boolean decryptFile(String encryptedPath, String decryptedPath) {
+        return decryptFile(checkOpen(), encryptedPath, decryptedPath);
+    }
+
+    // Streaming form of decryptFile: ciphertext written to the stream lands in decryptedPath as plaintext
+    public DecryptingOutputStream openDecryptStream(String decryptedPath) throws IOException {
+        long stream = openDecryptStream(checkOpen(), decryptedPath);
+        if (stream == 0) throw new IOException("Could not open " + decryptedPath + " for decryption");
+        return new DecryptingOutputStream(stream, new File(decryptedPath));
+    }
+
+    // Releases one reference; the last one closes the native session. Calls already running
+    // keep the native session alive until they return.
+    @Override
+    public synchronized void close() {
+        if (handle == 0 || --references > 0) return;
+        closeSession(handle);
+        handle = 0;
+    }
+
+    private long checkOpen() {
+        long current = handle;
+        if (current == 0) throw new IllegalStateException("DSSE session is closed");
+        return current;
+    }
+}
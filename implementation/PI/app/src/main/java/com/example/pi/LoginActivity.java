@@ -29,6 +29,7 @@ public class LoginActivity extends AppCompatActivity {
     private ProgressBar progressBar;
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final NetworkUtils network = NetworkUtils.getInstance();
     private final Handler handler = new Handler(Looper.getMainLooper());
 
     private static final String PREFS_NAME = "pi_prefs";
@@ -83,7 +84,7 @@ public class LoginActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                String response = NetworkUtils.performPostRequest(loginUrl, jsonBody.toString(), null);
+                String response = network.performPostRequest(loginUrl, jsonBody.toString(), null);
                 
                 JSONObject jsonResponse = new JSONObject(response);
                 String token = jsonResponse.optString("token");
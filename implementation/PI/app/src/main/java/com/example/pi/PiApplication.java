@@ -0,0 +1,31 @@
+package com.example.pi;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+
+import com.example.pi.network.NetworkUtils;
+
+/**
+ * Process-wide setup that has to happen before the first activity makes a request.
+ */
+public class PiApplication extends Application {
+
+    private static final String PREFS_NAME = "pi_prefs";
+    // Requests a search keeps open besides its downloads: the two lookups of a range query
+    private static final int SEARCH_LOOKUPS = 2;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        NetworkUtils.configureConnectionPool(connectionPoolSize(getSharedPreferences(PREFS_NAME, MODE_PRIVATE)));
+    }
+
+    // Enough idle sockets for the most requests the configured concurrency keeps in flight at once:
+    // token or file uploads during an update, or ranged downloads plus lookups during a search
+    static int connectionPoolSize(SharedPreferences prefs) {
+        int uploads = Math.max(1, prefs.getInt("upload_concurrency", UpdateActivity.DEFAULT_UPLOAD_CONCURRENCY));
+        int downloads = Math.max(1, prefs.getInt("download_concurrency", SearchActivity.DEFAULT_DOWNLOAD_CONCURRENCY))
+                * Math.max(1, prefs.getInt("download_segments", 1));
+        return Math.max(uploads, downloads + SEARCH_LOOKUPS);
+    }
+}
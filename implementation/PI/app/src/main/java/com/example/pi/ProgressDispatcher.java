@@ -0,0 +1,183 @@
+package com.example.pi;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects progress updates from worker threads and hands them to the main thread in ticks,
+ * instead of one Handler message per callback. Updates are merged per key (a file ID, a
+ * status line), so only the newest one of each key is delivered; progress that moved less
+ * than minPercentStep since the last accepted value is dropped on arrival; and a tick
+ * delivers at most maxPerTick keys, leaving the rest for the next one.
+ *
+ * State changes passed to publish() are never filtered, only superseded by a newer update of
+ * the same key, so the last update of every key always reaches the sink. The counters tell
+ * how many updates arrived, how many were delivered and how many were merged away.
+ */
+public final class ProgressDispatcher<K, V> {
+
+    public interface Sink<K, V> {
+        // Called on the handler's thread
+        void deliver(K key, V update);
+    }
+
+    // Runs the ticks: the Handler in the app, a hand-driven clock in tests
+    interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+        void removeCallbacks(Runnable task);
+        long uptimeMillis();
+    }
+
+    // Roughly three frames; nothing on screen needs progress more often than that
+    public static final long DEFAULT_TICK_MS = 50;
+    public static final int DEFAULT_MIN_PERCENT_STEP = 1;
+    // About as many rows as fit on a screen
+    public static final int DEFAULT_MAX_PER_TICK = 32;
+
+    private final Scheduler scheduler;
+    private final Sink<K, V> sink;
+    private final long tickMs;
+    private final int minPercentStep;
+    private final int maxPerTick;
+    private final Runnable tick = this::deliverPending;
+
+    // Guarded by this
+    private final LinkedHashMap<K, V> pending = new LinkedHashMap<>();
+    private final Map<K, Integer> lastPercent = new HashMap<>();
+    private boolean scheduled;
+    private long lastTickAt;
+    private long published;
+    private long delivered;
+    private long dropped;
+
+    public ProgressDispatcher(Handler handler, Sink<K, V> sink) {
+        this(handler, DEFAULT_TICK_MS, DEFAULT_MIN_PERCENT_STEP, DEFAULT_MAX_PER_TICK, sink);
+    }
+
+    public ProgressDispatcher(Handler handler, long tickMs, int minPercentStep, int maxPerTick, Sink<K, V> sink) {
+        this(new Scheduler() {
+            @Override
+            public void postDelayed(Runnable task, long delayMs) {
+                handler.postDelayed(task, delayMs);
+            }
+
+            @Override
+            public void removeCallbacks(Runnable task) {
+                handler.removeCallbacks(task);
+            }
+
+            @Override
+            public long uptimeMillis() {
+                return SystemClock.uptimeMillis();
+            }
+        }, tickMs, minPercentStep, maxPerTick, sink);
+    }
+
+    ProgressDispatcher(Scheduler scheduler, long tickMs, int minPercentStep, int maxPerTick, Sink<K, V> sink) {
+        if (tickMs < 0 || minPercentStep < 1 || maxPerTick < 1) {
+            throw new IllegalArgumentException("Invalid tick, percent step or per-tick limit");
+        }
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.tickMs = tickMs;
+        this.minPercentStep = minPercentStep;
+        this.maxPerTick = maxPerTick;
+    }
+
+    // A state change such as a new phase, a completion or a failure
+    public synchronized void publish(K key, V update) {
+        published++;
+        lastPercent.remove(key);
+        enqueue(key, update);
+    }
+
+    // Progress within the current state; dropped until it has moved by minPercentStep
+    public synchronized void publishProgress(K key, int percent, V update) {
+        published++;
+        Integer last = lastPercent.get(key);
+        if (last != null && Math.abs(percent - last) < minPercentStep && percent < 100) {
+            dropped++;
+            return;
+        }
+        lastPercent.put(key, percent);
+        enqueue(key, update);
+    }
+
+    // Delivers everything pending right away; call on the handler's thread before a final UI change
+    public void flush() {
+        List<Map.Entry<K, V>> batch;
+        synchronized (this) {
+            scheduler.removeCallbacks(tick);
+            scheduled = false;
+            batch = take(Integer.MAX_VALUE);
+        }
+        deliver(batch);
+    }
+
+    // Forgets pending updates, e.g. once the screen they were meant for is gone
+    public synchronized void cancel() {
+        scheduler.removeCallbacks(tick);
+        scheduled = false;
+        dropped += pending.size();
+        pending.clear();
+        lastPercent.clear();
+    }
+
+    public synchronized long getPublishedCount() {
+        return published;
+    }
+
+    public synchronized long getDeliveredCount() {
+        return delivered;
+    }
+
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    private void enqueue(K key, V update) {
+        if (pending.put(key, update) != null) dropped++;
+        if (!scheduled) {
+            scheduled = true;
+            long wait = Math.max(0, lastTickAt + tickMs - scheduler.uptimeMillis());
+            scheduler.postDelayed(tick, wait);
+        }
+    }
+
+    private void deliverPending() {
+        List<Map.Entry<K, V>> batch;
+        synchronized (this) {
+            batch = take(maxPerTick);
+            lastTickAt = scheduler.uptimeMillis();
+            scheduled = !pending.isEmpty();
+            if (scheduled) scheduler.postDelayed(tick, tickMs);
+        }
+        deliver(batch);
+    }
+
+    // Oldest keys first, so a key that keeps updating cannot starve the others
+    private List<Map.Entry<K, V>> take(int limit) {
+        List<Map.Entry<K, V>> batch = new ArrayList<>(Math.min(limit, pending.size()));
+        Iterator<Map.Entry<K, V>> it = pending.entrySet().iterator();
+        while (it.hasNext() && batch.size() < limit) {
+            batch.add(new AbstractMap.SimpleImmutableEntry<>(it.next()));
+            it.remove();
+        }
+        delivered += batch.size();
+        return batch;
+    }
+
+    private void deliver(List<Map.Entry<K, V>> batch) {
+        for (Map.Entry<K, V> entry : batch) {
+            sink.deliver(entry.getKey(), entry.getValue());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.pi;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decrypted result files kept on the device between searches, keyed by (dbName, fileId).
+ * A space is locked after its one update, so a cached file never goes stale; the cache is
+ * only bounded by its size budget and evicts the least recently used files first.
+ *
+ * Files live under {@code <filesDir>/result_cache/<dbName>/<fileId>/<fileName>}. Recency is
+ * the file's modification time, which is bumped on every hit, so the LRU order survives a
+ * restart without a separate index. Shared by every activity (see getInstance()).
+ *
+ * This is a copying cache: put() and restore() each write the data once more, with a
+ * channel-to-channel transfer. Results are published on shared storage, a different volume
+ * from filesDir that takes no hard links, so the cache cannot share blocks with them. A hit
+ * is opened while the cache is locked, so a concurrent eviction can unlink the entry but
+ * never pull the data from under a restore in progress.
+ */
+public class ResultFileCache {
+
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final String DIR_NAME = "result_cache";
+
+    private static ResultFileCache instance;
+
+    private final File root;
+    private long maxBytes;
+    // "dbName/fileId" -> cached file, least recently used first; loaded from disk on first use
+    private LinkedHashMap<String, File> entries;
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+
+    ResultFileCache(File root, long maxBytes) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+    }
+
+    public static synchronized ResultFileCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResultFileCache(new File(context.getFilesDir(), DIR_NAME), DEFAULT_MAX_BYTES);
+        }
+        return instance;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        evict();
+    }
+
+    // Places the cached plaintext of the file in destinationDir under its original name and
+    // returns it, or null if it is not cached; a hit makes the entry the most recently used
+    public File restore(String dbName, String fileId, File destinationDir) throws IOException {
+        File destination;
+        FileInputStream in;
+        synchronized (this) {
+            File file = entries().get(key(dbName, fileId));
+            if (file == null || !file.isFile()) {
+                if (file != null) remove(key(dbName, fileId));
+                misses++;
+                return null;
+            }
+            entries.remove(key(dbName, fileId));
+            entries.put(key(dbName, fileId), file);
+            file.setLastModified(System.currentTimeMillis());
+            hits++;
+            destination = new File(destinationDir, file.getName());
+            // Held open, the data outlives an eviction that unlinks the entry during the copy
+            in = new FileInputStream(file);
+        }
+        try (FileInputStream source = in; FileOutputStream out = new FileOutputStream(destination)) {
+            transfer(source, out);
+        }
+        return destination;
+    }
+
+    // Adds a decrypted file to the cache, evicting older entries to stay within the budget
+    public void put(String dbName, String fileId, File plaintext) throws IOException {
+        long length = plaintext.length();
+        synchronized (this) {
+            if (length > maxBytes) return;
+            // Loading first, as the load sweeps up .tmp files
+            entries();
+        }
+        File dir = new File(new File(root, dbName), fileId);
+        File tmp = new File(dir, plaintext.getName() + ".tmp");
+        File target = new File(dir, plaintext.getName());
+        if (!dir.exists()) dir.mkdirs();
+        try (FileInputStream in = new FileInputStream(plaintext); FileOutputStream out = new FileOutputStream(tmp)) {
+            transfer(in, out);
+        }
+
+        synchronized (this) {
+            String key = key(dbName, fileId);
+            remove(key);
+            if (!tmp.renameTo(target)) {
+                tmp.delete();
+                throw new IOException("Could not add " + fileId + " to the result cache");
+            }
+            entries().put(key, target);
+            sizeBytes += target.length();
+            evict();
+        }
+    }
+
+    // Drops every cached file of a space, e.g. once the space is deleted
+    public synchronized void invalidate(String dbName) {
+        Iterator<Map.Entry<String, File>> it = entries().entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, File> entry = it.next();
+            if (entry.getKey().startsWith(dbName + "/")) {
+                sizeBytes -= entry.getValue().length();
+                it.remove();
+            }
+        }
+        deleteRecursively(new File(root, dbName));
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getSizeBytes() {
+        entries();
+        return sizeBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries().size();
+    }
+
+    private static void transfer(FileInputStream in, FileOutputStream out) throws IOException {
+        FileChannel source = in.getChannel();
+        FileChannel sink = out.getChannel();
+        long position = 0;
+        long size = source.size();
+        while (position < size) {
+            position += source.transferTo(position, size - position, sink);
+        }
+    }
+
+    private LinkedHashMap<String, File> entries() {
+        if (entries != null) return entries;
+        entries = new LinkedHashMap<>();
+        sizeBytes = 0;
+        List<File> files = new ArrayList<>();
+        File[] spaces = root.listFiles();
+        if (spaces != null) {
+            for (File space : spaces) {
+                File[] ids = space.listFiles();
+                if (ids == null) continue;
+                for (File id : ids) {
+                    File[] cached = id.listFiles();
+                    if (cached == null) continue;
+                    for (File file : cached) {
+                        // Leftovers of a copy interrupted by process death
+                        if (file.getName().endsWith(".tmp")) file.delete();
+                        else files.add(file);
+                    }
+                }
+            }
+        }
+        files.sort((a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            File idDir = file.getParentFile();
+            entries.put(key(idDir.getParentFile().getName(), idDir.getName()), file);
+            sizeBytes += file.length();
+        }
+        return entries;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, File>> it = entries().entrySet().iterator();
+        while (sizeBytes > maxBytes && it.hasNext()) {
+            File file = it.next().getValue();
+            sizeBytes -= file.length();
+            it.remove();
+            deleteRecursively(file.getParentFile());
+        }
+    }
+
+    private void remove(String key) {
+        File file = entries().remove(key);
+        if (file != null) {
+            sizeBytes -= file.length();
+            deleteRecursively(file.getParentFile());
+        }
+    }
+
+    private static String key(String dbName, String fileId) {
+        return dbName + "/" + fileId;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
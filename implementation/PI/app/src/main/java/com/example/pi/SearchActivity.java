@@ -9,12 +9,12 @@ import android.os.Looper;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
 import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.CheckBox;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -26,20 +26,36 @@ import android.os.Build;
 import android.webkit.MimeTypeMap;
 import androidx.core.content.FileProvider;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.pi.network.AsyncIo;
+import com.example.pi.network.DownloadPipeline;
+import com.example.pi.network.JsonResponses;
 import com.example.pi.network.NetworkUtils;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SearchActivity extends AppCompatActivity {
 
@@ -47,27 +63,50 @@ public class SearchActivity extends AppCompatActivity {
         System.loadLibrary("pi");
     }
 
-    private native String[] getSearchToken(String storagePath, String keyword);
+    // Matching IDs as flattened [start, end) runs
     private native int[] performPostProcessing(String storagePath, int indexRange, String res1_0, String res1_1, String res2_0, String res2_1);
-    private native boolean decryptResultFile(String storagePath, String encryptedPath, String decryptedPath);
+    private native int[] performRangeCoverPostProcessing(String lowEnd, String highEnd);
 
     private AutoCompleteTextView actvSpaceSelector;
     private android.widget.EditText etParam1, etParam2;
     private Button btnConnect;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final NetworkUtils network = NetworkUtils.getInstance();
     private final Handler handler = new Handler(Looper.getMainLooper());
     
     private TextView tvResultsTitle, tvResultsSummary, tvCounter;
     private View svResults;
-    private LinearLayout llResults;
+    private RecyclerView rvResults;
+    private final ResultsAdapter resultsAdapter = new ResultsAdapter();
     private Button btnDownload;
     private CheckBox cbSelectAll;
-    private int[] currentMatchedIds;
-    private final List<Integer> selectedIds = new ArrayList<>();
-    private final List<CheckBox> idCheckboxes = new ArrayList<>();
-    private final Map<Integer, View> fileItemViews = new HashMap<>();
+    private SearchResult currentMatchedIds;
+    // Selected IDs of currentMatchedIds; rows themselves hold no state
+    private SelectionModel selection = new SelectionModel(SearchResult.EMPTY);
+    // Download state of the IDs that have one; every other row shows the default "Ready" state
+    private final Map<Integer, ItemState> itemStates = new HashMap<>();
+    // Download steps from worker threads, merged per ID and applied to the rows once per tick
+    private final ProgressDispatcher<Integer, ItemUpdate> itemProgress = new ProgressDispatcher<>(handler, this::applyItemState);
 
     private static final String PREFS_NAME = "pi_prefs";
+    // Files fetched at once, files waiting for decryption, and the cap on decrypt workers
+    static final int DEFAULT_DOWNLOAD_CONCURRENCY = 4;
+    private static final int DEFAULT_RESULT_CACHE_MB = 256;
+    private static final int DOWNLOAD_QUEUE_CAPACITY = 8;
+    // IDs per POST /download-files request in bundle mode
+    private static final int DOWNLOAD_BUNDLE_SIZE = 32;
+    private static final int MAX_DECRYPT_THREADS = 4;
+    // Deadline for a whole query: session, both lookups and post-processing
+    private static final long SEARCH_TIMEOUT_SECONDS = 60;
+
+    // Query in flight, cancelled when a new search starts or the activity is destroyed
+    private CompletableFuture<SearchResult> currentSearch;
+
+    // Native session of the space searched last; reused for its tokens and result decryption.
+    // This is the activity's own reference; every user gets another one from sessionFor().
+    private DsseSession session;
+    // Set under the same lock once onDestroy has closed the session, so late stages cannot reopen it
+    private boolean destroyed;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -85,7 +124,10 @@ public class SearchActivity extends AppCompatActivity {
         tvResultsTitle = findViewById(R.id.tvResultsTitle);
         tvResultsSummary = findViewById(R.id.tvResultsSummary);
         svResults = findViewById(R.id.svResults);
-        llResults = findViewById(R.id.llResults);
+        rvResults = findViewById(R.id.rvResults);
+        rvResults.setLayoutManager(new LinearLayoutManager(this));
+        rvResults.setHasFixedSize(true);
+        rvResults.setAdapter(resultsAdapter);
         btnDownload = findViewById(R.id.btnDownload);
         tvCounter = findViewById(R.id.tvCounter);
         cbSelectAll = findViewById(R.id.cbSelectAll);
@@ -98,9 +140,10 @@ public class SearchActivity extends AppCompatActivity {
         btnDownload.setOnClickListener(v -> performDownloadSelected());
 
         cbSelectAll.setOnCheckedChangeListener((buttonView, isChecked) -> {
-            for (CheckBox cb : idCheckboxes) {
-                cb.setChecked(isChecked);
-            }
+            if (isChecked) selection.selectAll();
+            else selection.clear();
+            resultsAdapter.notifyDataSetChanged();
+            updateSelectionCounter();
         });
 
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
@@ -127,10 +170,32 @@ public class SearchActivity extends AppCompatActivity {
             return;
         }
 
+        String storagePath = getDbStoragePath(dbName);
+        SpaceParams spaceParams = SpaceParams.load(new File(storagePath));
+        // Range-cover spaces look up the nodes below p1 and p2 + 1 instead of the keywords p1 and p2
+        boolean rangeCover = spaceParams.isRangeCover();
+        long low, high;
+        if (rangeCover) {
+            try {
+                low = Long.parseLong(p1.trim());
+                high = Long.parseLong(p2.trim()) + 1;
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, "Search parameters must be whole numbers", Toast.LENGTH_SHORT).show();
+                return;
+            }
+        } else {
+            low = high = 0;
+        }
+
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         String token = prefs.getString("auth_token", null);
         String ip = prefs.getString("last_ip", BuildConfig.SERVER_IP);
-        String baseUrl = "http://" + ip + ":3000/api/get-index_value";
+        String apiUrl = "http://" + ip + ":3000/api";
+        // One POST /get-index_values for both params instead of two GET /get-index_value round trips
+        boolean batchedSearch = prefs.getBoolean("batched_search", false);
+        // Locked spaces always answer the same tokens the same way, so earlier results are reused
+        SearchResultCache resultCache = SearchResultCache.getInstance(this);
+        resultCache.setDiskEnabled(prefs.getBoolean("search_cache_disk", true));
 
         Toast.makeText(this, "Searching...", Toast.LENGTH_SHORT).show();
 
@@ -145,102 +210,181 @@ public class SearchActivity extends AppCompatActivity {
             }
         }
 
-        executor.execute(() -> {
-            try {
-                String storagePath = getDbStoragePath(dbName);
-                
-                // 0. Cleanup previous searches
-                File publicDecryptedDir = new File(Environment.getExternalStorageDirectory(), "PI_SearchResults");
-                clearDirectories(new File(getFilesDir(), "downloads"), publicDecryptedDir);
-                
-                // 1. Get tokens for param 1
-                Log.i("PI_SEARCH", "Generating token for P1: " + p1 + " using DB storage: " + storagePath);
-                String[] tokens1 = getSearchToken(storagePath, p1);
-                Log.i("PI_SEARCH", "P1 Tokens: u=" + tokens1[0] + ", count=" + tokens1[2]);
-                
-                String url1 = baseUrl + "?dbName=" + dbName + "&keyword_token=" + Uri.encode(tokens1[0]) + "&state_token=" + Uri.encode(tokens1[1]) + "&count=" + tokens1[2];
-                Log.i("PI_SEARCH", "Requesting P1 from server: " + url1);
-                String response1 = NetworkUtils.performGetRequest(url1, token);
-                JSONArray res1 = new JSONObject(response1).getJSONArray("results");
-                Log.i("PI_SEARCH", "P1 Results received: " + res1.length());
-
-                // 2. Get tokens for param 2
-                Log.i("PI_SEARCH", "Generating token for P2: " + p2);
-                String[] tokens2 = getSearchToken(storagePath, p2);
-                Log.i("PI_SEARCH", "P2 Tokens: u=" + tokens2[0] + ", count=" + tokens2[2]);
-                
-                String url2 = baseUrl + "?dbName=" + dbName + "&keyword_token=" + Uri.encode(tokens2[0]) + "&state_token=" + Uri.encode(tokens2[1]) + "&count=" + tokens2[2];
-                Log.i("PI_SEARCH", "Requesting P2 from server: " + url2);
-                String response2 = NetworkUtils.performGetRequest(url2, token);
-                JSONArray res2 = new JSONObject(response2).getJSONArray("results");
-                Log.i("PI_SEARCH", "P2 Results received: " + res2.length());
-
-                // 3. Post Process
-                // resX is a list of results. In the benchmark queen.cpp, search_result1[1] and [0] were used.
-                // Assuming res1 has at least 2 elements [equal_id, boundary_val]
-                String r10 = res1.length() > 0 ? res1.getString(0) : "-1";
-                String r11 = res1.length() > 1 ? res1.getString(1) : "-1";
-                String r20 = res2.length() > 0 ? res2.getString(0) : "-1";
-                String r21 = res2.length() > 1 ? res2.getString(1) : "-1";
-
-                currentMatchedIds = performPostProcessing(storagePath, 100000, r10, r11, r20, r21);
+        // A new search supersedes the one still running
+        if (currentSearch != null) currentSearch.cancel(true);
+        CompletableFuture<SearchResult> search = new CompletableFuture<>();
+        currentSearch = search;
+        AsyncIo.withTimeout(search, SEARCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
-                handler.post(() -> {
-                    llResults.removeAllViews();
-                    selectedIds.clear();
-                    idCheckboxes.clear();
-                    fileItemViews.clear();
-                    cbSelectAll.setChecked(false);
-                    updateSelectionCounter();
-
-                    if (currentMatchedIds.length == 0) {
-                        Toast.makeText(this, "No matching records found.", Toast.LENGTH_LONG).show();
-                        tvResultsTitle.setVisibility(View.GONE);
-                        svResults.setVisibility(View.GONE);
-                        btnDownload.setVisibility(View.GONE);
-                    } else {
-                        Toast.makeText(this, "Found " + currentMatchedIds.length + " matching IDs!", Toast.LENGTH_SHORT).show();
-                        
-                        LayoutInflater inflater = LayoutInflater.from(this);
-                        for (int id : currentMatchedIds) {
-                            View itemView = inflater.inflate(R.layout.item_file_download, llResults, false);
-                            
-                            CheckBox cb = itemView.findViewById(R.id.cbFile);
-                            TextView tvName = itemView.findViewById(R.id.tvFileName);
-                            TextView tvStatus = itemView.findViewById(R.id.tvStatus);
-                            
-                            tvName.setText("File ID: " + id);
-                            tvStatus.setText("Ready to download");
-                            
-                            cb.setOnCheckedChangeListener((buttonView, isChecked) -> {
-                                if (isChecked) {
-                                    if (!selectedIds.contains(id)) selectedIds.add(id);
-                                } else {
-                                    selectedIds.remove(Integer.valueOf(id));
-                                }
-                                updateSelectionCounter();
-                            });
-                            
-                            llResults.addView(itemView);
-                            idCheckboxes.add(cb);
-                            fileItemViews.put(id, itemView);
-                        }
-                        
-                        tvResultsTitle.setVisibility(View.VISIBLE);
-                        svResults.setVisibility(View.VISIBLE);
-                        btnDownload.setVisibility(View.VISIBLE);
-                    }
-                });
 
-            } catch (Exception e) {
-                e.printStackTrace();
-                handler.post(() -> Toast.makeText(this, "Search failed: " + e.getMessage(), Toast.LENGTH_LONG).show());
+        // 0. Cleanup previous searches and open the space's session; the result cache is kept
+        CompletableFuture<DsseSession> prepared = AsyncIo.supply(() -> {
+            checkActive(search);
+            File publicDecryptedDir = new File(Environment.getExternalStorageDirectory(), "PI_SearchResults");
+            clearDirectories(new File(getFilesDir(), "downloads"), publicDecryptedDir);
+            Log.i("PI_SEARCH", "Generating tokens for P1: " + p1 + ", P2: " + p2 + " using DB storage: " + storagePath);
+            return sessionFor(storagePath);
+        });
+
+        // 1. Tokens for both params; they carry each keyword's state and key the result cache
+        CompletableFuture<String[][]> tokens = prepared.thenCompose(session -> AsyncIo.supply(() -> {
+            try (DsseSession dsse = session) {
+                checkActive(search);
+                String[][] t = rangeCover ? dsse.getRangeCoverTokens(low, high, spaceParams.getDomain())
+                        : dsse.getSearchTokens(p1, p2);
+                Log.i("PI_SEARCH", "Tokens: P1 u=" + t[0][0] + ", count=" + t[0][2] + "; P2 u=" + t[1][0] + ", count=" + t[1][2]);
+                return t;
+            }
+        }));
+
+        tokens.thenCompose(t -> {
+            SearchResult memoized = resultCache.get(dbName, t);
+            if (memoized != null) {
+                Log.i("PI_SEARCH", "Serving P1: " + p1 + ", P2: " + p2 + " from the search cache");
+                return CompletableFuture.completedFuture(memoized);
             }
+            return query(search, storagePath, spaceParams, apiUrl, dbName, t, token, batchedSearch)
+                    .thenApply(ids -> {
+                        resultCache.put(dbName, t, ids);
+                        return ids;
+                    });
+        }).whenComplete((ids, error) -> {
+            if (error != null) search.completeExceptionally(AsyncIo.rootCause(error));
+            else search.complete(ids);
         });
+
+        search.whenComplete((ids, error) -> handler.post(() -> {
+            // Results of a superseded or cancelled query are dropped
+            if (search != currentSearch || error instanceof CancellationException) return;
+            if (error != null) {
+                Log.e("PI_SEARCH", "Search failed", error);
+                String reason = error instanceof TimeoutException ? "timed out" : error.getMessage();
+                Toast.makeText(this, "Search failed: " + reason, Toast.LENGTH_LONG).show();
+                return;
+            }
+            showResults(ids);
+        }));
+    }
+
+    // 2-3. Server lookups for both params, then post-processing of the matches
+    private CompletableFuture<SearchResult> query(CompletableFuture<SearchResult> search, String storagePath,
+                                                  SpaceParams spaceParams, String apiUrl, String dbName,
+                                                  String[][] tokens, String token, boolean batchedSearch) {
+        // The two params only meet again at post-processing
+        CompletableFuture<Matches[]> lookups;
+        if (batchedSearch) {
+            lookups = AsyncIo.supply(() -> {
+                checkActive(search);
+                return fetchSearchResultsBatch(apiUrl, dbName, tokens, token);
+            });
+        } else {
+            CompletableFuture<Matches> lookup1 = lookup(search, apiUrl, dbName, tokens[0], token);
+            CompletableFuture<Matches> lookup2 = lookup(search, apiUrl, dbName, tokens[1], token);
+            lookups = lookup1.thenCombine(lookup2, (res1, res2) -> new Matches[]{res1, res2});
+        }
+
+        // 3. Post Process
+        return lookups.thenCompose(results -> AsyncIo.supply(() -> {
+            checkActive(search);
+            Matches res1 = results[0], res2 = results[1];
+            Log.i("PI_SEARCH", "P1 Results received: " + res1.count + ", P2 Results received: " + res2.count);
+            if (spaceParams.isRangeCover()) {
+                // Each lookup returns the last position below its bound; the matches lie between them
+                return SearchResult.fromRuns(performRangeCoverPostProcessing(res1.first, res2.first));
+            }
+            // One bit per file of the space, so bitmaps shrink with it
+            return SearchResult.fromRuns(performPostProcessing(storagePath, spaceParams.getFileCount(),
+                    res1.first, res1.second, res2.first, res2.second));
+        }));
+    }
+
+    // GET for one param; fails the whole query as soon as either side fails
+    private CompletableFuture<Matches> lookup(CompletableFuture<SearchResult> search, String apiUrl,
+                                              String dbName, String[] tokens, String token) {
+        CompletableFuture<Matches> lookup = AsyncIo.supply(() -> {
+            checkActive(search);
+            return fetchSearchResults(apiUrl, dbName, tokens, token);
+        });
+        lookup.whenComplete((results, error) -> {
+            if (error != null) search.completeExceptionally(AsyncIo.rootCause(error));
+        });
+        return lookup;
+    }
+
+    // Stages of a query that has been cancelled, timed out or failed elsewhere stop before their next call
+    private static void checkActive(CompletableFuture<?> search) {
+        if (search.isDone()) throw new CancellationException("Search no longer active");
+    }
+
+    private void showResults(SearchResult matchedIds) {
+        currentMatchedIds = matchedIds;
+        selection = new SelectionModel(matchedIds);
+        itemStates.clear();
+        cbSelectAll.setChecked(false);
+        resultsAdapter.notifyDataSetChanged();
+        updateSelectionCounter();
+
+        if (currentMatchedIds.isEmpty()) {
+            Toast.makeText(this, "No matching records found.", Toast.LENGTH_LONG).show();
+            tvResultsTitle.setVisibility(View.GONE);
+            svResults.setVisibility(View.GONE);
+            btnDownload.setVisibility(View.GONE);
+        } else {
+            Toast.makeText(this, "Found " + currentMatchedIds.size() + " matching IDs!", Toast.LENGTH_SHORT).show();
+            tvResultsTitle.setVisibility(View.VISIBLE);
+            svResults.setVisibility(View.VISIBLE);
+            btnDownload.setVisibility(View.VISIBLE);
+        }
+    }
+
+    // Both params in one POST /get-index_values; results come back in query order
+    private Matches[] fetchSearchResultsBatch(String apiUrl, String dbName, String[][] tokens, String token) throws Exception {
+        JSONArray queries = new JSONArray();
+        for (String[] t : tokens) {
+            JSONObject query = new JSONObject();
+            query.put("keyword_token", t[0]);
+            query.put("state_token", t[1]);
+            query.put("count", Integer.parseInt(t[2]));
+            queries.put(query);
+        }
+        JSONObject body = new JSONObject();
+        body.put("dbName", dbName);
+        body.put("queries", queries);
+        Log.i("PI_SEARCH", "Requesting P1 and P2 from server in one batch");
+        Matches[] results = {new Matches(), new Matches()};
+        network.performPostRequest(apiUrl + "/get-index_values", body.toString(), token,
+                JsonResponses.batchResults((query, value) -> {
+                    if (query >= results.length) throw new IOException("Server answered more queries than were sent");
+                    results[query].add(value);
+                }));
+        return results;
+    }
+
+    private Matches fetchSearchResults(String apiUrl, String dbName, String[] tokens, String token) throws Exception {
+        // A keyword the client never updated has nothing stored on the server
+        if ("0".equals(tokens[2])) return new Matches();
+        String url = apiUrl + "/get-index_value?dbName=" + dbName + "&keyword_token=" + Uri.encode(tokens[0]) + "&state_token=" + Uri.encode(tokens[1]) + "&count=" + tokens[2];
+        Log.i("PI_SEARCH", "Requesting from server: " + url);
+        Matches matches = new Matches();
+        network.performGetRequest(url, token, JsonResponses.results((query, value) -> matches.add(value)));
+        return matches;
+    }
+
+    // The two values post-processing reads from a results list, and how many the server sent
+    private static final class Matches {
+        int count;
+        String first = "-1";
+        String second = "-1";
+
+        void add(String value) {
+            if (count == 0) first = value;
+            else if (count == 1) second = value;
+            count++;
+        }
     }
 
     private void performDownloadSelected() {
-        if (selectedIds.isEmpty()) {
+        if (selection.isEmpty()) {
             Toast.makeText(this, "Please select at least one file to download", Toast.LENGTH_SHORT).show();
             return;
         }
@@ -250,13 +394,17 @@ public class SearchActivity extends AppCompatActivity {
         String token = prefs.getString("auth_token", null);
         String ip = prefs.getString("last_ip", BuildConfig.SERVER_IP);
 
-        Toast.makeText(this, "Downloading " + selectedIds.size() + " files...", Toast.LENGTH_SHORT).show();
+        // The download works from a snapshot, so later taps do not change what it fetches
+        SelectionModel toDownload = selection.copy();
+        SearchResult result = toDownload.getResult();
+
+        Toast.makeText(this, "Downloading " + toDownload.getSelectedCount() + " files...", Toast.LENGTH_SHORT).show();
         btnDownload.setEnabled(false);
         btnDownload.setText("DOWNLOADING...");
 
         executor.execute(() -> {
-            try {
-                String storagePath = getDbStoragePath(dbName);
+            // The download holds its own reference, so a later search cannot close the session under it
+            try (DsseSession dsse = sessionFor(getDbStoragePath(dbName))) {
                 File internalBase = getFilesDir();
                 File downloadDir = new File(internalBase, "downloads");
                 File decryptedDir = new File(Environment.getExternalStorageDirectory(), "PI_SearchResults");
@@ -264,61 +412,159 @@ public class SearchActivity extends AppCompatActivity {
                 if (!downloadDir.exists()) downloadDir.mkdirs();
                 if (!decryptedDir.exists()) decryptedDir.mkdirs();
 
-                int successCount = 0;
-                List<Integer> idsToDownload = new ArrayList<>(selectedIds);
-
-                for (int id : idsToDownload) {
-                    View itemView = fileItemViews.get(id);
-                    if (itemView == null) continue;
-
-                    ProgressBar pb = itemView.findViewById(R.id.pbDownload);
-                    TextView tvStatus = itemView.findViewById(R.id.tvStatus);
-                    ImageView ivIcon = itemView.findViewById(R.id.ivStatusIcon);
-
+                // Network and decryption run as separate stages, so both are busy at once
+                int downloadThreads = Math.max(1, prefs.getInt("download_concurrency", DEFAULT_DOWNLOAD_CONCURRENCY));
+                int decryptThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_DECRYPT_THREADS));
+                // Decrypt while downloading: only plaintext is written, instead of ciphertext written, read back and deleted
+                boolean streamDecrypt = prefs.getBoolean("stream_decrypt", true);
+                // Parallel byte ranges per file; only large files on a range-capable server are split
+                int downloadSegments = Math.max(1, prefs.getInt("download_segments", 1));
+                // Files of a locked space never change, so earlier decryptions are reused as they are
+                ResultFileCache cache = ResultFileCache.getInstance(this);
+                cache.setMaxBytes(prefs.getInt("result_cache_mb", DEFAULT_RESULT_CACHE_MB) * 1024L * 1024L);
+                Set<Integer> fromCache = ConcurrentHashMap.newKeySet();
+                DownloadPipeline.Downloader downloader = id -> {
                     String fileId = "ID" + id;
+                    File restored = restoreFromCache(cache, dbName, id, decryptedDir);
+                    if (restored != null) {
+                        fromCache.add(id);
+                        return restored;
+                    }
                     String downloadUrl = "http://" + ip + ":3000/api/download-file?dbName=" + dbName + "&fileId=" + fileId;
-                    
-                    try {
-                        handler.post(() -> tvStatus.setText("Phase 1: Downloading..."));
-                        
-                        String downloadedFileName = NetworkUtils.downloadFile(downloadUrl, downloadDir.getAbsolutePath(), token, progress -> {
+                    postItemState(result, id, 0, "Phase 1: Downloading...", null);
+                    NetworkUtils.ProgressListener progressListener = progress -> {
+                        // Phase 1: 0-80%
+                        int scaledProgress = progress * 80 / 100;
+                        postItemProgress(result, id, scaledProgress, "Phase 1: Downloading...");
+                    };
+                    if (streamDecrypt) {
+                        DecryptingOutputStream[] sink = new DecryptingOutputStream[1];
+                        try {
+                            network.download(downloadUrl, token, progressListener,
+                                    fileName -> sink[0] = dsse.openDecryptStream(new File(decryptedDir, fileName).getAbsolutePath()));
+                            return sink[0].getOutputFile();
+                        } catch (Exception e) {
+                            if (sink[0] != null) sink[0].abort();
+                            throw e;
+                        }
+                    }
+                    String downloadedFileName = network.downloadFile(downloadUrl, downloadDir.getAbsolutePath(), token, downloadSegments, progressListener);
+                    return new File(downloadDir, downloadedFileName);
+                };
+                // Bundle mode: one streamed response per DOWNLOAD_BUNDLE_SIZE files instead of a request per file
+                boolean bundleDownloads = prefs.getBoolean("bundle_downloads", false);
+                DownloadPipeline.BatchDownloader batchDownloader = !bundleDownloads ? null : (ids, handoff) -> {
+                    List<String> fileIds = new ArrayList<>();
+                    for (int id : ids) {
+                        File restored = restoreFromCache(cache, dbName, id, decryptedDir);
+                        if (restored == null) {
+                            fileIds.add("ID" + id);
+                            continue;
+                        }
+                        fromCache.add(id);
+                        handoff.accept(id, restored);
+                    }
+                    if (fileIds.isEmpty()) return;
+                    network.downloadBundle("http://" + ip + ":3000/api/download-files", dbName, fileIds, token, new NetworkUtils.BundleTarget() {
+                        // Files of a bundle arrive one after another, so one is in flight at a time
+                        private File stored;
+
+                        @Override
+                        public OutputStream open(String fileId, String fileName, long length) throws IOException {
+                            postItemState(result, idOf(fileId), 0, "Phase 1: Downloading...", null);
+                            if (streamDecrypt) {
+                                DecryptingOutputStream sink = dsse.openDecryptStream(new File(decryptedDir, fileName).getAbsolutePath());
+                                stored = sink.getOutputFile();
+                                return sink;
+                            }
+                            stored = new File(downloadDir, fileName);
+                            return new FileOutputStream(stored);
+                        }
+
+                        @Override
+                        public void onProgress(String fileId, int progress) {
                             // Phase 1: 0-80%
-                            int scaledProgress = progress * 80 / 100;
-                            handler.post(() -> pb.setProgress(scaledProgress));
-                        });
-                        
-                        handler.post(() -> {
-                            pb.setProgress(85);
-                            tvStatus.setText("Phase 2: Decrypting & Saving...");
-                        });
-
-                        File encFile = new File(downloadDir, downloadedFileName);
-                        File decFile = new File(decryptedDir, downloadedFileName);
-
-                        boolean success = decryptResultFile(storagePath, encFile.getAbsolutePath(), decFile.getAbsolutePath());
-                        if (success) {
-                            successCount++;
-                            encFile.delete(); // Delete encrypted file as requested
-                            handler.post(() -> {
-                                pb.setProgress(100);
-                                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                                    pb.setProgressTintList(ColorStateList.valueOf(0xFF4CAF50)); // Green
-                                }
-                                tvStatus.setText("Completed");
-                                ivIcon.setVisibility(View.VISIBLE);
-                                ivIcon.setOnClickListener(v -> openFile(decFile));
-                            });
-                        } else {
-                            handler.post(() -> tvStatus.setText("Failed: Decryption error"));
+                            postItemProgress(result, idOf(fileId), progress * 80 / 100, "Phase 1: Downloading...");
+                        }
+
+                        @Override
+                        public void onReceived(String fileId, OutputStream out) throws Exception {
+                            out.close();
+                            handoff.accept(idOf(fileId), stored);
+                        }
+
+                        @Override
+                        public void onAborted(String fileId, OutputStream out) {
+                            if (out instanceof DecryptingOutputStream) {
+                                ((DecryptingOutputStream) out).abort();
+                                return;
+                            }
+                            try {
+                                out.close();
+                            } catch (IOException ignored) {
+                            }
+                            stored.delete();
+                        }
+
+                        @Override
+                        public void onMissing(String fileId) {
+                            // Asking again on its own would only get another 404
+                            handoff.fail(idOf(fileId), new FileNotFoundException(fileId + " is not on the server"));
+                        }
+                    });
+                };
+                DownloadPipeline.Decryptor decryptor = (id, encFile) -> {
+                    if (fromCache.remove(id)) return encFile;
+                    // Streamed files are already plaintext by the time they reach this stage
+                    File decFile = encFile;
+                    if (!streamDecrypt) {
+                        postItemState(result, id, 85, "Phase 2: Decrypting & Saving...", null);
+                        decFile = new File(decryptedDir, encFile.getName());
+                        if (!dsse.decryptFile(encFile.getAbsolutePath(), decFile.getAbsolutePath())) {
+                            throw new IOException("Decryption error");
                         }
-                    } catch (Exception e) {
+                        encFile.delete(); // Delete encrypted file as requested
+                    }
+                    try {
+                        cache.put(dbName, "ID" + id, decFile);
+                    } catch (IOException e) {
+                        // The file itself is fine; it just has to be fetched again next time
+                        Log.w("PI_SEARCH", "Could not cache ID" + id + ": " + e.getMessage());
+                    }
+                    return decFile;
+                };
+                DownloadPipeline.Listener listener = new DownloadPipeline.Listener() {
+                    @Override
+                    public void onDownloaded(int id) {
+                        if (!streamDecrypt && !fromCache.contains(id)) postItemState(result, id, 80, "Downloaded, waiting to decrypt...", null);
+                    }
+
+                    @Override
+                    public void onCompleted(int id, File decrypted) {
+                        postItemState(result, id, 100, "Completed", decrypted);
+                    }
+
+                    @Override
+                    public void onFailed(int id, Exception e) {
                         Log.e("PI_SEARCH", "Failed ID" + id + ": " + e.getMessage());
-                        handler.post(() -> tvStatus.setText("Error: " + e.getMessage()));
+                        postItemState(result, id, 0, "Failed: " + e.getMessage(), null);
                     }
+                };
+
+                int successCount;
+                try (DownloadPipeline pipeline = new DownloadPipeline(downloadThreads, decryptThreads,
+                        DOWNLOAD_QUEUE_CAPACITY, downloader, decryptor, listener)) {
+                    successCount = pipeline.run(toDownload.iterator(), DOWNLOAD_BUNDLE_SIZE, batchDownloader);
                 }
+                Log.i("PI_SEARCH", "Result cache: " + cache.getHitCount() + " hits, " + cache.getMissCount() + " misses, "
+                        + cache.getEntryCount() + " files / " + cache.getSizeBytes() / 1024 + " KB");
+                Log.i("PI_SEARCH", "Row updates: " + itemProgress.getPublishedCount() + " published, "
+                        + itemProgress.getDeliveredCount() + " delivered, " + itemProgress.getDroppedCount() + " dropped");
 
                 int finalSuccessCount = successCount;
                 handler.post(() -> {
+                    // Rows show their final state before the summary does
+                    itemProgress.flush();
                     btnDownload.setEnabled(true);
                     btnDownload.setText("DOWNLOAD SELECTED");
                     Toast.makeText(this, "Successfully downloaded " + finalSuccessCount + " files to PI_SearchResults", Toast.LENGTH_LONG).show();
@@ -327,6 +573,7 @@ public class SearchActivity extends AppCompatActivity {
             } catch (Exception e) {
                 e.printStackTrace();
                 handler.post(() -> {
+                    itemProgress.flush();
                     btnDownload.setEnabled(true);
                     btnDownload.setText("DOWNLOAD SELECTED");
                     Toast.makeText(this, "Download failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
@@ -335,9 +582,153 @@ public class SearchActivity extends AppCompatActivity {
         });
     }
 
+    // Puts a cached result into the output folder; null if the file is not cached
+    private static File restoreFromCache(ResultFileCache cache, String dbName, int id, File decryptedDir) throws IOException {
+        return cache.restore(dbName, "ID" + id, decryptedDir);
+    }
+
+    private static int idOf(String fileId) {
+        return Integer.parseInt(fileId.substring(2));
+    }
+
     private void updateSelectionCounter() {
-        int total = currentMatchedIds != null ? currentMatchedIds.length : 0;
-        tvCounter.setText("Selected: " + selectedIds.size() + " / " + total);
+        int total = currentMatchedIds != null ? currentMatchedIds.size() : 0;
+        tvCounter.setText("Selected: " + selection.getSelectedCount() + " / " + total);
+    }
+
+    // Records a new download step for one ID; always shown unless a newer step replaces it first
+    private void postItemState(SearchResult result, int id, int progress, String status, File openFile) {
+        itemProgress.publish(id, new ItemUpdate(result, progress, status, openFile));
+    }
+
+    // Byte progress within the current step; updates that barely move the bar are dropped
+    private void postItemProgress(SearchResult result, int id, int progress, String status) {
+        itemProgress.publishProgress(id, progress, new ItemUpdate(result, progress, status, null));
+    }
+
+    // Applies the newest step of one ID and rebinds its row if it is on screen
+    private void applyItemState(int id, ItemUpdate update) {
+        // Rows of a newer search are not touched by downloads started for an older one
+        if (update.result != currentMatchedIds) return;
+        ItemState state = itemStates.get(id);
+        if (state == null) {
+            state = new ItemState();
+            itemStates.put(id, state);
+        }
+        state.progress = update.progress;
+        state.status = update.status;
+        state.openFile = update.openFile;
+        int position = update.result.indexOf(id);
+        if (position >= 0) resultsAdapter.notifyItemChanged(position);
+    }
+
+    private static class ItemState {
+        int progress;
+        String status;
+        File openFile;
+    }
+
+    private static final class ItemUpdate {
+        final SearchResult result;
+        final int progress;
+        final String status;
+        final File openFile;
+
+        ItemUpdate(SearchResult result, int progress, String status, File openFile) {
+            this.result = result;
+            this.progress = progress;
+            this.status = status;
+            this.openFile = openFile;
+        }
+    }
+
+    // One row per matched ID, bound on demand from currentMatchedIds, the selection and itemStates
+    private class ResultsAdapter extends RecyclerView.Adapter<ResultsAdapter.ViewHolder> {
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_file_download, parent, false);
+            return new ViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            int id = currentMatchedIds.get(position);
+            ItemState state = itemStates.get(id);
+            holder.tvName.setText("File ID: " + id);
+
+            // Detach the listener first so rebinding a recycled row does not change the selection
+            holder.cbFile.setOnCheckedChangeListener(null);
+            holder.cbFile.setChecked(selection.isSelected(id));
+            holder.cbFile.setOnCheckedChangeListener((buttonView, isChecked) -> {
+                selection.setSelected(id, isChecked);
+                updateSelectionCounter();
+            });
+
+            if (state == null) {
+                holder.pbDownload.setProgress(0);
+                holder.tvStatus.setText("Ready to download");
+            } else {
+                holder.pbDownload.setProgress(state.progress);
+                holder.tvStatus.setText(state.status);
+            }
+
+            File openFile = state != null ? state.openFile : null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                holder.pbDownload.setProgressTintList(openFile != null ? ColorStateList.valueOf(0xFF4CAF50) : null); // Green when done
+            }
+            holder.ivStatusIcon.setVisibility(openFile != null ? View.VISIBLE : View.GONE);
+            holder.ivStatusIcon.setOnClickListener(openFile != null ? v -> openFile(openFile) : null);
+        }
+
+        @Override
+        public int getItemCount() {
+            return currentMatchedIds != null ? currentMatchedIds.size() : 0;
+        }
+
+        class ViewHolder extends RecyclerView.ViewHolder {
+            CheckBox cbFile;
+            TextView tvName, tvStatus;
+            ProgressBar pbDownload;
+            ImageView ivStatusIcon;
+
+            ViewHolder(View itemView) {
+                super(itemView);
+                cbFile = itemView.findViewById(R.id.cbFile);
+                tvName = itemView.findViewById(R.id.tvFileName);
+                tvStatus = itemView.findViewById(R.id.tvStatus);
+                pbDownload = itemView.findViewById(R.id.pbDownload);
+                ivStatusIcon = itemView.findViewById(R.id.ivStatusIcon);
+            }
+        }
+    }
+
+    // Opens the space's native session on first use and swaps it when another space is searched.
+    // The caller gets a reference of its own and closes it when done; a session swapped out stays
+    // open until its last user, e.g. a download still decrypting, has closed it.
+    private synchronized DsseSession sessionFor(String storagePath) throws Exception {
+        if (destroyed) throw new CancellationException("Activity destroyed");
+        if (session == null || !session.getStoragePath().equals(storagePath)) {
+            if (session != null) session.close();
+            session = DsseSession.open(storagePath);
+        }
+        return session.acquire();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (currentSearch != null) currentSearch.cancel(true);
+        itemProgress.cancel();
+        executor.shutdown();
+        synchronized (this) {
+            destroyed = true;
+            if (session != null) {
+                session.close();
+                session = null;
+            }
+        }
     }
 
     private String getDbStoragePath(String dbName) {
@@ -364,9 +755,7 @@ public class SearchActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                String response = NetworkUtils.performGetRequest(url, token);
-                JSONObject jsonResponse = new JSONObject(response);
-                JSONArray spaces = jsonResponse.optJSONArray("spaces");
+                List<String> spaces = network.performGetRequest(url, token, JsonResponses.spaceNames());
                 handler.post(() -> updateSpaceList(spaces));
             } catch (Exception e) {
                 e.printStackTrace();
@@ -375,21 +764,12 @@ public class SearchActivity extends AppCompatActivity {
         });
     }
 
-    private void updateSpaceList(JSONArray spaces) {
-        if (spaces == null || spaces.length() == 0) {
+    private void updateSpaceList(List<String> spaceNames) {
+        if (spaceNames.isEmpty()) {
             actvSpaceSelector.setText("No secure spaces found.", false);
             return;
         }
 
-        List<String> spaceNames = new ArrayList<>();
-        try {
-            for (int i = 0; i < spaces.length(); i++) {
-                spaceNames.add(spaces.getString(i));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
         ArrayAdapter<String> adapter = new ArrayAdapter<>(
                 this,
                 R.layout.item_dropdown_luxury,
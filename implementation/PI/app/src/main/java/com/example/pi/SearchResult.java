@@ -0,0 +1,116 @@
+package com.example.pi;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Matched file IDs of a search, kept as the sorted runs [start, end) that post-processing
+ * returns. A range query matches one contiguous run (or a few), so the result stays a handful
+ * of ints however many IDs it covers; the count is known up front and single IDs are looked
+ * up by position, so nothing needs the full ID list unless toArray() is called.
+ */
+public final class SearchResult {
+
+    public static final SearchResult EMPTY = new SearchResult(new int[0]);
+
+    // runs[2i] is the first ID of run i, runs[2i + 1] one past its last ID
+    private final int[] runs;
+    // before[i] is the number of IDs in runs 0..i-1; before[runCount] is the total
+    private final int[] before;
+
+    private SearchResult(int[] runs) {
+        this.runs = runs;
+        this.before = new int[runs.length / 2 + 1];
+        for (int i = 0; i < runs.length / 2; i++) {
+            before[i + 1] = before[i] + (runs[2 * i + 1] - runs[2 * i]);
+        }
+    }
+
+    // Runs as returned by performPostProcessing: ascending, non-overlapping, non-empty
+    public static SearchResult fromRuns(int[] runs) {
+        if (runs == null || runs.length == 0) return EMPTY;
+        if (runs.length % 2 != 0) throw new IllegalArgumentException("Runs must come in start/end pairs");
+        for (int i = 0; i < runs.length; i += 2) {
+            if (runs[i] >= runs[i + 1] || (i > 0 && runs[i] <= runs[i - 1])) {
+                throw new IllegalArgumentException("Runs must be ascending and non-empty");
+            }
+        }
+        return new SearchResult(runs);
+    }
+
+    public int size() {
+        return before[before.length - 1];
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int getRunCount() {
+        return runs.length / 2;
+    }
+
+    public int getRunStart(int run) {
+        return runs[2 * run];
+    }
+
+    public int getRunEnd(int run) {
+        return runs[2 * run + 1];
+    }
+
+    // ID at the given position in ascending order
+    public int get(int position) {
+        if (position < 0 || position >= size()) throw new IndexOutOfBoundsException("position " + position);
+        // Runs are non-empty, so before[] is strictly increasing and a miss falls inside a run
+        int run = Arrays.binarySearch(before, position);
+        if (run < 0) run = -run - 2;
+        return runs[2 * run] + (position - before[run]);
+    }
+
+    // Position of the ID in ascending order, or -1 if it did not match
+    public int indexOf(int id) {
+        int lo = 0, hi = getRunCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (id < runs[2 * mid]) hi = mid - 1;
+            else if (id >= runs[2 * mid + 1]) lo = mid + 1;
+            else return before[mid] + (id - runs[2 * mid]);
+        }
+        return -1;
+    }
+
+    public boolean contains(int id) {
+        return indexOf(id) >= 0;
+    }
+
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int run = 0;
+            private int next = runs.length > 0 ? runs[0] : 0;
+
+            @Override
+            public boolean hasNext() {
+                return run < getRunCount();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!hasNext()) throw new NoSuchElementException();
+                int id = next++;
+                if (next == runs[2 * run + 1] && ++run < getRunCount()) next = runs[2 * run];
+                return id;
+            }
+        };
+    }
+
+    // Materializes every ID; only for callers that really need them all at once
+    public int[] toArray() {
+        int[] ids = new int[size()];
+        int n = 0;
+        for (int i = 0; i < runs.length; i += 2) {
+            for (int id = runs[i]; id < runs[i + 1]; id++) ids[n++] = id;
+        }
+        return ids;
+    }
+}
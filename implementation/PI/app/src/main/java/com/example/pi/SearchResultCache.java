@@ -0,0 +1,184 @@
+package com.example.pi;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Post-processed search results keyed by a space and the search tokens of both params. The
+ * tokens are derived from each keyword's current state (st, c) in Sigma_map1, so they are
+ * exactly what the server answers to: once a space is locked the same tokens always bring
+ * back the same lookups and the same matches, and a hit skips both round trips and
+ * post-processing. An update would move the states and therefore the key, so a stale entry
+ * is simply never asked for again.
+ *
+ * Recent entries are kept in memory and, when the disk tier is on, also under
+ * {@code <filesDir>/search_cache/<dbName>/} so they outlive the process.
+ */
+public class SearchResultCache {
+
+    private static final String DIR_NAME = "search_cache";
+    private static final int MAX_MEMORY_ENTRIES = 64;
+    private static final int FORMAT_VERSION = 1;
+
+    private static SearchResultCache instance;
+
+    private final File root;
+    private final LinkedHashMap<String, SearchResult> memory = new LinkedHashMap<String, SearchResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SearchResult> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    private boolean diskEnabled = true;
+    private long hits;
+    private long misses;
+
+    SearchResultCache(File root) {
+        this.root = root;
+    }
+
+    public static synchronized SearchResultCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new SearchResultCache(new File(context.getFilesDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    public synchronized void setDiskEnabled(boolean diskEnabled) {
+        this.diskEnabled = diskEnabled;
+    }
+
+    // Result of an earlier search that sent the same tokens to the same space, or null
+    public SearchResult get(String dbName, String[][] tokens) {
+        String key = key(dbName, tokens);
+        synchronized (this) {
+            SearchResult result = memory.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            if (!diskEnabled) {
+                misses++;
+                return null;
+            }
+        }
+
+        SearchResult result = read(diskFile(dbName, key), key);
+        synchronized (this) {
+            if (result == null) {
+                misses++;
+                return null;
+            }
+            memory.put(key, result);
+            hits++;
+            return result;
+        }
+    }
+
+    public void put(String dbName, String[][] tokens, SearchResult result) {
+        String key = key(dbName, tokens);
+        boolean toDisk;
+        synchronized (this) {
+            memory.put(key, result);
+            toDisk = diskEnabled;
+        }
+        if (toDisk) write(diskFile(dbName, key), key, result);
+    }
+
+    // Forgets every result of a space, e.g. once the space is deleted
+    public void invalidate(String dbName) {
+        String prefix = dbName + "\u0000";
+        synchronized (this) {
+            Iterator<String> it = memory.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) it.remove();
+            }
+        }
+        File[] files = new File(root, dbName).listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        new File(root, dbName).delete();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    // Keyword token, state token and count of every param, in query order
+    private static String key(String dbName, String[][] tokens) {
+        StringBuilder key = new StringBuilder(dbName);
+        for (String[] t : tokens) {
+            key.append('\u0000').append(t[0]).append('\u0000').append(t[1]).append('\u0000').append(t[2]);
+        }
+        return key.toString();
+    }
+
+    private File diskFile(String dbName, String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder("search-");
+            for (int i = 0; i < 8; i++) name.append(String.format("%02x", digest[i]));
+            return new File(new File(root, dbName), name.append(".bin").toString());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SearchResult read(File file, String key) {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // The full key is stored, as the file name is only a prefix of its hash
+            if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key)) return null;
+            // A corrupt count must not size the array: each run bound takes four bytes of the file
+            int count = in.readInt();
+            if (count < 0 || count > file.length() / 4) throw new IOException("Bad run count " + count);
+            int[] runs = new int[count];
+            for (int i = 0; i < runs.length; i++) runs[i] = in.readInt();
+            return SearchResult.fromRuns(runs);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w("PI_SEARCH", "Dropping unreadable search cache entry " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    // Written to a temporary file first, so a crash never leaves half an entry behind
+    private static void write(File file, String key, SearchResult result) {
+        File dir = file.getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeInt(result.getRunCount() * 2);
+            for (int run = 0; run < result.getRunCount(); run++) {
+                out.writeInt(result.getRunStart(run));
+                out.writeInt(result.getRunEnd(run));
+            }
+        } catch (IOException e) {
+            Log.w("PI_SEARCH", "Could not persist search result: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) tmp.delete();
+    }
+}
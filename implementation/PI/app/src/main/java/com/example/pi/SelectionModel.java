@@ -0,0 +1,127 @@
+package com.example.pi;
+
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Selected file IDs of one search result, one bit per ID. Toggling an ID is a single bit
+ * operation, and select-all, invert and range selection work a run of the result at a time
+ * through BitSet's word-level range operations, so no per-ID callbacks are involved. The
+ * selected count is maintained alongside the bits and is read in O(1).
+ *
+ * Only IDs that are part of the result can be selected. Not thread-safe: use it from the
+ * main thread and hand a copy() to background work.
+ */
+public final class SelectionModel {
+
+    private final SearchResult result;
+    private final BitSet bits;
+    private int count;
+
+    public SelectionModel(SearchResult result) {
+        this(result, new BitSet(), 0);
+    }
+
+    private SelectionModel(SearchResult result, BitSet bits, int count) {
+        this.result = result;
+        this.bits = bits;
+        this.count = count;
+    }
+
+    public SearchResult getResult() {
+        return result;
+    }
+
+    public boolean isSelected(int id) {
+        return id >= 0 && bits.get(id);
+    }
+
+    public void setSelected(int id, boolean selected) {
+        if (!result.contains(id) || bits.get(id) == selected) return;
+        bits.set(id, selected);
+        count += selected ? 1 : -1;
+    }
+
+    public void toggle(int id) {
+        setSelected(id, !isSelected(id));
+    }
+
+    // Selects every matched ID in [fromId, toId)
+    public void selectRange(int fromId, int toId) {
+        setRange(fromId, toId, true);
+    }
+
+    // Deselects every matched ID in [fromId, toId)
+    public void deselectRange(int fromId, int toId) {
+        setRange(fromId, toId, false);
+    }
+
+    public void selectAll() {
+        for (int run = 0; run < result.getRunCount(); run++) {
+            bits.set(result.getRunStart(run), result.getRunEnd(run));
+        }
+        count = result.size();
+    }
+
+    public void clear() {
+        bits.clear();
+        count = 0;
+    }
+
+    // Selected IDs become unselected and the other matched IDs become selected
+    public void invert() {
+        for (int run = 0; run < result.getRunCount(); run++) {
+            bits.flip(result.getRunStart(run), result.getRunEnd(run));
+        }
+        count = result.size() - count;
+    }
+
+    public int getSelectedCount() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public boolean isAllSelected() {
+        return count == result.size() && count > 0;
+    }
+
+    // Selected IDs in ascending order, skipping unselected words without testing each bit
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int next = bits.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next < 0) throw new NoSuchElementException();
+                int id = next;
+                next = id == Integer.MAX_VALUE ? -1 : bits.nextSetBit(id + 1);
+                return id;
+            }
+        };
+    }
+
+    // Independent snapshot, e.g. for a download that runs while the user keeps selecting
+    public SelectionModel copy() {
+        return new SelectionModel(result, (BitSet) bits.clone(), count);
+    }
+
+    private void setRange(int fromId, int toId, boolean selected) {
+        for (int run = 0; run < result.getRunCount(); run++) {
+            int start = Math.max(fromId, result.getRunStart(run));
+            int end = Math.min(toId, result.getRunEnd(run));
+            if (start >= end) continue;
+            int before = bits.get(start, end).cardinality();
+            bits.set(start, end, selected);
+            count += selected ? (end - start) - before : -before;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.pi;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Index parameters of one space, kept in {@code <storagePath>/space.properties}.
+ *
+ * The value domain is the range of keywords the index covers, [0, domain): a flat index
+ * derives 2 * domain tokens from it. It is either declared when the space is created or, if
+ * not, taken from the largest keyword of the files indexed. The file count is written once
+ * the update has finished; search sizes its bitmaps from it, one bit per file. Spaces indexed
+ * before these parameters existed have neither and keep the old fixed domain of 100000.
+ *
+ * The index mode is chosen at creation. A range-cover index groups values into dyadic nodes
+ * (see RangeCoverConversion in v2.cpp) and derives one token per node that holds a file, so
+ * its token count follows the files rather than the domain, which may then reach
+ * MAX_RANGE_COVER_DOMAIN. Spaces created without a mode are flat.
+ */
+public final class SpaceParams {
+
+    public static final int DEFAULT_DOMAIN = 100000;
+    // Largest domain a space may declare or derive; the fixed domain spaces used to have
+    public static final int MAX_DOMAIN = 100000;
+    public static final int MAX_RANGE_COVER_DOMAIN = 1 << 30;
+
+    public static final String INDEX_FLAT = "flat";
+    public static final String INDEX_RANGE_COVER = "range_cover";
+
+    private static final String FILE_NAME = "space.properties";
+
+    private final File file;
+    private final Properties state = new Properties();
+
+    private SpaceParams(File file) {
+        this.file = file;
+    }
+
+    // Never fails: a missing or unreadable file reads as a space without parameters
+    public static SpaceParams load(File storageDir) {
+        SpaceParams params = new SpaceParams(new File(storageDir, FILE_NAME));
+        if (params.file.exists()) {
+            try (FileInputStream in = new FileInputStream(params.file)) {
+                params.state.load(in);
+            } catch (IOException | IllegalArgumentException e) {
+                params.state.clear();
+            }
+        }
+        return params;
+    }
+
+    // Forgets the parameters of a deleted space, so a new space of the same name starts clean
+    public static void clear(File storageDir) {
+        new File(storageDir, FILE_NAME).delete();
+    }
+
+    // Domain chosen at creation, or 0 if it is to be derived from the data
+    public int getDeclaredDomain() {
+        return getInt("declaredDomain", 0);
+    }
+
+    public void setDeclaredDomain(int domain) throws IOException {
+        state.setProperty("declaredDomain", String.valueOf(domain));
+        save();
+    }
+
+    public String getIndexMode() {
+        return state.getProperty("indexMode", INDEX_FLAT);
+    }
+
+    public void setIndexMode(String mode) throws IOException {
+        state.setProperty("indexMode", mode);
+        save();
+    }
+
+    public boolean isRangeCover() {
+        return INDEX_RANGE_COVER.equals(getIndexMode());
+    }
+
+    // Domain of the finished index
+    public int getDomain() {
+        return getInt("domain", DEFAULT_DOMAIN);
+    }
+
+    // Files in the finished index; the old domain size for spaces indexed without parameters
+    public int getFileCount() {
+        return getInt("fileCount", DEFAULT_DOMAIN);
+    }
+
+    public void setIndexed(int domain, int fileCount) throws IOException {
+        state.setProperty("domain", String.valueOf(domain));
+        state.setProperty("fileCount", String.valueOf(fileCount));
+        save();
+    }
+
+    // The declared domain, or the smallest one that holds every keyword
+    public static int domainFor(int declaredDomain, int[] keywords) {
+        if (declaredDomain > 0) return declaredDomain;
+        int domain = 1;
+        for (int keyword : keywords) domain = Math.max(domain, keyword + 1);
+        return domain;
+    }
+
+    // Largest domain a space of the given mode may declare or derive
+    public static int maxDomain(String mode) {
+        return INDEX_RANGE_COVER.equals(mode) ? MAX_RANGE_COVER_DOMAIN : MAX_DOMAIN;
+    }
+
+    private int getInt(String key, int absent) {
+        String value = state.getProperty(key);
+        return value != null ? Integer.parseInt(value) : absent;
+    }
+
+    // Write-then-rename so a crash never leaves a half-written file behind
+    private void save() throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, FILE_NAME + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            state.store(out, "PI space parameters");
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Could not update " + FILE_NAME);
+        }
+    }
+}
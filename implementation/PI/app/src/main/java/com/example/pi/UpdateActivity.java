@@ -12,6 +12,7 @@ import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
@@ -29,26 +30,69 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.pi.network.AdaptiveBatchSizer;
+import com.example.pi.network.BatchUploadPipeline;
+import com.example.pi.network.HttpStatusException;
+import com.example.pi.network.IndexBatchFormat;
+import com.example.pi.network.IndexPairsJsonBody;
+import com.example.pi.network.JsonResponses;
 import com.example.pi.network.NetworkUtils;
+import com.example.pi.network.RecordBatcher;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class UpdateActivity extends AppCompatActivity {
 
+    private static final String TAG = "PI_UPDATE";
+
     static {
         System.loadLibrary("pi");
     }
 
-    private native String[] generateTokens(String storagePath, String[] filePaths, int[] keywords);
+    private native String[] generateTokens(String storagePath, String[] filePaths, int[] keywords, int domain, boolean rangeCover);
+    private native String[] streamTokens(String storagePath, String[] filePaths, int[] keywords, int domain, boolean rangeCover,
+                                         boolean encryptFiles, int chunkSize, int skipTokens, int threads, TokenSink sink);
+    private native int getCommittedTokenCount(String storagePath);
+    private native boolean clearCommittedTokenCount(String storagePath);
+    private native long countTokens(int[] keywords, int domain, boolean rangeCover);
+
+    /**
+     * Receives update tokens from native code while they are being generated.
+     * Each record is the raw 32-byte u followed by the raw 32-byte e. When native code
+     * encrypts the input files, their paths arrive before the first chunk.
+     */
+    public interface TokenSink {
+        void onFilesEncrypted(String[] encryptedPaths) throws Exception;
+
+        void onTokenChunk(byte[] records, int count) throws Exception;
+    }
+
+    private static final int TOKEN_CHUNK_SIZE = 5000;
+    // Token batches allowed in flight at once; also bounds how many chunks sit on the heap
+    static final int DEFAULT_UPLOAD_CONCURRENCY = 4;
+    private static final int UPLOAD_BATCH_SIZE = 5;
+    // Bounds and steps for adaptive upload batches: token records per request, files per multipart request
+    private static final int MIN_TOKEN_BATCH = 500;
+    private static final int MAX_TOKEN_BATCH = 20000;
+    private static final int TOKEN_BATCH_STEP = 1000;
+    private static final int MIN_FILE_BATCH = 1;
+    private static final int MAX_FILE_BATCH = 20;
+    private static final int FILE_BATCH_STEP = 1;
+    // A batch answered slower than this shrinks the next ones; lost batches that big stay cheap to redo
+    private static final long TOKEN_BATCH_TARGET_MS = 5000;
+    private static final long FILE_BATCH_TARGET_MS = 15000;
+    // Tries per batch when the connection fails, each with the size halved, before the job stops
+    private static final int MAX_BATCH_ATTEMPTS = 3;
 
     private Spinner spinnerSpaces;
     private Button btnPerformUpdate, btnAddFile;
@@ -62,7 +106,10 @@ public class UpdateActivity extends AppCompatActivity {
     private TextView tvProgressStatus;
 
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final NetworkUtils network = NetworkUtils.getInstance();
     private final Handler handler = new Handler(Looper.getMainLooper());
+    // Status line and progress bar changes from the job, newest per key applied once per tick
+    private final ProgressDispatcher<String, Runnable> progressUi = new ProgressDispatcher<>(handler, (key, apply) -> apply.run());
     private static final String PREFS_NAME = "pi_prefs";
 
     private final ActivityResultLauncher<String> filePickerLauncher = registerForActivityResult(
@@ -104,6 +151,10 @@ public class UpdateActivity extends AppCompatActivity {
 
         btnAddFile.setOnClickListener(v -> filePickerLauncher.launch("*/*"));
         btnPerformUpdate.setOnClickListener(v -> performUpdate());
+        spinnerSpaces.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override public void onItemSelected(AdapterView<?> parent, View view, int position, long id) { checkUpdateState(); }
+            @Override public void onNothingSelected(AdapterView<?> parent) { checkUpdateState(); }
+        });
 
         fetchEmptySpaces();
     }
@@ -129,147 +180,60 @@ public class UpdateActivity extends AppCompatActivity {
     }
 
     private void performUpdate() {
-        if (selectedFiles.isEmpty()) {
-            Toast.makeText(this, "Please select at least one file", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
         String dbName = spinnerSpaces.getSelectedItem() != null ? spinnerSpaces.getSelectedItem().toString() : "";
         if (dbName.isEmpty()) {
             Toast.makeText(this, "Please select a space", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        // Validate keywords
-        for (FileSelection fs : selectedFiles) {
-            if (fs.keyword < 0 || fs.keyword > 100000) {
-                Toast.makeText(this, "Invalid keyword for " + fs.name + ". Must be 0-100000", Toast.LENGTH_SHORT).show();
+        // An interrupted job for this space is resumed from its journal instead of starting over
+        File storageDir = new File(getDbStoragePath(dbName));
+        boolean resuming = UpdateJournal.exists(storageDir);
+
+        if (!resuming) {
+            if (selectedFiles.isEmpty()) {
+                Toast.makeText(this, "Please select at least one file", Toast.LENGTH_SHORT).show();
                 return;
             }
+
+            // Validate keywords against the space's declared domain, or the largest one its index mode allows
+            SpaceParams params = SpaceParams.load(storageDir);
+            int declaredDomain = params.getDeclaredDomain();
+            int domainLimit = declaredDomain > 0 ? declaredDomain : SpaceParams.maxDomain(params.getIndexMode());
+            for (FileSelection fs : selectedFiles) {
+                if (fs.keyword < 0 || fs.keyword >= domainLimit) {
+                    Toast.makeText(this, "Invalid keyword for " + fs.name + ". Must be 0-" + (domainLimit - 1), Toast.LENGTH_SHORT).show();
+                    return;
+                }
+            }
         }
 
         setUIEnabled(false);
         progressContainer.setVisibility(View.VISIBLE);
-        tvProgressStatus.setText("Generating Tokens & Encrypting Files...");
+        tvProgressStatus.setText(resuming ? "Resuming Interrupted Update..." : "Generating Tokens & Encrypting Files...");
         progressBarUpdate.setProgress(0);
         
         SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
         String token = prefs.getString("auth_token", null);
         String ip = prefs.getString("last_ip", BuildConfig.SERVER_IP);
         String baseUrl = "http://" + ip + ":3000/api";
+        // Optional compact upload mode: raw 32-byte u / e records instead of Base64 JSON pairs
+        boolean binaryIndexUpload = prefs.getBoolean("binary_index_upload", false);
+        int uploadConcurrency = Math.max(1, prefs.getInt("upload_concurrency", DEFAULT_UPLOAD_CONCURRENCY));
+        // Worker threads for file encryption and token derivation; defaults to every core
+        int updateThreads = Math.max(1, prefs.getInt("update_threads", Runtime.getRuntime().availableProcessors()));
+        // Batch sizes follow measured latency and failures; off keeps the fixed sizes the job was started with
+        boolean adaptiveBatching = prefs.getBoolean("adaptive_batching", true);
 
         executor.execute(() -> {
             try {
-                String[] paths = new String[selectedFiles.size()];
-                int[] keywords = new int[selectedFiles.size()];
-                List<String> filePathsList = new ArrayList<>();
-                
-                for (int i = 0; i < selectedFiles.size(); i++) {
-                    File tempFile = copyUriToTempFile(selectedFiles.get(i).uri, selectedFiles.get(i).name);
-                    paths[i] = tempFile.getAbsolutePath();
-                    keywords[i] = selectedFiles.get(i).keyword;
-                    filePathsList.add(paths[i]);
-                }
-                
-                // 1. Create encrypted directory in storage path
-                File storageBase = getFilesDir();
-                File encryptedDir = new File(storageBase, "encrypted");
-                if (!encryptedDir.exists()) encryptedDir.mkdirs();
-
-                // 2. Generate Tokens via JNI with isolated DB storage path
-                System.out.println("[UPDATE PI] tokens and encrypted files generating for DB: " + dbName);
-                String storagePath = getDbStoragePath(dbName);
-                String[] jniResult = generateTokens(storagePath, paths, keywords);
-                System.out.println("[UPDATE PI] tokens and encrypted files generated");
-                
-                // jniResult: [u0, e0, ..., uN, eN, path0, path1, ...]
-                // result.size() * 2 = 200,000 * 2 = 400,000 for tokens
-                // filesCount = paths.length
-                
-                int tokenCount = 200000;
-                int tokenEntries = tokenCount * 2;
-                
-                int BATCH_SIZE = 5000;
-                int UPLOAD_BATCH_SIZE = 5;
-                int totalTokenBatches = (int) Math.ceil((double) tokenCount / BATCH_SIZE);
-                int totalFileBatches = (int) Math.ceil((double) selectedFiles.size() / UPLOAD_BATCH_SIZE);
-                int totalSteps = 1 + totalTokenBatches + totalFileBatches;
-                int[] currentStep = {1}; // 1 = JNI generation done
-                
-                handler.post(() -> {
-                    progressBarUpdate.setMax(totalSteps);
-                    progressBarUpdate.setProgress(currentStep[0]);
-                });
-                
-                // 3. Send tokens in batches to server via bulk endpoint
-                System.out.println("[UPDATE PI] sending tokens to server");
-                if (jniResult != null && jniResult.length >= tokenEntries) {
-                    
-                    for (int batchStart = 0; batchStart < tokenCount; batchStart += BATCH_SIZE) {
-                        int batchEnd = Math.min(batchStart + BATCH_SIZE, tokenCount);
-                        
-                        JSONArray pairsArray = new JSONArray();
-                        for (int j = batchStart; j < batchEnd; j++) {
-                            JSONObject pair = new JSONObject();
-                            pair.put("key", jniResult[j * 2]);
-                            pair.put("value", jniResult[j * 2 + 1]);
-                            pairsArray.put(pair);
-                        }
-                        
-                        JSONObject body = new JSONObject();
-                        body.put("dbName", dbName);
-                        body.put("pairs", pairsArray);
-                        
-                        final int currentBatchNum = (batchStart / BATCH_SIZE) + 1;
-                        handler.post(() -> {
-                            tvProgressStatus.setText("Uploading Tokens (Batch " + currentBatchNum + " of " + totalTokenBatches + ")");
-                        });
-                        
-                        Log.i("PI_UPDATE", "Sending token batch " + currentBatchNum);
-                        NetworkUtils.performPostRequest(baseUrl + "/bulk-save-index_value", body.toString(), token);
-                        
-                        currentStep[0]++;
-                        handler.post(() -> progressBarUpdate.setProgress(currentStep[0]));
-                    }
-                    Log.i("PI_UPDATE", "All token batches sent successfully");
-                }
-                
-                // 4. Upload encrypted files to server in batches
-                System.out.println("[UPDATE PI] uploading encrypted files to server in batches");
-                List<String> encryptedPathsList = new ArrayList<>();
-                if (jniResult != null && jniResult.length > tokenEntries) {
-                    for (int i = tokenEntries; i < jniResult.length; i++) {
-                        encryptedPathsList.add(jniResult[i]);
-                    }
-                    for (int i = 0; i < encryptedPathsList.size(); i += UPLOAD_BATCH_SIZE) {
-                        int end = Math.min(i + UPLOAD_BATCH_SIZE, encryptedPathsList.size());
-                        List<String> batchPaths = encryptedPathsList.subList(i, end);
-                        
-                        final int currentFileBatchNum = (i / UPLOAD_BATCH_SIZE) + 1;
-                        handler.post(() -> {
-                            tvProgressStatus.setText("Uploading Files (Batch " + currentFileBatchNum + " of " + totalFileBatches + ")");
-                        });
-                        
-                        Log.i("PI_UPDATE", "Uploading file batch " + currentFileBatchNum);
-                        NetworkUtils.performMultipartRequest(baseUrl + "/upload_files", dbName, batchPaths, token);
-                        
-                        currentStep[0]++;
-                        handler.post(() -> progressBarUpdate.setProgress(currentStep[0]));
-                    }
-                }
-                System.out.println("[UPDATE PI] encrypted files uploaded to server");
-                
-                // 5. Lock the server database permanently
-                JSONObject lockBody = new JSONObject();
-                lockBody.put("dbName", dbName);
-                NetworkUtils.performPostRequest(baseUrl + "/lock-space", lockBody.toString(), token);
-                
-                // 6. Cleanup encrypted files from device
-                for (String path : encryptedPathsList) {
-                    new File(path).delete();
-                }
+                UpdateJournal journal = resuming ? UpdateJournal.open(storageDir) : startJournal(storageDir, dbName);
+                runUpdateJob(journal, storageDir.getAbsolutePath(), baseUrl, token, binaryIndexUpload, uploadConcurrency,
+                        updateThreads, adaptiveBatching);
                 
                 handler.post(() -> {
+                    // The bar reaches its end before the completion message
+                    progressUi.flush();
                     Toast.makeText(this, "Update complete! Database initialized.", Toast.LENGTH_LONG).show();
                     finish(); // Force close the page to prevent re-uploading to the same DB
                 });
@@ -277,14 +241,230 @@ public class UpdateActivity extends AppCompatActivity {
             } catch (Exception e) {
                 e.printStackTrace();
                 handler.post(() -> {
+                    progressUi.cancel();
                     setUIEnabled(true);
                     progressContainer.setVisibility(View.GONE);
-                    Toast.makeText(this, "Update failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                    checkUpdateState();
+                    Toast.makeText(this, "Update failed: " + e.getMessage() + ". Tap update again to resume.", Toast.LENGTH_LONG).show();
                 });
             }
         });
     }
 
+    // Copies the selected files next to the journal so an interrupted job can be resumed later
+    private UpdateJournal startJournal(File storageDir, String dbName) throws Exception {
+        File inputDir = UpdateJournal.getInputDir(storageDir);
+        String[] paths = new String[selectedFiles.size()];
+        int[] keywords = new int[selectedFiles.size()];
+        for (int i = 0; i < selectedFiles.size(); i++) {
+            File inputFile = copyUriToFile(selectedFiles.get(i).uri, inputDir, i + "_" + selectedFiles.get(i).name);
+            paths[i] = inputFile.getAbsolutePath();
+            keywords[i] = selectedFiles.get(i).keyword;
+        }
+        // Small spaces get a small domain, and with it proportionally fewer tokens
+        SpaceParams params = SpaceParams.load(storageDir);
+        int domain = SpaceParams.domainFor(params.getDeclaredDomain(), keywords);
+        return UpdateJournal.create(storageDir, dbName, paths, keywords, domain, params.getIndexMode(),
+                TOKEN_CHUNK_SIZE, UPLOAD_BATCH_SIZE);
+    }
+
+    // Runs (or resumes) a journaled update job up to locking the space
+    private void runUpdateJob(UpdateJournal journal, String storagePath, String baseUrl, String token,
+                              boolean binaryIndexUpload, int uploadConcurrency, int updateThreads,
+                              boolean adaptiveBatching) throws Exception {
+        String dbName = journal.getDbName();
+        int chunkSize = journal.getTokenChunkSize();
+        int fileBatchSize = journal.getFileBatchSize();
+        AdaptiveBatchSizer tokenSizer = adaptiveBatching
+                ? new AdaptiveBatchSizer(MIN_TOKEN_BATCH, chunkSize, MAX_TOKEN_BATCH, TOKEN_BATCH_STEP, TOKEN_BATCH_TARGET_MS)
+                : AdaptiveBatchSizer.fixed(chunkSize);
+        AdaptiveBatchSizer fileSizer = adaptiveBatching
+                ? new AdaptiveBatchSizer(MIN_FILE_BATCH, fileBatchSize, MAX_FILE_BATCH, FILE_BATCH_STEP, FILE_BATCH_TARGET_MS)
+                : AdaptiveBatchSizer.fixed(fileBatchSize);
+        tokenSizer.setResizeListener((from, to, reason) -> Log.i(TAG, "Token batch size " + from + " -> " + to + ": " + reason));
+        fileSizer.setResizeListener((from, to, reason) -> Log.i(TAG, "File batch size " + from + " -> " + to + ": " + reason));
+
+        // 1. Drop journaled chunks whose Sigma state was never committed; they are derived again
+        int committedTokens = 0;
+        if (!journal.isGenerationComplete()) {
+            committedTokens = getCommittedTokenCount(storagePath);
+            journal.truncateToCommitted(committedTokens);
+        }
+        int ackedTokenBatches = journal.getAckedTokenBatches();
+        int committedChunks = journal.getCommittedChunks();
+
+        // Two tokens per value of the space's domain, or one per non-empty range-cover node
+        int domain = journal.getDomain();
+        boolean rangeCover = SpaceParams.INDEX_RANGE_COVER.equals(journal.getIndexMode());
+        long tokenCount = countTokens(journal.getKeywords(), domain, rangeCover);
+        
+        int totalTokenBatches = (int) Math.ceil((double) tokenCount / chunkSize);
+        int totalFiles = journal.getInputPaths().length;
+        int totalSteps = 1 + totalTokenBatches + totalFiles;
+        int[] currentStep = {1 + ackedTokenBatches}; // 1 = JNI generation started
+        
+        int firstStep = currentStep[0];
+        progressUi.publish("max", () -> progressBarUpdate.setMax(totalSteps));
+        progressUi.publish("bar", () -> progressBarUpdate.setProgress(firstStep));
+
+        // 2. Send tokens in batches to server via bulk endpoint, keeping up to uploadConcurrency
+        // requests open. Journaled chunks the server never acknowledged go first, then chunks
+        // streamed out of JNI, each written to the journal before it is uploaded. Chunks are
+        // re-cut into batches of the size tokenSizer currently picks.
+        Log.i(TAG, "Sending tokens to server for DB: " + dbName);
+        String[] encryptedPaths;
+        RecordBatcher[] batcher = new RecordBatcher[1];
+        try (BatchUploadPipeline<byte[]> tokenUpload = new BatchUploadPipeline<>(uploadConcurrency,
+                (batchIndex, records) -> {
+                    Log.i(TAG, "Sending token batch " + (batchIndex + 1) + " ("
+                            + records.length / IndexBatchFormat.RECORD_SIZE + " tokens)");
+                    uploadTokens(baseUrl, dbName, token, binaryIndexUpload, records, tokenSizer);
+                },
+                completed -> {
+                    int acked = ackedTokenBatches + batcher[0].chunksCompletedBy(completed);
+                    try {
+                        journal.markTokenBatchesAcked(acked);
+                    } catch (IOException e) {
+                        // Only costs a re-upload of this batch if the job is resumed
+                        Log.w(TAG, "Could not record token batch " + acked, e);
+                    }
+                    progressUi.publish("status", () -> tvProgressStatus.setText("Uploading Tokens (Batch " + acked + " of " + totalTokenBatches + ")"));
+                    progressUi.publish("bar", () -> progressBarUpdate.setProgress(1 + acked));
+                })) {
+            batcher[0] = new RecordBatcher(tokenSizer, tokenUpload::submit);
+            for (int i = ackedTokenBatches; i < committedChunks; i++) {
+                batcher[0].add(journal.readTokenChunk(i));
+            }
+            if (journal.isGenerationComplete()) {
+                encryptedPaths = journal.getEncryptedPaths();
+            } else {
+                // Files encrypted by an interrupted run are kept; only the missing tokens are derived
+                boolean filesEncrypted = journal.areFilesEncrypted();
+                encryptedPaths = streamTokens(storagePath, journal.getInputPaths(), journal.getKeywords(), domain, rangeCover,
+                        !filesEncrypted, chunkSize, committedTokens, updateThreads, new TokenSink() {
+                            @Override
+                            public void onFilesEncrypted(String[] paths) throws Exception {
+                                journal.markFilesEncrypted(paths);
+                            }
+
+                            @Override
+                            public void onTokenChunk(byte[] records, int count) throws Exception {
+                                journal.appendTokenChunk(records);
+                                batcher[0].add(records);
+                            }
+                        });
+                if (encryptedPaths == null) throw new IllegalStateException("Token generation failed");
+                if (filesEncrypted) encryptedPaths = journal.getEncryptedPaths();
+                journal.markGenerationComplete(encryptedPaths);
+                // Resume now goes by the journal alone, so the committed-token count is no longer needed
+                if (!clearCommittedTokenCount(storagePath)) {
+                    Log.w(TAG, "Could not clear the committed token count for " + dbName);
+                }
+            }
+            batcher[0].flush();
+            tokenUpload.awaitCompletion();
+            currentStep[0] += batcher[0].chunksCompletedBy(tokenUpload.getCompletedInOrder());
+        }
+        Log.i(TAG, "All token batches sent successfully");
+        
+        // 3. Upload encrypted files to server in batches sized by fileSizer, skipping files already acknowledged
+        Log.i(TAG, "Uploading encrypted files to server in batches");
+        List<String> encryptedPathsList = Arrays.asList(encryptedPaths);
+        int ackedFiles = journal.getAckedFiles();
+        currentStep[0] += ackedFiles;
+        int failedAttempts = 0;
+        for (int i = ackedFiles; i < encryptedPathsList.size(); ) {
+            int end = Math.min(i + fileSizer.getBatchSize(), encryptedPathsList.size());
+            List<String> batchPaths = encryptedPathsList.subList(i, end);
+            long batchBytes = 0;
+            for (String path : batchPaths) batchBytes += new File(path).length();
+
+            String range = (i + 1) + "-" + end + " of " + totalFiles;
+            progressUi.publish("status", () -> tvProgressStatus.setText("Uploading Files (" + range + ")"));
+            
+            Log.i(TAG, "Uploading files " + range);
+            long[] lastStep = {-1};
+            long start = System.nanoTime();
+            try {
+                network.performMultipartRequest(baseUrl + "/upload_files", dbName, batchPaths, token, (sent, total) -> {
+                    // Whole percents when the size is known, whole megabytes in chunked mode
+                    long step = total > 0 ? sent * 100 / total : sent >> 20;
+                    if (step == lastStep[0]) return;
+                    lastStep[0] = step;
+                    String done = total > 0 ? step + "%" : step + " MB";
+                    progressUi.publish("status", () -> tvProgressStatus.setText("Uploading Files (" + range + ", " + done + ")"));
+                });
+            } catch (IOException e) {
+                // Sent again as a smaller batch, unless the server refused the request itself
+                if (!HttpStatusException.isRetryable(e)) throw e;
+                fileSizer.onFailure(batchPaths.size(), e);
+                if (++failedAttempts >= MAX_BATCH_ATTEMPTS) throw e;
+                continue;
+            }
+            fileSizer.onSuccess(batchPaths.size(), batchBytes, System.nanoTime() - start);
+            failedAttempts = 0;
+            journal.markFilesAcked(end);
+            
+            currentStep[0] += end - i;
+            int step = currentStep[0];
+            progressUi.publish("bar", () -> progressBarUpdate.setProgress(step));
+            i = end;
+        }
+        Log.i(TAG, "Encrypted files uploaded to server");
+        
+        // 4. Record what search needs to know about the index, then lock the server database permanently
+        SpaceParams.load(new File(storagePath)).setIndexed(domain, encryptedPaths.length);
+        JSONObject lockBody = new JSONObject();
+        lockBody.put("dbName", dbName);
+        network.performPostRequest(baseUrl + "/lock-space", lockBody.toString(), token);
+        
+        Log.i(TAG, "Update traffic so far: " + network.getRequestCount() + " requests, "
+                + network.getBytesSent() + " bytes sent, " + network.getBytesReceived() + " bytes received");
+        Log.i(TAG, "Token batching: " + tokenSizer);
+        Log.i(TAG, "File batching: " + fileSizer);
+        Log.i(TAG, "Progress updates: " + progressUi.getPublishedCount() + " published, "
+                + progressUi.getDeliveredCount() + " delivered, " + progressUi.getDroppedCount() + " dropped");
+
+        // 5. Cleanup encrypted files and the finished journal from device
+        for (String path : encryptedPathsList) {
+            new File(path).delete();
+        }
+        journal.delete();
+    }
+
+    // Sends one batch of token records in pieces no larger than the current batch size. A piece
+    // the connection fails on, or the server answers with a retryable status such as 503 or 429,
+    // is sent again, smaller, up to MAX_BATCH_ATTEMPTS times in a row.
+    private void uploadTokens(String baseUrl, String dbName, String token, boolean binaryIndexUpload, byte[] records,
+                              AdaptiveBatchSizer sizer) throws Exception {
+        int count = records.length / IndexBatchFormat.RECORD_SIZE;
+        int failedAttempts = 0;
+        for (int done = 0; done < count; ) {
+            int n = Math.min(count - done, sizer.getBatchSize());
+            byte[] piece = n == count ? records
+                    : Arrays.copyOfRange(records, done * IndexBatchFormat.RECORD_SIZE, (done + n) * IndexBatchFormat.RECORD_SIZE);
+            long start = System.nanoTime();
+            long bytes;
+            try {
+                if (binaryIndexUpload) {
+                    network.performBinaryIndexUpload(baseUrl + "/bulk-save-index_value-bin", dbName, piece, n, token);
+                    bytes = IndexBatchFormat.byteLength(n);
+                } else {
+                    network.performJsonIndexUpload(baseUrl + "/bulk-save-index_value", dbName, piece, n, token);
+                    bytes = new IndexPairsJsonBody(dbName, piece, n).contentLength();
+                }
+            } catch (IOException e) {
+                if (!HttpStatusException.isRetryable(e)) throw e;
+                sizer.onFailure(n, e);
+                if (++failedAttempts >= MAX_BATCH_ATTEMPTS) throw e;
+                continue;
+            }
+            sizer.onSuccess(n, bytes, System.nanoTime() - start);
+            failedAttempts = 0;
+            done += n;
+        }
+    }
+
     private void setUIEnabled(boolean enabled) {
         float alpha = enabled ? 1.0f : 0.4f;
         spinnerSpaces.setEnabled(enabled);
@@ -298,10 +478,9 @@ public class UpdateActivity extends AppCompatActivity {
         adapter.setEnabled(enabled);
     }
 
-    private File copyUriToTempFile(Uri uri, String name) throws Exception {
+    private File copyUriToFile(Uri uri, File dir, String name) throws Exception {
         InputStream is = getContentResolver().openInputStream(uri);
-        File cacheDir = getExternalCacheDir();
-        File tempFile = new File(cacheDir, "temp_" + System.currentTimeMillis() + "_" + name);
+        File tempFile = new File(dir, name);
         FileOutputStream os = new FileOutputStream(tempFile);
         
         byte[] buffer = new byte[8192];
@@ -411,8 +590,22 @@ public class UpdateActivity extends AppCompatActivity {
 
     private void checkUpdateState() {
         boolean hasFiles = !selectedFiles.isEmpty();
-        btnPerformUpdate.setEnabled(hasFiles);
-        btnPerformUpdate.setAlpha(hasFiles ? 1.0f : 0.5f);
+        Object selected = spinnerSpaces.getSelectedItem();
+        boolean hasPendingJob = selected != null && UpdateJournal.exists(new File(getFilesDir(), selected.toString()));
+        btnPerformUpdate.setEnabled(hasFiles || hasPendingJob);
+        btnPerformUpdate.setAlpha(hasFiles || hasPendingJob ? 1.0f : 0.5f);
+    }
+
+    // Spaces with an interrupted update; the server no longer lists them once tokens were stored
+    private List<String> findPendingJobs() {
+        List<String> pending = new ArrayList<>();
+        File[] dirs = getFilesDir().listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory() && UpdateJournal.exists(dir)) pending.add(dir.getName());
+            }
+        }
+        return pending;
     }
 
     private void handleSelectedFiles(List<Uri> uris) {
@@ -467,15 +660,9 @@ public class UpdateActivity extends AppCompatActivity {
 
         executor.execute(() -> {
             try {
-                String response = NetworkUtils.performGetRequest(url, token);
-                JSONObject jsonResponse = new JSONObject(response);
-                JSONArray spacesJson = jsonResponse.optJSONArray("spaces");
-                
-                List<String> spaceList = new ArrayList<>();
-                if (spacesJson != null) {
-                    for (int i = 0; i < spacesJson.length(); i++) {
-                        spaceList.add(spacesJson.getString(i));
-                    }
+                List<String> spaceList = network.performGetRequest(url, token, JsonResponses.spaceNames());
+                for (String pending : findPendingJobs()) {
+                    if (!spaceList.contains(pending)) spaceList.add(pending);
                 }
 
                 handler.post(() -> updateSpinner(spaceList));
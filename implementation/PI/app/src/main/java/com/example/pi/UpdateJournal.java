@@ -0,0 +1,246 @@
+package com.example.pi;
+
+import com.example.pi.network.IndexBatchFormat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+
+/**
+ * On-disk record of one update job for a space, kept under {@code <storagePath>/update_journal}.
+ * Token chunks are appended to tokens.bin (and synced) before they are uploaded, and the
+ * journal remembers which token and file batches the server has acknowledged. After a
+ * failure or process death the job resumes from the first unacknowledged batch instead of
+ * regenerating all tokens, which would move the per-keyword Sigma state forward again.
+ *
+ * Native code commits the Sigma state of a chunk, together with a committed-token marker,
+ * only after the chunk has been journaled. On resume every journaled chunk past that marker
+ * is dropped and derived again, so the journal and Sigma never disagree. The encrypted file
+ * paths are journaled as soon as encryption finishes, so a resumed job does not encrypt the
+ * inputs a second time.
+ */
+public class UpdateJournal {
+
+    private static final String DIR_NAME = "update_journal";
+    private static final String STATE_FILE = "journal.properties";
+    private static final String TOKENS_FILE = "tokens.bin";
+    private static final String INPUTS_DIR = "inputs";
+
+    private final File dir;
+    private final Properties state = new Properties();
+
+    private UpdateJournal(File dir) {
+        this.dir = dir;
+    }
+
+    public static boolean exists(File storageDir) {
+        return new File(new File(storageDir, DIR_NAME), STATE_FILE).exists();
+    }
+
+    public static UpdateJournal open(File storageDir) throws IOException {
+        UpdateJournal journal = new UpdateJournal(new File(storageDir, DIR_NAME));
+        try (FileInputStream in = new FileInputStream(new File(journal.dir, STATE_FILE))) {
+            journal.state.load(in);
+        }
+        return journal;
+    }
+
+    // Starts a fresh job; input files must be copied into getInputDir() before calling
+    public static UpdateJournal create(File storageDir, String dbName, String[] inputPaths, int[] keywords,
+                                       int domain, String indexMode, int tokenChunkSize, int fileBatchSize) throws IOException {
+        UpdateJournal journal = new UpdateJournal(new File(storageDir, DIR_NAME));
+        journal.state.setProperty("dbName", dbName);
+        journal.state.setProperty("domain", String.valueOf(domain));
+        journal.state.setProperty("indexMode", indexMode);
+        journal.state.setProperty("tokenChunkSize", String.valueOf(tokenChunkSize));
+        journal.state.setProperty("fileBatchSize", String.valueOf(fileBatchSize));
+        journal.state.setProperty("inputCount", String.valueOf(inputPaths.length));
+        for (int i = 0; i < inputPaths.length; i++) {
+            journal.state.setProperty("input." + i + ".path", inputPaths[i]);
+            journal.state.setProperty("input." + i + ".keyword", String.valueOf(keywords[i]));
+        }
+        new File(journal.dir, TOKENS_FILE).delete();
+        journal.save();
+        return journal;
+    }
+
+    // Directory that holds the copied input files for the lifetime of the job
+    public static File getInputDir(File storageDir) {
+        File inputs = new File(new File(storageDir, DIR_NAME), INPUTS_DIR);
+        if (!inputs.exists()) inputs.mkdirs();
+        return inputs;
+    }
+
+    public String getDbName() {
+        return state.getProperty("dbName");
+    }
+
+    // Value domain the job derives tokens for; journals written before it was recorded used the fixed one
+    public int getDomain() {
+        String domain = state.getProperty("domain");
+        return domain != null ? Integer.parseInt(domain) : SpaceParams.DEFAULT_DOMAIN;
+    }
+
+    // Index layout the job derives tokens for; journals written before it was recorded are flat
+    public String getIndexMode() {
+        return state.getProperty("indexMode", SpaceParams.INDEX_FLAT);
+    }
+
+    public int getTokenChunkSize() {
+        return getInt("tokenChunkSize");
+    }
+
+    public int getFileBatchSize() {
+        return getInt("fileBatchSize");
+    }
+
+    public String[] getInputPaths() {
+        String[] paths = new String[getInt("inputCount")];
+        for (int i = 0; i < paths.length; i++) paths[i] = state.getProperty("input." + i + ".path");
+        return paths;
+    }
+
+    public int[] getKeywords() {
+        int[] keywords = new int[getInt("inputCount")];
+        for (int i = 0; i < keywords.length; i++) keywords[i] = getInt("input." + i + ".keyword");
+        return keywords;
+    }
+
+    public boolean isGenerationComplete() {
+        return Boolean.parseBoolean(state.getProperty("generationComplete"));
+    }
+
+    public synchronized int getCommittedChunks() {
+        return getInt("committedChunks");
+    }
+
+    public synchronized int getAckedTokenBatches() {
+        return getInt("ackedTokenBatches");
+    }
+
+    // Files the server has acknowledged, in order; older journals counted batches of fileBatchSize
+    public synchronized int getAckedFiles() {
+        String files = state.getProperty("ackedFiles");
+        return files != null ? Integer.parseInt(files) : getInt("ackedFileBatches") * getFileBatchSize();
+    }
+
+    // True once every input has been encrypted and the paths journaled, and the files are still there
+    public synchronized boolean areFilesEncrypted() {
+        if (!Boolean.parseBoolean(state.getProperty("filesEncrypted")) && !isGenerationComplete()) return false;
+        for (String path : getEncryptedPaths()) {
+            if (path == null || !new File(path).exists()) return false;
+        }
+        return true;
+    }
+
+    public synchronized void markFilesEncrypted(String[] encryptedPaths) throws IOException {
+        putEncryptedPaths(encryptedPaths);
+        state.setProperty("filesEncrypted", "true");
+        save();
+    }
+
+    public synchronized String[] getEncryptedPaths() {
+        String[] paths = new String[getInt("encryptedCount")];
+        for (int i = 0; i < paths.length; i++) paths[i] = state.getProperty("encrypted." + i);
+        return paths;
+    }
+
+    // Drops journaled chunks beyond what native code reports as committed, ahead of resuming
+    public synchronized void truncateToCommitted(int committedTokens) throws IOException {
+        int chunkSize = getTokenChunkSize();
+        int committed = (committedTokens + chunkSize - 1) / chunkSize;
+        long committedBytes = (long) committedTokens * IndexBatchFormat.RECORD_SIZE;
+        try (RandomAccessFile tokens = new RandomAccessFile(new File(dir, TOKENS_FILE), "rw")) {
+            if (tokens.length() > committedBytes) tokens.setLength(committedBytes);
+        }
+        state.setProperty("journaledChunks", String.valueOf(committed));
+        state.setProperty("committedChunks", String.valueOf(committed));
+        if (getAckedTokenBatches() > committed) {
+            state.setProperty("ackedTokenBatches", String.valueOf(committed));
+        }
+        save();
+    }
+
+    // Persists a freshly generated chunk before it is uploaded or its Sigma state is committed
+    public synchronized void appendTokenChunk(byte[] records) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(dir, TOKENS_FILE), true)) {
+            out.write(records);
+            out.getFD().sync();
+        }
+        state.setProperty("journaledChunks", String.valueOf(getInt("journaledChunks") + 1));
+        save();
+    }
+
+    public synchronized void markGenerationComplete(String[] encryptedPaths) throws IOException {
+        state.setProperty("committedChunks", state.getProperty("journaledChunks", "0"));
+        putEncryptedPaths(encryptedPaths);
+        state.setProperty("generationComplete", "true");
+        save();
+    }
+
+    public synchronized byte[] readTokenChunk(int index) throws IOException {
+        try (RandomAccessFile tokens = new RandomAccessFile(new File(dir, TOKENS_FILE), "r")) {
+            long offset = (long) index * chunkBytes();
+            int length = (int) Math.min(chunkBytes(), tokens.length() - offset);
+            byte[] records = new byte[length];
+            tokens.seek(offset);
+            tokens.readFully(records);
+            return records;
+        }
+    }
+
+    public synchronized void markTokenBatchesAcked(int ackedInOrder) throws IOException {
+        if (ackedInOrder <= getAckedTokenBatches()) return;
+        state.setProperty("ackedTokenBatches", String.valueOf(ackedInOrder));
+        save();
+    }
+
+    public synchronized void markFilesAcked(int ackedInOrder) throws IOException {
+        state.setProperty("ackedFiles", String.valueOf(ackedInOrder));
+        save();
+    }
+
+    // Removes the journal and its copied inputs once the space is locked
+    public synchronized void delete() {
+        deleteRecursively(dir);
+    }
+
+    private void putEncryptedPaths(String[] encryptedPaths) {
+        state.setProperty("encryptedCount", String.valueOf(encryptedPaths.length));
+        for (int i = 0; i < encryptedPaths.length; i++) {
+            state.setProperty("encrypted." + i, encryptedPaths[i]);
+        }
+    }
+
+    private int chunkBytes() {
+        return getTokenChunkSize() * IndexBatchFormat.RECORD_SIZE;
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(state.getProperty(key, "0"));
+    }
+
+    // Write-then-rename so a crash never leaves a half-written state file behind
+    private void save() throws IOException {
+        if (!dir.exists()) dir.mkdirs();
+        File tmp = new File(dir, STATE_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            state.store(out, "PI update journal");
+            out.getFD().sync();
+        }
+        if (!tmp.renameTo(new File(dir, STATE_FILE))) {
+            throw new IOException("Could not update " + STATE_FILE);
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.pi.network;
+
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+
+/**
+ * Picks the size of the next upload batch (token records, files) from how the previous ones
+ * went, AIMD style: every batch answered within targetLatencyMs grows the size by step, and a
+ * batch that failed, timed out or took longer than that halves it, always between min and
+ * max. On a fast link the size climbs until a batch takes about targetLatencyMs, which keeps
+ * the pipe full; on a flaky link it drops quickly, so a lost batch is cheap to send again.
+ * Batches cut before the last decrease are still counted but do not halve the size again,
+ * so several in-flight batches failing together cost one halving, not one each.
+ *
+ * Reports come from several upload workers at once, so every method is synchronized. The
+ * counters, the smoothed throughput and the ResizeListener expose what was decided and why.
+ */
+public class AdaptiveBatchSizer {
+
+    public interface ResizeListener {
+        void onResize(int from, int to, String reason);
+    }
+
+    // Weight of the newest batch in the smoothed throughput and latency
+    private static final double SMOOTHING = 0.3;
+
+    private final int min;
+    private final int max;
+    private final int step;
+    private final long targetLatencyMs;
+    private ResizeListener listener;
+
+    // Guarded by this
+    private int size;
+    private long batches;
+    private long failures;
+    private long timeouts;
+    private long increases;
+    private long decreases;
+    private long bytes;
+    private long busyNanos;
+    private double bytesPerSecond;
+    private double latencyMs;
+
+    public AdaptiveBatchSizer(int min, int initial, int max, int step, long targetLatencyMs) {
+        if (min < 1 || max < min || step < 1 || targetLatencyMs < 1) {
+            throw new IllegalArgumentException("Invalid batch size bounds, step or target latency");
+        }
+        this.min = min;
+        this.max = max;
+        this.step = step;
+        this.targetLatencyMs = targetLatencyMs;
+        this.size = Math.max(min, Math.min(initial, max));
+    }
+
+    // Size that never changes, for when adaptive batching is turned off
+    public static AdaptiveBatchSizer fixed(int size) {
+        return new AdaptiveBatchSizer(size, size, size, 1, Long.MAX_VALUE);
+    }
+
+    public synchronized AdaptiveBatchSizer setResizeListener(ResizeListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public synchronized int getBatchSize() {
+        return size;
+    }
+
+    // A batch of batchSize units and byteCount bytes was acknowledged after elapsedNanos
+    public synchronized void onSuccess(int batchSize, long byteCount, long elapsedNanos) {
+        batches++;
+        bytes += byteCount;
+        busyNanos += elapsedNanos;
+        double elapsedMs = Math.max(elapsedNanos, 1) / 1e6;
+        double rate = byteCount * 1000.0 / elapsedMs;
+        bytesPerSecond = batches == 1 ? rate : SMOOTHING * rate + (1 - SMOOTHING) * bytesPerSecond;
+        latencyMs = batches == 1 ? elapsedMs : SMOOTHING * elapsedMs + (1 - SMOOTHING) * latencyMs;
+
+        if (elapsedMs > targetLatencyMs) {
+            decrease(batchSize, "batch of " + batchSize + " took " + Math.round(elapsedMs) + " ms");
+        } else if (batchSize >= size) {
+            // Only a batch of the current size says the current size is fine
+            resize(size + step, "batch of " + batchSize + " took " + Math.round(elapsedMs) + " ms", true);
+        }
+    }
+
+    // A batch of batchSize units failed; timeouts are counted apart from other errors
+    public synchronized void onFailure(int batchSize, Exception error) {
+        batches++;
+        failures++;
+        if (isTimeout(error)) timeouts++;
+        decrease(batchSize, "batch of " + batchSize + " failed: " + error);
+    }
+
+    public synchronized long getBatchCount() {
+        return batches;
+    }
+
+    public synchronized long getFailureCount() {
+        return failures;
+    }
+
+    public synchronized long getTimeoutCount() {
+        return timeouts;
+    }
+
+    public synchronized long getIncreaseCount() {
+        return increases;
+    }
+
+    public synchronized long getDecreaseCount() {
+        return decreases;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    // Smoothed over recent batches; 0 before the first success
+    public synchronized long getBytesPerSecond() {
+        return Math.round(bytesPerSecond);
+    }
+
+    public synchronized long getLatencyMs() {
+        return Math.round(latencyMs);
+    }
+
+    // Bytes of all acknowledged batches over the time they were in flight, summed per batch
+    public synchronized long getAverageBytesPerSecond() {
+        return busyNanos == 0 ? 0 : Math.round(bytes * 1e9 / busyNanos);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "size %d (%d-%d), %d batches, %d failed (%d timed out), %d up / %d down, "
+                        + "%d bytes at %d B/s (recent %d B/s, %d ms per batch)",
+                size, min, max, batches, failures, timeouts, increases, decreases, bytes,
+                getAverageBytesPerSecond(), getBytesPerSecond(), getLatencyMs());
+    }
+
+    private void decrease(int batchSize, String reason) {
+        if (batchSize > size) return;
+        resize(size / 2, reason, false);
+    }
+
+    private void resize(int to, String reason, boolean up) {
+        int from = size;
+        size = Math.max(min, Math.min(to, max));
+        if (size == from) return;
+        if (up) increases++;
+        else decreases++;
+        if (listener != null) listener.onResize(from, size, reason);
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause()) {
+            if (e instanceof SocketTimeoutException) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.pi.network;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool for blocking network and native calls that are composed as CompletableFutures.
+ * Threads are created on demand and expire when idle, so independent requests of one query
+ * run side by side without every activity owning its own pool. Deadlines come from a single
+ * scheduler thread because CompletableFuture.orTimeout is not available below API 31.
+ */
+public final class AsyncIo {
+
+    private static final ExecutorService IO = Executors.newCachedThreadPool(daemonThreads("pi-io"));
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(daemonThreads("pi-timeout"));
+
+    private AsyncIo() {
+    }
+
+    public static ExecutorService io() {
+        return IO;
+    }
+
+    // Runs a blocking call on the pool; checked exceptions surface as the future's failure
+    public static <T> CompletableFuture<T> supply(Callable<T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, IO);
+    }
+
+    // Fails the future with a TimeoutException if it is still pending after the deadline
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        ScheduledFuture<?> deadline = TIMER.schedule(
+                () -> future.completeExceptionally(new TimeoutException("Timed out after " + unit.toMillis(timeout) + " ms")),
+                timeout, unit);
+        future.whenComplete((result, error) -> deadline.cancel(false));
+        return future;
+    }
+
+    // Unwraps the CompletionException/ExecutionException layers added by composed stages
+    public static Throwable rootCause(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
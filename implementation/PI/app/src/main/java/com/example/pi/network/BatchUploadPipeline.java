@@ -0,0 +1,112 @@
+package com.example.pi.network;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Uploads batches with up to maxInFlight requests open at once. Each batch is serialized
+ * and sent on its own worker, so the body for batch N+1 is built while batch N is still
+ * waiting for its response. submit() blocks while the window is full, which pushes back
+ * on whoever is producing the batches.
+ *
+ * Completions are reported in submission order: the listener sees the number of batches
+ * acknowledged without gaps, never a later batch ahead of an earlier one.
+ */
+public class BatchUploadPipeline<T> implements AutoCloseable {
+
+    public interface Uploader<T> {
+        void upload(int batchIndex, T batch) throws Exception;
+    }
+
+    public interface CompletionListener {
+        void onBatchesCompleted(int completedInOrder);
+    }
+
+    private final Uploader<T> uploader;
+    private final CompletionListener listener;
+    private final Semaphore window;
+    private final ExecutorService workers;
+
+    private final BitSet completed = new BitSet();
+    private int submitted = 0;
+    private int completedInOrder = 0;
+    private Exception failure;
+
+    public BatchUploadPipeline(int maxInFlight, Uploader<T> uploader, CompletionListener listener) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        this.uploader = uploader;
+        this.listener = listener;
+        this.window = new Semaphore(maxInFlight);
+        this.workers = Executors.newFixedThreadPool(maxInFlight);
+    }
+
+    // Queues the next batch, blocking until a slot in the in-flight window is free
+    public void submit(T batch) throws Exception {
+        throwIfFailed();
+        window.acquire();
+        final int batchIndex;
+        synchronized (this) {
+            if (failure != null) {
+                window.release();
+                throw failure;
+            }
+            batchIndex = submitted++;
+        }
+        workers.execute(() -> runBatch(batchIndex, batch));
+    }
+
+    // Waits for every submitted batch and rethrows the first upload failure, if any
+    public synchronized void awaitCompletion() throws Exception {
+        while (failure == null && completedInOrder < submitted) {
+            wait();
+        }
+        throwIfFailed();
+    }
+
+    public synchronized int getCompletedInOrder() {
+        return completedInOrder;
+    }
+
+    private void runBatch(int batchIndex, T batch) {
+        try {
+            synchronized (this) {
+                if (failure != null) return;
+            }
+            uploader.upload(batchIndex, batch);
+            onSuccess(batchIndex);
+        } catch (Exception e) {
+            onFailure(e);
+        } finally {
+            window.release();
+        }
+    }
+
+    private synchronized void onSuccess(int batchIndex) {
+        completed.set(batchIndex);
+        int before = completedInOrder;
+        while (completed.get(completedInOrder)) {
+            completedInOrder++;
+        }
+        if (completedInOrder != before && listener != null) {
+            listener.onBatchesCompleted(completedInOrder);
+        }
+        notifyAll();
+    }
+
+    private synchronized void onFailure(Exception e) {
+        if (failure == null) failure = e;
+        notifyAll();
+    }
+
+    private synchronized void throwIfFailed() throws Exception {
+        if (failure != null) throw failure;
+    }
+
+    // Stops the workers; batches still in flight after a failure are abandoned
+    @Override
+    public void close() {
+        workers.shutdownNow();
+    }
+}
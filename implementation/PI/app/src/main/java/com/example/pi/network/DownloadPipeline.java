@@ -0,0 +1,217 @@
+package com.example.pi.network;
+
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Two-stage retrieval of result files: up to downloadThreads files are fetched at once and
+ * each finished download is handed to decryptThreads workers through a bounded queue. While
+ * one file is being decrypted the next ones are already on the wire, so a bulk retrieval
+ * takes about as long as its slower stage instead of the sum of both.
+ *
+ * The queue is the backpressure: when decryption falls behind, downloaders block on it
+ * before starting another file, so at most queueCapacity + downloadThreads encrypted files
+ * wait on disk. A failed file is reported to the listener and does not stop the others.
+ *
+ * With a BatchDownloader each download slot fetches a batch of IDs in one request instead,
+ * handing every file to the decrypt stage the moment it is complete. IDs a batch never
+ * hands over, e.g. because its connection broke, are retried one by one with the Downloader;
+ * IDs it fails, e.g. ones the server reported missing, are not.
+ */
+public class DownloadPipeline implements AutoCloseable {
+
+    public interface Downloader {
+        // Fetches the encrypted file for the ID and returns where it was stored
+        File download(int id) throws Exception;
+    }
+
+    public interface BatchDownloader {
+        // Fetches the encrypted files for the IDs, passing each to handoff as soon as it is stored
+        void download(int[] ids, Handoff handoff) throws Exception;
+    }
+
+    public interface Handoff {
+        // Queues the file for decryption; blocks while the decrypt stage is behind
+        void accept(int id, File encrypted) throws InterruptedException;
+
+        // Fails the ID without fetching it again, e.g. one the server does not have
+        void fail(int id, Exception e);
+    }
+
+    public interface Decryptor {
+        // Decrypts a downloaded file and returns the plaintext file
+        File decrypt(int id, File encrypted) throws Exception;
+    }
+
+    // Called from worker threads
+    public interface Listener {
+        void onDownloaded(int id);
+        void onCompleted(int id, File decrypted);
+        void onFailed(int id, Exception e);
+    }
+
+    private static final class Downloaded {
+        final int id;
+        final File encrypted;
+
+        Downloaded(int id, File encrypted) {
+            this.id = id;
+            this.encrypted = encrypted;
+        }
+    }
+
+    private static final String TAG = "PI_DOWNLOAD";
+
+    // Tells a decrypt worker that no more files are coming
+    private static final Downloaded END = new Downloaded(-1, null);
+
+    private final int downloadThreads;
+    private final int decryptThreads;
+    private final Downloader downloader;
+    private final Decryptor decryptor;
+    private final Listener listener;
+    private final BlockingQueue<Downloaded> queue;
+    private final ExecutorService downloadWorkers;
+    private final ExecutorService decryptWorkers;
+    private final AtomicInteger completed = new AtomicInteger();
+
+    public DownloadPipeline(int downloadThreads, int decryptThreads, int queueCapacity,
+                            Downloader downloader, Decryptor decryptor, Listener listener) {
+        if (downloadThreads < 1 || decryptThreads < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("Pipeline stages need at least one thread and one queue slot");
+        }
+        this.downloadThreads = downloadThreads;
+        this.decryptThreads = decryptThreads;
+        this.downloader = downloader;
+        this.decryptor = decryptor;
+        this.listener = listener;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.downloadWorkers = Executors.newFixedThreadPool(downloadThreads);
+        this.decryptWorkers = Executors.newFixedThreadPool(decryptThreads);
+    }
+
+    // Retrieves every ID and blocks until the last one is decrypted; returns how many succeeded
+    public int run(PrimitiveIterator.OfInt ids) throws InterruptedException {
+        return run(ids, 1, null);
+    }
+
+    // Same, fetching up to batchSize IDs per request through batchDownloader
+    public int run(PrimitiveIterator.OfInt ids, int batchSize, BatchDownloader batchDownloader) throws InterruptedException {
+        for (int i = 0; i < decryptThreads; i++) {
+            decryptWorkers.execute(this::decryptLoop);
+        }
+
+        Semaphore slots = new Semaphore(downloadThreads);
+        int size = batchDownloader == null ? 1 : Math.max(1, batchSize);
+        while (ids.hasNext()) {
+            int[] batch = new int[size];
+            int count = 0;
+            while (count < size && ids.hasNext()) batch[count++] = ids.nextInt();
+            int[] taken = count == size ? batch : Arrays.copyOf(batch, count);
+            slots.acquire();
+            downloadWorkers.execute(() -> {
+                try {
+                    if (batchDownloader == null) fetch(taken[0]);
+                    else fetchBatch(taken, batchDownloader);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+
+        // All downloads have handed over once every slot is free again
+        slots.acquire(downloadThreads);
+        for (int i = 0; i < decryptThreads; i++) {
+            queue.put(END);
+        }
+        decryptWorkers.shutdown();
+        decryptWorkers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        return completed.get();
+    }
+
+    private void fetch(int id) {
+        File encrypted;
+        try {
+            encrypted = downloader.download(id);
+        } catch (Exception e) {
+            listener.onFailed(id, e);
+            return;
+        }
+        listener.onDownloaded(id);
+        try {
+            queue.put(new Downloaded(id, encrypted));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            listener.onFailed(id, e);
+        }
+    }
+
+    private void fetchBatch(int[] ids, BatchDownloader batchDownloader) {
+        Set<Integer> handedOver = new HashSet<>();
+        try {
+            batchDownloader.download(ids, new Handoff() {
+                @Override
+                public void accept(int id, File encrypted) throws InterruptedException {
+                    listener.onDownloaded(id);
+                    queue.put(new Downloaded(id, encrypted));
+                    handedOver.add(id);
+                }
+
+                @Override
+                public void fail(int id, Exception e) {
+                    handedOver.add(id);
+                    listener.onFailed(id, e);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int id : ids) {
+                if (!handedOver.contains(id)) listener.onFailed(id, e);
+            }
+            return;
+        } catch (Exception e) {
+            // Fall through: whatever did not arrive is fetched on its own below
+            Log.w(TAG, "Batch of " + ids.length + " files broke off, fetching the rest one by one", e);
+        }
+        for (int id : ids) {
+            if (!handedOver.contains(id)) fetch(id);
+        }
+    }
+
+    private void decryptLoop() {
+        try {
+            while (true) {
+                Downloaded item = queue.take();
+                if (item == END) return;
+                try {
+                    File decrypted = decryptor.decrypt(item.id, item.encrypted);
+                    completed.incrementAndGet();
+                    listener.onCompleted(item.id, decrypted);
+                } catch (Exception e) {
+                    listener.onFailed(item.id, e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Abandons whatever is still downloading or queued
+    @Override
+    public void close() {
+        downloadWorkers.shutdownNow();
+        decryptWorkers.shutdownNow();
+    }
+}
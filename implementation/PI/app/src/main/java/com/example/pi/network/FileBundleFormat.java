@@ -0,0 +1,180 @@
+package com.example.pi.network;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streamed multi-file download layout returned by POST /api/download-files.
+ *
+ * <pre>
+ *   magic     4 bytes   "PIF1"
+ *   frames, one per requested file in request order, then an end frame:
+ *     type      1 byte    0 = file, 1 = missing, 2 = end of bundle
+ *     idLen     2 bytes   length of the fileId, big-endian (file and missing frames)
+ *     fileId    idLen bytes, UTF-8
+ *     nameLen   2 bytes   length of the stored file name, big-endian (file frames only)
+ *     name      nameLen bytes, UTF-8
+ *     length    8 bytes   body length, big-endian (file frames only)
+ *     body      length bytes of the file as stored
+ * </pre>
+ *
+ * The server side encoder lives in server/src/utils/fileBundleFormat.js.
+ */
+public final class FileBundleFormat {
+
+    public static final String CONTENT_TYPE = "application/x-pi-file-bundle";
+    public static final byte[] MAGIC = {'P', 'I', 'F', '1'};
+    public static final int FRAME_FILE = 0;
+    public static final int FRAME_MISSING = 1;
+    public static final int FRAME_END = 2;
+    // Most files the server serves per request
+    public static final int MAX_FILES = 1000;
+
+    private FileBundleFormat() {}
+
+    public static final class Entry {
+        private final String fileId;
+        private final String fileName;
+        private final long length;
+        private final InputStream body;
+
+        Entry(String fileId, String fileName, long length, InputStream body) {
+            this.fileId = fileId;
+            this.fileName = fileName;
+            this.length = length;
+            this.body = body;
+        }
+
+        public String getFileId() {
+            return fileId;
+        }
+
+        // Null for a file the server does not have
+        public String getFileName() {
+            return fileName;
+        }
+
+        public boolean isMissing() {
+            return fileName == null;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        // Exactly length bytes; whatever is left unread is skipped by the next Reader.next()
+        public InputStream getBody() {
+            return body;
+        }
+    }
+
+    // Pulls one frame at a time off the response, so each file can be consumed as it arrives
+    public static final class Reader {
+
+        private final DataInputStream in;
+        private Entry current;
+        private boolean ended;
+
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            byte[] magic = new byte[MAGIC.length];
+            this.in.readFully(magic);
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) throw new IOException("File bundle has an unknown magic");
+            }
+        }
+
+        // Next file or missing entry, or null after the end frame; throws if the bundle was cut short
+        public Entry next() throws IOException {
+            if (ended) return null;
+            if (current != null) skipFully(current.body);
+
+            int type = in.read();
+            if (type == -1) throw new EOFException("File bundle ended without its end frame");
+            if (type == FRAME_END) {
+                ended = true;
+                current = null;
+                return null;
+            }
+            String fileId = readString();
+            if (type == FRAME_MISSING) {
+                current = new Entry(fileId, null, 0, new BoundedInputStream(in, 0));
+                return current;
+            }
+            if (type != FRAME_FILE) throw new IOException("File bundle has an unknown frame type " + type);
+            String fileName = readString();
+            long length = in.readLong();
+            if (length < 0) throw new IOException("File bundle declares a negative length for " + fileId);
+            current = new Entry(fileId, fileName, length, new BoundedInputStream(in, length));
+            return current;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[in.readUnsignedShort()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static void skipFully(InputStream body) throws IOException {
+            byte[] buffer = new byte[8192];
+            while (body.read(buffer) != -1) {
+                // discard
+            }
+        }
+    }
+
+    // One file's body: ends after its announced length and fails if the bundle ends first
+    private static final class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining == 0) return -1;
+            int b = in.read();
+            if (b == -1) throw new EOFException("File bundle was cut short inside a file");
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining == 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) throw new EOFException("File bundle was cut short inside a file");
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        // The bundle stream stays open for the frames that follow
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
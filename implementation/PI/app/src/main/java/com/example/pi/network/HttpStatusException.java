@@ -0,0 +1,33 @@
+package com.example.pi.network;
+
+import java.io.IOException;
+
+/**
+ * The server answered, but with an error status. Timeouts (408), throttling (429) and server
+ * errors (5xx) say nothing about the request itself and are worth sending again, ideally
+ * smaller or later; any other status would be refused the same way however often it is sent.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+
+    // True for a retryable status and for failures that never got a status, such as a reset connection
+    public static boolean isRetryable(IOException e) {
+        return !(e instanceof HttpStatusException) || ((HttpStatusException) e).isRetryable();
+    }
+}
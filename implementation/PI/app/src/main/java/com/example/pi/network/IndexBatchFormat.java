@@ -0,0 +1,50 @@
+package com.example.pi.network;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compact binary layout for bulk index uploads, used instead of the JSON
+ * {"key","value"} Base64 pairs when the binary upload mode is enabled.
+ *
+ * <pre>
+ *   magic     4 bytes   "PIX1"
+ *   count     4 bytes   number of records, big-endian
+ *   keyLen    2 bytes   length of every u, big-endian (32)
+ *   valueLen  2 bytes   length of every e, big-endian (32)
+ *   records   count * (keyLen + valueLen) bytes, each u immediately followed by its e
+ * </pre>
+ *
+ * The server side reference decoder lives in server/src/utils/indexBatchFormat.js.
+ */
+public final class IndexBatchFormat {
+
+    public static final String CONTENT_TYPE = "application/x-pi-index-batch";
+    public static final byte[] MAGIC = {'P', 'I', 'X', '1'};
+    public static final int HEADER_SIZE = 12;
+    public static final int KEY_SIZE = 32;
+    public static final int VALUE_SIZE = 32;
+    public static final int RECORD_SIZE = KEY_SIZE + VALUE_SIZE;
+
+    private IndexBatchFormat() {}
+
+    // Exact body size for count records, used for fixed-length streaming
+    public static long byteLength(int count) {
+        return HEADER_SIZE + (long) count * RECORD_SIZE;
+    }
+
+    // Writes the header followed by the first count records of the raw (u, e) buffer
+    public static void write(OutputStream out, byte[] records, int count) throws IOException {
+        if (count < 0 || (long) count * RECORD_SIZE > records.length) {
+            throw new IllegalArgumentException("records holds fewer than " + count + " entries");
+        }
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeInt(count);
+        data.writeShort(KEY_SIZE);
+        data.writeShort(VALUE_SIZE);
+        data.write(records, 0, count * RECORD_SIZE);
+        data.flush();
+    }
+}
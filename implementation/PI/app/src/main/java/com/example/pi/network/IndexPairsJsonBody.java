@@ -0,0 +1,129 @@
+package com.example.pi.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {"dbName":...,"pairs":[{"key":...,"value":...},...]} body of POST /bulk-save-index_value,
+ * written straight from the raw (u, e) records in IndexBatchFormat layout. Keys and values
+ * are Base64-encoded into one small reusable buffer per thread as the body is written, so
+ * there is no JSONObject per pair, no body String and no byte[] copy of it. Every record
+ * encodes to the same number of bytes, so the exact length is known up front and the
+ * connection can use fixed-length streaming.
+ *
+ * Semantically identical to the document org.json builds for the same records: same members,
+ * same strings, standard Base64 alphabet with padding and no line breaks, so the endpoint
+ * parses the same values. The bytes may differ where JSON allows a choice of escape: '/' is
+ * always escaped here, while org.json's handling of '/', U+2028/U+2029 and U+0080-U+009F
+ * depends on its version.
+ */
+public class IndexPairsJsonBody {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] KEY_PREFIX = ascii("{\"key\":\"");
+    private static final byte[] VALUE_PREFIX = ascii("\",\"value\":\"");
+    private static final byte[] PAIR_SUFFIX = ascii("\"}");
+    private static final int PAIR_SIZE = KEY_PREFIX.length + base64Length(IndexBatchFormat.KEY_SIZE)
+            + VALUE_PREFIX.length + base64Length(IndexBatchFormat.VALUE_SIZE) + PAIR_SUFFIX.length;
+
+    private final byte[] head;
+    private final byte[] tail = ascii("]}");
+    private final byte[] records;
+    private final int count;
+
+    public IndexPairsJsonBody(String dbName, byte[] records, int count) {
+        if (count < 0 || (long) count * IndexBatchFormat.RECORD_SIZE > records.length) {
+            throw new IllegalArgumentException("records holds fewer than " + count + " entries");
+        }
+        this.head = ("{\"dbName\":" + quote(dbName) + ",\"pairs\":[").getBytes(StandardCharsets.UTF_8);
+        this.records = records;
+        this.count = count;
+    }
+
+    public long contentLength() {
+        return head.length + (long) count * PAIR_SIZE + Math.max(0, count - 1) + tail.length;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = BUFFER.get();
+        out.write(head);
+        int used = 0;
+        for (int i = 0; i < count; i++) {
+            if (used + PAIR_SIZE + 1 > buffer.length) {
+                out.write(buffer, 0, used);
+                used = 0;
+            }
+            if (i > 0) buffer[used++] = ',';
+            int offset = i * IndexBatchFormat.RECORD_SIZE;
+            used = put(buffer, used, KEY_PREFIX);
+            used = encode(records, offset, IndexBatchFormat.KEY_SIZE, buffer, used);
+            used = put(buffer, used, VALUE_PREFIX);
+            used = encode(records, offset + IndexBatchFormat.KEY_SIZE, IndexBatchFormat.VALUE_SIZE, buffer, used);
+            used = put(buffer, used, PAIR_SUFFIX);
+        }
+        out.write(buffer, 0, used);
+        out.write(tail);
+        out.flush();
+    }
+
+    private static int put(byte[] buffer, int at, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, at, bytes.length);
+        return at + bytes.length;
+    }
+
+    // Standard Base64 with padding, written at buffer[at]; returns the position after it
+    private static int encode(byte[] src, int offset, int length, byte[] buffer, int at) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            buffer[at++] = BASE64[bits >>> 18];
+            buffer[at++] = BASE64[(bits >>> 12) & 0x3f];
+            buffer[at++] = BASE64[(bits >>> 6) & 0x3f];
+            buffer[at++] = BASE64[bits & 0x3f];
+        }
+        if (i < end) {
+            int bits = (src[i] & 0xff) << 16 | (i + 1 < end ? (src[i + 1] & 0xff) << 8 : 0);
+            buffer[at++] = BASE64[bits >>> 18];
+            buffer[at++] = BASE64[(bits >>> 12) & 0x3f];
+            buffer[at++] = i + 1 < end ? BASE64[(bits >>> 6) & 0x3f] : (byte) '=';
+            buffer[at++] = '=';
+        }
+        return at;
+    }
+
+    private static int base64Length(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    // JSON string literal, escaped the way org.json does for the characters a space name can hold
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '/': quoted.append("\\/"); break;
+                case '\b': quoted.append("\\b"); break;
+                case '\f': quoted.append("\\f"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) quoted.append(String.format("\\u%04x", (int) c));
+                    else quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.pi.network;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Typed handlers for the JSON responses the app reads in bulk, for use with the
+ * NetworkUtils.ResponseHandler overloads. Each one pulls tokens straight off the response
+ * stream and hands the values it is after to a visitor as they are read; other fields are
+ * skipped without being decoded. Nothing holds the body, a String of it or a JSONObject tree,
+ * so memory use stays the same however long a results array grows.
+ */
+public final class JsonResponses {
+
+    // One value of a results list, in server order; query is 0 for a single lookup
+    public interface ResultsVisitor {
+        void onResult(int query, String value) throws IOException;
+    }
+
+    public interface SpacesVisitor {
+        void onSpace(String dbName);
+    }
+
+    private interface ValueReader {
+        void read(JsonReader reader) throws IOException;
+    }
+
+    private JsonResponses() {}
+
+    // {"results":[v, ...]} of GET /get-index_value; returns the number of values visited
+    public static NetworkUtils.ResponseHandler<Integer> results(ResultsVisitor visitor) {
+        return reader -> {
+            int[] visited = new int[1];
+            field(reader, "results", r -> visited[0] = values(r, 0, visitor));
+            return visited[0];
+        };
+    }
+
+    // {"results":[[v, ...], ...]} of POST /get-index_values, one list per query in query order
+    public static NetworkUtils.ResponseHandler<Integer> batchResults(ResultsVisitor visitor) {
+        return reader -> {
+            int[] visited = new int[1];
+            field(reader, "results", r -> {
+                r.beginArray();
+                for (int query = 0; r.hasNext(); query++) {
+                    visited[0] += values(r, query, visitor);
+                }
+                r.endArray();
+            });
+            return visited[0];
+        };
+    }
+
+    // {"spaces":[name, ...]} of GET /get-spaces; returns the number of spaces visited
+    public static NetworkUtils.ResponseHandler<Integer> spaces(SpacesVisitor visitor) {
+        return reader -> {
+            int[] visited = new int[1];
+            field(reader, "spaces", r -> {
+                r.beginArray();
+                while (r.hasNext()) {
+                    String name = string(r);
+                    if (name == null) continue;
+                    visitor.onSpace(name);
+                    visited[0]++;
+                }
+                r.endArray();
+            });
+            return visited[0];
+        };
+    }
+
+    // The space names of GET /get-spaces, empty if the response has none
+    public static NetworkUtils.ResponseHandler<List<String>> spaceNames() {
+        return reader -> {
+            List<String> names = new ArrayList<>();
+            spaces(names::add).handle(reader);
+            return names;
+        };
+    }
+
+    // Walks the top-level object and hands the named field to value; a null field counts as absent
+    private static void field(JsonReader reader, String name, ValueReader value) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(name) && reader.peek() != JsonToken.NULL) {
+                value.read(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static int values(JsonReader reader, int query, ResultsVisitor visitor) throws IOException {
+        int visited = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = string(reader);
+            if (value == null) continue;
+            visitor.onResult(query, value);
+            visited++;
+        }
+        reader.endArray();
+        return visited;
+    }
+
+    // Strings and numbers as text; nulls and nested values are skipped
+    private static String string(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) return reader.nextString();
+        reader.skipValue();
+        return null;
+    }
+}
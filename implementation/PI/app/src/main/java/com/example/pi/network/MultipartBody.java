@@ -0,0 +1,104 @@
+package com.example.pi.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * multipart/form-data body made of file parts that is written straight from disk.
+ * The exact byte length is known up front, so the connection can use fixed-length
+ * streaming and never buffer the body; each file is read from its FileChannel into one
+ * reusable buffer per thread, so an upload runs in constant memory whatever its size.
+ * Parts that are not regular files (no trustworthy length) switch the body to chunked mode.
+ * File lengths are taken when the body is built, and writing fails if a file no longer has
+ * the length the fixed-length body promised.
+ */
+public class MultipartBody {
+
+    public interface UploadProgressListener {
+        // total is -1 when the body length is not known ahead of time
+        void onBytesSent(long sent, long total);
+    }
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String boundary;
+    private final List<File> files;
+    private final byte[][] partHeaders;
+    private final long[] lengths;
+    private final byte[] closing;
+
+    public MultipartBody(String fieldName, List<File> files) throws FileNotFoundException {
+        this.boundary = "Boundary-" + System.currentTimeMillis();
+        this.files = files;
+        this.partHeaders = new byte[files.size()][];
+        this.lengths = new long[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            if (!file.exists()) throw new FileNotFoundException(file.getAbsolutePath());
+            lengths[i] = file.isFile() ? file.length() : -1;
+            partHeaders[i] = ("--" + boundary + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + fieldName + "\"; filename=\"" + file.getName() + "\"\r\n"
+                    + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        }
+        this.closing = ("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    // Exact body length, or -1 if a file size cannot be known before sending (chunked mode)
+    public long contentLength() {
+        long length = closing.length;
+        for (int i = 0; i < files.size(); i++) {
+            if (lengths[i] < 0) return -1;
+            length += partHeaders[i].length + lengths[i] + CRLF.length;
+        }
+        return length;
+    }
+
+    public void writeTo(OutputStream out, long total, UploadProgressListener listener) throws IOException {
+        byte[] bytes = BUFFER.get();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long sent = 0;
+
+        for (int i = 0; i < files.size(); i++) {
+            out.write(partHeaders[i]);
+            sent += partHeaders[i].length;
+
+            File file = files.get(i);
+            long copied = 0;
+            try (FileInputStream in = new FileInputStream(file); FileChannel channel = in.getChannel()) {
+                int n;
+                while ((n = channel.read(buffer)) != -1) {
+                    out.write(bytes, 0, n);
+                    buffer.clear();
+                    copied += n;
+                    sent += n;
+                    if (listener != null) listener.onBytesSent(sent, total);
+                }
+            }
+            // A file that changed size would break a fixed-length body half way through
+            if (total >= 0 && copied != lengths[i]) {
+                throw new IOException(file.getName() + " changed size during upload");
+            }
+
+            out.write(CRLF);
+            sent += CRLF.length;
+        }
+
+        out.write(closing);
+        sent += closing.length;
+        out.flush();
+        if (listener != null) listener.onBytesSent(sent, total);
+    }
+}
@@ -1,120 +1,292 @@
 package com.example.pi.network;
 
-import java.io.BufferedReader;
+import android.util.JsonReader;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * HTTP client shared by every activity (see getInstance()). Connections to the server are
+ * kept alive and pooled by the platform HttpURLConnection stack, which only hands a socket
+ * back to the pool once its response has been read to the end and closed; every helper
+ * here therefore drains and closes the response, including error bodies. The client also
+ * caches the Authorization header for the current token and counts requests and bytes.
+ */
 public class NetworkUtils {
     
     public interface ProgressListener {
         void onProgress(int progress);
     }
 
-    // Generic Request helper
-    public static String performRequest(String requestUrl, String method, String jsonBody, String authToken) throws Exception {
-        URL url = new URL(requestUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    public interface DownloadTarget {
+        OutputStream open(String fileName) throws IOException;
+    }
 
-        conn.setRequestMethod(method);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setConnectTimeout(15000);
-        conn.setReadTimeout(120000);
+    // Receives the files of a bundle one after another, in request order
+    public interface BundleTarget {
+        OutputStream open(String fileId, String fileName, long length) throws IOException;
+        // Every byte of the file has been written to out; the target closes it
+        void onReceived(String fileId, OutputStream out) throws Exception;
+        // The bundle broke off inside the file; the target discards out
+        void onAborted(String fileId, OutputStream out);
+        void onMissing(String fileId);
+        default void onProgress(String fileId, int progress) {}
+    }
 
-        if (authToken != null) {
-            conn.setRequestProperty("Authorization", "Bearer " + authToken);
-        }
+    // Pulls a 2xx JSON response off the wire token by token; see JsonResponses for the app's handlers
+    public interface ResponseHandler<T> {
+        T handle(JsonReader reader) throws IOException;
+    }
 
-        if (jsonBody != null && (method.equals("POST") || method.equals("PUT") || method.equals("DELETE"))) {
-            conn.setDoOutput(true);
-            try (OutputStream os = conn.getOutputStream()) {
-                byte[] input = jsonBody.getBytes(StandardCharsets.UTF_8);
-                os.write(input, 0, input.length);
-            }
-        }
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 120000;
 
-        return readResponse(conn);
+    private static NetworkUtils instance;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    // Last token and its pre-built header, swapped together so readers never see a mix
+    private volatile String[] authHeader = {null, null};
+
+    private NetworkUtils() {}
+
+    // Turns on keep-alive and keeps up to maxConnections idle sockets per server. The platform
+    // reads these properties when it opens its first connection, so this is called once at
+    // process start (PiApplication), before any request.
+    public static void configureConnectionPool(int maxConnections) {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(Math.max(1, maxConnections)));
+    }
+
+    public static synchronized NetworkUtils getInstance() {
+        if (instance == null) instance = new NetworkUtils();
+        return instance;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    // Generic Request helper
+    public String performRequest(String requestUrl, String method, String jsonBody, String authToken) throws Exception {
+        return readResponse(sendRequest(requestUrl, method, jsonBody, authToken));
+    }
+
+    // Same request, with the response parsed by the handler as it arrives instead of read into a String first
+    public <T> T performRequest(String requestUrl, String method, String jsonBody, String authToken,
+                                ResponseHandler<T> handler) throws Exception {
+        return readResponse(sendRequest(requestUrl, method, jsonBody, authToken), handler);
     }
 
     // Helper method to perform POST request with JSON body
-    public static String performPostRequest(String requestUrl, String jsonBody, String authToken) throws Exception {
+    public String performPostRequest(String requestUrl, String jsonBody, String authToken) throws Exception {
         return performRequest(requestUrl, "POST", jsonBody, authToken);
     }
+
+    public <T> T performPostRequest(String requestUrl, String jsonBody, String authToken, ResponseHandler<T> handler) throws Exception {
+        return performRequest(requestUrl, "POST", jsonBody, authToken, handler);
+    }
     
     // Helper method to perform GET request
-    public static String performGetRequest(String requestUrl, String authToken) throws Exception {
+    public String performGetRequest(String requestUrl, String authToken) throws Exception {
         return performRequest(requestUrl, "GET", null, authToken);
     }
 
+    public <T> T performGetRequest(String requestUrl, String authToken, ResponseHandler<T> handler) throws Exception {
+        return performRequest(requestUrl, "GET", null, authToken, handler);
+    }
+
     // Helper method to perform DELETE request
-    public static String performDeleteRequest(String requestUrl, String jsonBody, String authToken) throws Exception {
+    public String performDeleteRequest(String requestUrl, String jsonBody, String authToken) throws Exception {
         return performRequest(requestUrl, "DELETE", jsonBody, authToken);
     }
 
+    // Appends the space name as the dbName query parameter; names may hold '&', '#' or spaces
+    static String withDbName(String requestUrl, String dbName) throws IOException {
+        return requestUrl + "?dbName=" + URLEncoder.encode(dbName, "UTF-8");
+    }
+
+    // Helper method to upload raw (u, e) token records in the binary IndexBatchFormat
+    public String performBinaryIndexUpload(String requestUrl, String dbName, byte[] records, int count, String authToken) throws Exception {
+        HttpURLConnection conn = openConnection(withDbName(requestUrl, dbName), "POST", authToken);
+        conn.setRequestProperty("Content-Type", IndexBatchFormat.CONTENT_TYPE);
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(IndexBatchFormat.byteLength(count));
+
+        try (OutputStream os = requestBody(conn)) {
+            IndexBatchFormat.write(os, records, count);
+        }
+
+        return readResponse(conn);
+    }
+
+    // Same records as bulk-save-index_value JSON pairs, streamed without building the document first
+    public String performJsonIndexUpload(String requestUrl, String dbName, byte[] records, int count, String authToken) throws Exception {
+        IndexPairsJsonBody body = new IndexPairsJsonBody(dbName, records, count);
+        HttpURLConnection conn = openConnection(requestUrl, "POST", authToken);
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Accept", "application/json");
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.contentLength());
+
+        try (OutputStream os = requestBody(conn)) {
+            body.writeTo(os);
+        }
+
+        return readResponse(conn);
+    }
+
     // Helper method to perform multipart POST request for file uploads
-    public static String performMultipartRequest(String requestUrl, String dbName, List<String> filePaths, String authToken) throws Exception {
-        String boundary = "Boundary-" + System.currentTimeMillis();
-        URL url = new URL(requestUrl + "?dbName=" + dbName);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    public String performMultipartRequest(String requestUrl, String dbName, List<String> filePaths, String authToken) throws Exception {
+        return performMultipartRequest(requestUrl, dbName, filePaths, authToken, null);
+    }
 
-        conn.setConnectTimeout(10000);
-        conn.setReadTimeout(30000);
+    // Streams the files from disk as the request body, reporting every byte written
+    public String performMultipartRequest(String requestUrl, String dbName, List<String> filePaths, String authToken,
+                                          MultipartBody.UploadProgressListener listener) throws Exception {
+        List<File> files = new ArrayList<>();
+        for (String filePath : filePaths) files.add(new File(filePath));
+        MultipartBody body = new MultipartBody("files", files);
+
+        HttpURLConnection conn = openConnection(withDbName(requestUrl, dbName), "POST", authToken);
         conn.setDoOutput(true);
         conn.setDoInput(true);
         conn.setUseCaches(false);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Connection", "Keep-Alive");
-        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-        if (authToken != null) {
-            conn.setRequestProperty("Authorization", "Bearer " + authToken);
-        }
-
-        try (OutputStream outputStream = conn.getOutputStream();
-             java.io.PrintWriter writer = new java.io.PrintWriter(new java.io.OutputStreamWriter(outputStream, StandardCharsets.UTF_8), true)) {
-            
-            for (String filePath : filePaths) {
-                File file = new File(filePath);
-                writer.append("--").append(boundary).append("\r\n");
-                writer.append("Content-Disposition: form-data; name=\"files\"; filename=\"").append(file.getName()).append("\"\r\n");
-                writer.append("Content-Type: text/plain\r\n\r\n");
-                writer.flush();
-
-                try (java.io.FileInputStream inputStream = new java.io.FileInputStream(file)) {
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                    }
-                    outputStream.flush();
-                }
-                writer.append("\r\n");
-                writer.flush();
-            }
-            writer.append("--").append(boundary).append("--\r\n");
-            writer.flush();
+        conn.setRequestProperty("Content-Type", body.getContentType());
+
+        // Without a streaming mode HttpURLConnection buffers the whole body before sending it
+        long contentLength = body.contentLength();
+        if (contentLength >= 0) {
+            conn.setFixedLengthStreamingMode(contentLength);
+        } else {
+            conn.setChunkedStreamingMode(0);
+        }
+
+        try (OutputStream outputStream = requestBody(conn)) {
+            body.writeTo(outputStream, contentLength, listener);
         }
 
         return readResponse(conn);
     }
-    public static String downloadFile(String requestUrl, String destinationDir, String authToken, ProgressListener listener) throws Exception {
-        URL url = new URL(requestUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        if (authToken != null) {
-            conn.setRequestProperty("Authorization", "Bearer " + authToken);
+
+    // Resumes a partial copy left in destinationDir by an earlier attempt at the same URL
+    public String downloadFile(String requestUrl, String destinationDir, String authToken, ProgressListener listener) throws Exception {
+        return downloadFile(requestUrl, destinationDir, authToken, 1, listener);
+    }
+
+    // Large files can be fetched as up to `segments` parallel byte ranges
+    public String downloadFile(String requestUrl, String destinationDir, String authToken, int segments, ProgressListener listener) throws Exception {
+        return new ResumableDownload(this, requestUrl, authToken)
+                .setSegments(segments)
+                .toFile(new File(destinationDir), percent(listener))
+                .getName();
+    }
+
+    // Streams the response body into the sink the target opens for the server's file name and returns that name.
+    // A dropped connection is resumed with a byte range, so the sink sees every byte once and in order.
+    public String download(String requestUrl, String authToken, ProgressListener listener, DownloadTarget target) throws Exception {
+        return new ResumableDownload(this, requestUrl, authToken).toStream(target, percent(listener));
+    }
+
+    // Fetches several files in one streamed POST /download-files response and hands each to the
+    // target as soon as its last byte arrives. Returns the IDs that were received or reported
+    // missing; if the connection breaks, the exception says so and the rest were never delivered.
+    public List<String> downloadBundle(String requestUrl, String dbName, List<String> fileIds, String authToken,
+                                       BundleTarget target) throws Exception {
+        if (fileIds.size() > FileBundleFormat.MAX_FILES) {
+            throw new IllegalArgumentException("At most " + FileBundleFormat.MAX_FILES + " files per bundle");
+        }
+        JSONObject request = new JSONObject();
+        request.put("dbName", dbName);
+        request.put("fileIds", new JSONArray(fileIds));
+        byte[] body = request.toString().getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection conn = openConnection(requestUrl, "POST", authToken);
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Accept", FileBundleFormat.CONTENT_TYPE);
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream os = requestBody(conn)) {
+            os.write(body);
         }
-        conn.connect();
 
         if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-            throw new Exception("HTTP error code: " + conn.getResponseCode());
+            readResponse(conn);
+            throw new HttpStatusException(conn.getResponseCode(), "Unexpected response " + conn.getResponseCode() + " to a bundle request");
+        }
+
+        List<String> delivered = new ArrayList<>();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = responseBody(conn.getInputStream())) {
+            FileBundleFormat.Reader reader = new FileBundleFormat.Reader(in);
+            FileBundleFormat.Entry entry;
+            while ((entry = reader.next()) != null) {
+                String fileId = entry.getFileId();
+                if (entry.isMissing()) {
+                    target.onMissing(fileId);
+                    delivered.add(fileId);
+                    continue;
+                }
+                OutputStream out = target.open(fileId, entry.getFileName(), entry.getLength());
+                try {
+                    InputStream file = entry.getBody();
+                    long received = 0;
+                    int lastProgress = -1;
+                    int n;
+                    while ((n = file.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                        received += n;
+                        int progress = (int) (received * 100 / entry.getLength());
+                        if (progress != lastProgress) {
+                            target.onProgress(fileId, progress);
+                            lastProgress = progress;
+                        }
+                    }
+                } catch (IOException e) {
+                    target.onAborted(fileId, out);
+                    throw e;
+                }
+                target.onReceived(fileId, out);
+                delivered.add(fileId);
+            }
+            // Past the end frame; reading to EOF returns the socket to the pool
+            while (in.read(buffer) != -1) {
+                // discard
+            }
         }
+        return delivered;
+    }
 
-        // Try to get filename from Content-Disposition header
+    // File name from Content-Disposition, else the fileId query parameter of the URL
+    static String fileNameFor(HttpURLConnection conn, String requestUrl) {
         String fileName = null;
         String disposition = conn.getHeaderField("Content-Disposition");
         if (disposition != null) {
@@ -140,44 +312,134 @@ public class NetworkUtils {
                 fileName = "downloaded_file_" + System.currentTimeMillis();
             }
         }
+        return fileName;
+    }
+
+    // Byte counts arrive per read; the listener only hears about whole-percent changes
+    private static ResumableDownload.ByteProgressListener percent(ProgressListener listener) {
+        if (listener == null) return null;
+        AtomicInteger last = new AtomicInteger(-1);
+        return (downloaded, total) -> {
+            if (total <= 0) return;
+            int progress = (int) (downloaded * 100 / total);
+            if (last.getAndSet(progress) != progress) listener.onProgress(progress);
+        };
+    }
+
+    HttpURLConnection openConnection(String requestUrl, String method, String authToken) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(requestUrl).openConnection();
+        conn.setRequestMethod(method);
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        conn.setReadTimeout(READ_TIMEOUT_MS);
+        conn.setRequestProperty("Connection", "keep-alive");
+        if (authToken != null) {
+            conn.setRequestProperty("Authorization", authorizationFor(authToken));
+        }
+        requestCount.incrementAndGet();
+        return conn;
+    }
 
-        int fileLength = conn.getContentLength();
-        
-        File destinationFile = new File(destinationDir, fileName);
-        try (java.io.InputStream is = conn.getInputStream();
-             java.io.FileOutputStream os = new java.io.FileOutputStream(destinationFile)) {
+    private String authorizationFor(String authToken) {
+        String[] cached = authHeader;
+        if (authToken.equals(cached[0])) return cached[1];
+        String header = "Bearer " + authToken;
+        authHeader = new String[]{authToken, header};
+        return header;
+    }
+
+    private OutputStream requestBody(HttpURLConnection conn) throws IOException {
+        return new FilterOutputStream(conn.getOutputStream()) {
+            @Override public void write(int b) throws IOException {
+                out.write(b);
+                bytesSent.incrementAndGet();
+            }
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesSent.addAndGet(len);
+            }
+        };
+    }
+
+    InputStream responseBody(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override public int read() throws IOException {
+                int b = in.read();
+                if (b != -1) bytesReceived.incrementAndGet();
+                return b;
+            }
+            @Override public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) bytesReceived.addAndGet(n);
+                return n;
+            }
+        };
+    }
+
+    // Reads an unwanted body to the end so the socket can go back to the pool
+    void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        try (InputStream body = responseBody(in)) {
             byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalRead = 0;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                os.write(buffer, 0, bytesRead);
-                totalRead += bytesRead;
-                if (listener != null && fileLength > 0) {
-                    listener.onProgress((int) (totalRead * 100 / fileLength));
-                }
+            while (body.read(buffer) != -1) {
+                // discard
             }
         }
-        return fileName;
     }
 
-    private static String readResponse(HttpURLConnection conn) throws Exception {
-        int responseCode = conn.getResponseCode();
+    private HttpURLConnection sendRequest(String requestUrl, String method, String jsonBody, String authToken) throws Exception {
+        HttpURLConnection conn = openConnection(requestUrl, method, authToken);
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("Accept", "application/json");
 
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(
-                        (responseCode >= 200 && responseCode < 300) ? conn.getInputStream() : conn.getErrorStream(),
-                        StandardCharsets.UTF_8))) {
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
+        if (jsonBody != null && (method.equals("POST") || method.equals("PUT") || method.equals("DELETE"))) {
+            byte[] input = jsonBody.getBytes(StandardCharsets.UTF_8);
+            conn.setDoOutput(true);
+            conn.setFixedLengthStreamingMode(input.length);
+            try (OutputStream os = requestBody(conn)) {
+                os.write(input, 0, input.length);
             }
         }
+        return conn;
+    }
+
+    private String readResponse(HttpURLConnection conn) throws Exception {
+        int responseCode = conn.getResponseCode();
+        InputStream stream = (responseCode >= 200 && responseCode < 300) ? conn.getInputStream() : conn.getErrorStream();
+        String response = readBody(stream);
 
         if (responseCode >= 200 && responseCode < 300) {
-            return response.toString();
+            return response;
         } else {
-            throw new Exception("Error: " + responseCode + " " + response.toString());
+            throw new HttpStatusException(responseCode, "Error: " + responseCode + " " + response);
+        }
+    }
+
+    private <T> T readResponse(HttpURLConnection conn, ResponseHandler<T> handler) throws Exception {
+        int responseCode = conn.getResponseCode();
+        if (responseCode < 200 || responseCode >= 300) {
+            throw new HttpStatusException(responseCode, "Error: " + responseCode + " " + readBody(conn.getErrorStream()));
+        }
+
+        InputStream stream = conn.getInputStream();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(responseBody(stream), StandardCharsets.UTF_8))) {
+            T value = handler.handle(reader);
+            // Trailing whitespace, so the socket can go back to the pool
+            drain(stream);
+            return value;
+        }
+    }
+
+    // Whole body as one String, for the short responses that are read that way
+    private String readBody(InputStream stream) throws IOException {
+        if (stream == null) return "";
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = responseBody(stream)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+            }
         }
+        return body.toString("UTF-8").trim();
     }
 }
@@ -0,0 +1,106 @@
+package com.example.pi.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-cuts a stream of token chunks (records in IndexBatchFormat layout) into upload batches
+ * of whatever size the AdaptiveBatchSizer currently asks for, merging small chunks and
+ * splitting large ones. A chunk that makes up a batch exactly is passed on without a copy.
+ *
+ * Chunks are what the update journal acknowledges and batches what the server does, so for
+ * every batch cut the batcher records how many whole chunks it completes: once the first n
+ * batches are acknowledged, chunksCompletedBy(n) chunks are. Chunks are added from a single
+ * thread; chunksCompletedBy() may be called from any.
+ */
+public class RecordBatcher {
+
+    public interface Sink {
+        void submit(byte[] records) throws Exception;
+    }
+
+    private final AdaptiveBatchSizer sizer;
+    private final Sink sink;
+
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+    // Records of the first pending chunk that already went into a batch
+    private int headOffset;
+    private int pendingRecords;
+    private long addedRecords;
+    private long cutRecords;
+    // Record position where each chunk not yet fully cut ends
+    private final ArrayDeque<Long> chunkEnds = new ArrayDeque<>();
+    private int chunksCut;
+    // Guarded by this
+    private final List<Integer> chunksByBatch = new ArrayList<>();
+
+    public RecordBatcher(AdaptiveBatchSizer sizer, Sink sink) {
+        this.sizer = sizer;
+        this.sink = sink;
+    }
+
+    // Queues a chunk and submits every batch of the current size it completes
+    public void add(byte[] chunk) throws Exception {
+        int count = chunk.length / IndexBatchFormat.RECORD_SIZE;
+        if (count == 0) return;
+        pending.add(chunk);
+        pendingRecords += count;
+        addedRecords += count;
+        chunkEnds.add(addedRecords);
+        cut(false);
+    }
+
+    // Submits whatever is left as a last, smaller batch
+    public void flush() throws Exception {
+        cut(true);
+    }
+
+    public synchronized int chunksCompletedBy(int batches) {
+        return batches == 0 ? 0 : chunksByBatch.get(batches - 1);
+    }
+
+    private void cut(boolean all) throws Exception {
+        while (pendingRecords > 0) {
+            int size = sizer.getBatchSize();
+            if (pendingRecords < size && !all) return;
+            int count = Math.min(size, pendingRecords);
+            byte[] batch = take(count);
+            cutRecords += count;
+            while (!chunkEnds.isEmpty() && chunkEnds.peek() <= cutRecords) {
+                chunkEnds.poll();
+                chunksCut++;
+            }
+            synchronized (this) {
+                chunksByBatch.add(chunksCut);
+            }
+            sink.submit(batch);
+        }
+    }
+
+    private byte[] take(int count) {
+        byte[] head = pending.peek();
+        if (headOffset == 0 && head.length == count * IndexBatchFormat.RECORD_SIZE) {
+            pending.poll();
+            pendingRecords -= count;
+            return head;
+        }
+        byte[] batch = new byte[count * IndexBatchFormat.RECORD_SIZE];
+        int filled = 0;
+        while (filled < batch.length) {
+            byte[] chunk = pending.peek();
+            int from = headOffset * IndexBatchFormat.RECORD_SIZE;
+            int length = Math.min(chunk.length - from, batch.length - filled);
+            System.arraycopy(chunk, from, batch, filled, length);
+            filled += length;
+            if (from + length == chunk.length) {
+                pending.poll();
+                headOffset = 0;
+            } else {
+                headOffset += length / IndexBatchFormat.RECORD_SIZE;
+            }
+        }
+        pendingRecords -= count;
+        return batch;
+    }
+}
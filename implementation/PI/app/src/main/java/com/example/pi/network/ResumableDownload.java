@@ -0,0 +1,489 @@
+package com.example.pi.network;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GET download that survives dropped connections. Lengths are tracked as long, and when the
+ * server honours byte ranges (Express' res.download does) a broken transfer continues with
+ * "Range: bytes=<received>-" guarded by If-Range, so a file changed on the server is never
+ * stitched together from two versions. A reconnect that is refused or times out counts as
+ * one more drop, retried with the same attempts and backoff.
+ *
+ * toFile() keeps a .part file and a .meta record next to the destination, so a download
+ * cut off by a crash or a closed app resumes where it stopped on the next call for the same
+ * URL. Large files can be fetched as several ranged segments in parallel. toStream() feeds a
+ * sequential sink (such as a decrypting stream) and resumes within the call only.
+ */
+public class ResumableDownload {
+
+    // total is -1 while the length is unknown
+    public interface ByteProgressListener {
+        void onProgress(long downloaded, long total);
+    }
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 4;
+    private static final long MIN_SEGMENT_SIZE = 4L * 1024 * 1024;
+    // Segment positions are recorded in .meta at least this often
+    private static final long SAVE_INTERVAL = 8L * 1024 * 1024;
+    private static final long RETRY_BACKOFF_MS = 500;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final NetworkUtils network;
+    private final String url;
+    private final String authToken;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private int segments = 1;
+
+    public ResumableDownload(NetworkUtils network, String url, String authToken) {
+        this.network = network;
+        this.url = url;
+        this.authToken = authToken;
+    }
+
+    // Connection attempts per segment before the download fails
+    public ResumableDownload setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        return this;
+    }
+
+    // Parallel ranged requests for one file; only used when ranges are supported and the file is large
+    public ResumableDownload setSegments(int segments) {
+        this.segments = Math.max(1, segments);
+        return this;
+    }
+
+    // Downloads into destinationDir under the server's file name and returns that file
+    public File toFile(File destinationDir, ByteProgressListener listener) throws Exception {
+        if (!destinationDir.exists()) destinationDir.mkdirs();
+        String key = partialKey();
+        File part = new File(destinationDir, key + ".part");
+        File meta = new File(destinationDir, key + ".meta");
+        try {
+            return fetchToFile(destinationDir, part, meta, listener);
+        } catch (ResourceChangedException e) {
+            // The file changed since the partial copy was made; start over once
+            part.delete();
+            meta.delete();
+            return fetchToFile(destinationDir, part, meta, listener);
+        }
+    }
+
+    // Streams the body into the sink opened by target, in order; returns the server's file name
+    public String toStream(NetworkUtils.DownloadTarget target, ByteProgressListener listener) throws Exception {
+        OutputStream out = null;
+        String fileName = null;
+        String validator = null;
+        long total = -1;
+        long received = 0;
+        int attempt = 0;
+        boolean done = false;
+        try {
+            while (!done) {
+                HttpURLConnection conn = null;
+                try {
+                    conn = received == 0 ? request(-1, -1, null) : request(received, total, validator);
+                    Response response = Response.of(network, conn, url);
+                    if (received > 0 && (response.code != HttpURLConnection.HTTP_PARTIAL || response.start != received)) {
+                        conn.disconnect();
+                        throw new IOException("Server could not resume the download at byte " + received);
+                    }
+                    if (out == null) {
+                        fileName = response.fileName;
+                        validator = response.validator;
+                        total = response.total;
+                        out = target.open(fileName);
+                    }
+                    try (InputStream in = network.responseBody(conn.getInputStream())) {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        int n;
+                        while ((n = read(in, buffer, buffer.length)) != -1) {
+                            out.write(buffer, 0, n);
+                            received += n;
+                            if (listener != null) listener.onProgress(received, total);
+                        }
+                        if (total >= 0 && received < total) throw new DroppedConnectionException(null);
+                        done = true;
+                    }
+                } catch (DroppedConnectionException e) {
+                    if (conn != null) conn.disconnect();
+                    // Without a validator a partial body cannot be continued
+                    if (++attempt >= maxAttempts || (received > 0 && validator == null)) throw e;
+                    backoff(attempt);
+                }
+            }
+            out.close();
+            return fileName;
+        } catch (Exception e) {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException closeError) {
+                    e.addSuppressed(closeError);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private File fetchToFile(File destinationDir, File part, File meta, ByteProgressListener listener) throws Exception {
+        State state = part.exists() ? State.load(meta) : null;
+        HttpURLConnection first = null;
+        if (state == null) {
+            // Open-ended range: the answer says whether ranges work and how long the file is
+            first = probe();
+            Response response = Response.of(network, first, url);
+            boolean ranged = response.code == HttpURLConnection.HTTP_PARTIAL && response.start == 0;
+            state = new State(response.fileName, response.total, ranged ? response.validator : null);
+            state.plan(ranged ? segments : 1);
+            new FileOutputStream(part).close();
+            if (state.resumable()) state.save(meta);
+        }
+
+        State job = state;
+        AtomicLong downloaded = new AtomicLong(job.received());
+        try (RandomAccessFile file = new RandomAccessFile(part, "rw"); FileChannel channel = file.getChannel()) {
+            if (job.segments.size() == 1) {
+                runSegment(job, job.segments.get(0), first, channel, meta, downloaded, listener);
+            } else {
+                ExecutorService workers = Executors.newFixedThreadPool(job.segments.size());
+                try {
+                    List<Future<?>> running = new ArrayList<>();
+                    for (int i = 0; i < job.segments.size(); i++) {
+                        Segment segment = job.segments.get(i);
+                        // The open-ended first response carries segment 0 and is cut off at its end
+                        HttpURLConnection conn = i == 0 ? first : null;
+                        running.add(workers.submit(() -> {
+                            runSegment(job, segment, conn, channel, meta, downloaded, listener);
+                            return null;
+                        }));
+                    }
+                    for (Future<?> f : running) {
+                        try {
+                            f.get();
+                        } catch (java.util.concurrent.ExecutionException e) {
+                            if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+                            throw e;
+                        }
+                    }
+                } finally {
+                    workers.shutdownNow();
+                }
+            }
+            if (job.total >= 0) file.setLength(job.total);
+            channel.force(false);
+        } catch (Exception e) {
+            if (job.resumable()) job.save(meta);
+            throw e;
+        }
+
+        File destination = new File(destinationDir, job.fileName);
+        destination.delete();
+        if (!part.renameTo(destination)) throw new IOException("Could not move download to " + destination);
+        meta.delete();
+        return destination;
+    }
+
+    private void runSegment(State state, Segment segment, HttpURLConnection conn, FileChannel channel, File meta,
+                            AtomicLong downloaded, ByteProgressListener listener) throws Exception {
+        int attempt = 0;
+        while (!segment.isDone()) {
+            boolean openEnded = conn != null && state.segments.size() > 1;
+            try {
+                if (conn == null) {
+                    conn = request(segment.position, segment.end, state.validator);
+                    checkResumed(conn, state, segment);
+                }
+                copy(conn, state, segment, channel, meta, downloaded, listener);
+                // The rest of an open-ended body belongs to other segments; drop it with the socket
+                if (openEnded) conn.disconnect();
+                else conn.getInputStream().close();
+            } catch (DroppedConnectionException e) {
+                if (conn != null) conn.disconnect();
+                if (++attempt >= maxAttempts) throw e;
+                if (state.resumable()) {
+                    state.save(meta);
+                } else {
+                    // Without ranges the only way back is to start the file again
+                    downloaded.addAndGet(-(segment.position - segment.start));
+                    segment.position = segment.start;
+                }
+                backoff(attempt);
+            } catch (Exception e) {
+                if (conn != null) conn.disconnect();
+                throw e;
+            }
+            conn = null;
+        }
+    }
+
+    // A ranged retry must continue exactly where the segment stopped, from the same version of the file
+    private void checkResumed(HttpURLConnection conn, State state, Segment segment) throws IOException {
+        int code = conn.getResponseCode();
+        if (code == HttpURLConnection.HTTP_PARTIAL) {
+            long start = Response.contentRangeStart(conn);
+            if (start == segment.position) return;
+        } else if (code == HttpURLConnection.HTTP_OK && segment.position == 0 && !state.resumable()) {
+            return;
+        }
+        if (code >= 400 && code != 416) {
+            network.drain(conn.getErrorStream());
+            throw new HttpStatusException(code, "HTTP error code: " + code);
+        }
+        // A full 200 body or an unexpected range: the partial copy no longer matches the file
+        conn.disconnect();
+        throw new ResourceChangedException();
+    }
+
+    private void copy(HttpURLConnection conn, State state, Segment segment, FileChannel channel, File meta,
+                      AtomicLong downloaded, ByteProgressListener listener) throws IOException {
+        InputStream in = network.responseBody(conn.getInputStream());
+        byte[] bytes = new byte[BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long sinceSave = 0;
+        while (!segment.isDone()) {
+            int want = segment.end < 0 ? bytes.length : (int) Math.min(bytes.length, segment.end - segment.position);
+            int n = read(in, bytes, want);
+            if (n == -1) {
+                if (segment.end >= 0) throw new DroppedConnectionException(null);
+                // Length was unknown: the end of the body is the end of the file
+                segment.end = segment.position;
+                state.total = segment.end;
+                break;
+            }
+            buffer.clear().limit(n);
+            while (buffer.hasRemaining()) {
+                segment.position += channel.write(buffer, segment.position);
+            }
+            long total = downloaded.addAndGet(n);
+            if (listener != null) listener.onProgress(total, state.total);
+            sinceSave += n;
+            if (sinceSave >= SAVE_INTERVAL && state.resumable()) {
+                channel.force(false);
+                state.save(meta);
+                sinceSave = 0;
+            }
+        }
+    }
+
+    // First response of a new download, with the same attempts and backoff as a dropped body
+    private HttpURLConnection probe() throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request(0, -1, null);
+            } catch (DroppedConnectionException e) {
+                if (attempt >= maxAttempts) throw e;
+                backoff(attempt);
+            }
+        }
+    }
+
+    // Connects and reads the status line. A refused, reset or timed-out connection is reported as
+    // dropped so callers retry it; an HTTP error status is left to them.
+    private HttpURLConnection request(long from, long end, String validator) throws IOException {
+        HttpURLConnection conn = network.openConnection(url, "GET", authToken);
+        if (from >= 0) {
+            conn.setRequestProperty("Range", "bytes=" + from + "-" + (end > 0 ? String.valueOf(end - 1) : ""));
+            if (validator != null) conn.setRequestProperty("If-Range", validator);
+        }
+        try {
+            conn.connect();
+            conn.getResponseCode();
+        } catch (IOException e) {
+            conn.disconnect();
+            throw new DroppedConnectionException(e);
+        }
+        return conn;
+    }
+
+    // Reads from the network; failures here are retried, while failures writing to disk are not
+    private static int read(InputStream in, byte[] buffer, int length) throws DroppedConnectionException {
+        try {
+            return in.read(buffer, 0, length);
+        } catch (IOException e) {
+            throw new DroppedConnectionException(e);
+        }
+    }
+
+    private static void backoff(int attempt) throws InterruptedException {
+        Thread.sleep(RETRY_BACKOFF_MS * attempt);
+    }
+
+    private String partialKey() throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+        StringBuilder key = new StringBuilder("download-");
+        for (int i = 0; i < 8; i++) key.append(String.format("%02x", digest[i]));
+        return key.toString();
+    }
+
+    private static class DroppedConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        DroppedConnectionException(IOException cause) {
+            super("Connection dropped during download", cause);
+        }
+    }
+
+    private static class ResourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ResourceChangedException() {
+            super("File changed on the server since the download started");
+        }
+    }
+
+    private static class Segment {
+        final long start;
+        long end;
+        volatile long position;
+
+        Segment(long start, long position, long end) {
+            this.start = start;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean isDone() {
+            return end >= 0 && position >= end;
+        }
+    }
+
+    // Everything needed to resume a partial download, persisted as .meta next to the .part file
+    private static class State {
+        final String fileName;
+        // Strong ETag or Last-Modified of the first response; null when ranges are not supported
+        final String validator;
+        volatile long total;
+        final List<Segment> segments = new ArrayList<>();
+
+        State(String fileName, long total, String validator) {
+            this.fileName = fileName;
+            this.total = total;
+            this.validator = validator;
+        }
+
+        boolean resumable() {
+            return validator != null && total >= 0;
+        }
+
+        void plan(int count) {
+            if (!resumable() || count == 1 || total < 2 * MIN_SEGMENT_SIZE) {
+                segments.add(new Segment(0, 0, total));
+                return;
+            }
+            int n = (int) Math.min(count, total / MIN_SEGMENT_SIZE);
+            long size = total / n;
+            for (int i = 0; i < n; i++) {
+                long start = i * size;
+                segments.add(new Segment(start, start, i == n - 1 ? total : start + size));
+            }
+        }
+
+        long received() {
+            long received = 0;
+            for (Segment s : segments) received += s.position - s.start;
+            return received;
+        }
+
+        synchronized void save(File meta) throws IOException {
+            Properties p = new Properties();
+            p.setProperty("fileName", fileName);
+            p.setProperty("total", String.valueOf(total));
+            p.setProperty("validator", validator);
+            p.setProperty("segments", String.valueOf(segments.size()));
+            for (int i = 0; i < segments.size(); i++) {
+                Segment s = segments.get(i);
+                p.setProperty("segment." + i, s.start + "," + s.position + "," + s.end);
+            }
+            File tmp = new File(meta.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                p.store(out, "PI partial download");
+                out.getFD().sync();
+            }
+            if (!tmp.renameTo(meta)) throw new IOException("Could not update " + meta.getName());
+        }
+
+        static State load(File meta) {
+            if (!meta.exists()) return null;
+            Properties p = new Properties();
+            try (FileInputStream in = new FileInputStream(meta)) {
+                p.load(in);
+                State state = new State(p.getProperty("fileName"), Long.parseLong(p.getProperty("total")), p.getProperty("validator"));
+                int count = Integer.parseInt(p.getProperty("segments"));
+                for (int i = 0; i < count; i++) {
+                    String[] s = p.getProperty("segment." + i).split(",");
+                    state.segments.add(new Segment(Long.parseLong(s[0]), Long.parseLong(s[1]), Long.parseLong(s[2])));
+                }
+                return state.fileName != null && state.resumable() ? state : null;
+            } catch (Exception e) {
+                // Unreadable record: the partial copy cannot be trusted
+                return null;
+            }
+        }
+    }
+
+    // Status line and headers of a download response
+    private static class Response {
+        int code;
+        String fileName;
+        String validator;
+        long start;
+        long total;
+
+        static Response of(NetworkUtils network, HttpURLConnection conn, String url) throws IOException {
+            Response r = new Response();
+            r.code = conn.getResponseCode();
+            if (r.code != HttpURLConnection.HTTP_OK && r.code != HttpURLConnection.HTTP_PARTIAL) {
+                network.drain(conn.getErrorStream());
+                throw new HttpStatusException(r.code, "HTTP error code: " + r.code);
+            }
+            r.fileName = NetworkUtils.fileNameFor(conn, url);
+            String etag = conn.getHeaderField("ETag");
+            String lastModified = conn.getHeaderField("Last-Modified");
+            // If-Range needs a strong validator (RFC 9110); fall back to the date when the ETag is
+            // weak, and to none at all, so the file restarts from zero, when there is no date either
+            if (etag != null && !etag.startsWith("W/")) r.validator = etag;
+            else r.validator = lastModified;
+            if (r.code == HttpURLConnection.HTTP_PARTIAL) {
+                r.start = contentRangeStart(conn);
+                String range = conn.getHeaderField("Content-Range");
+                String size = range != null && range.contains("/") ? range.substring(range.indexOf('/') + 1).trim() : "*";
+                r.total = size.equals("*") ? -1 : Long.parseLong(size);
+            } else {
+                r.start = 0;
+                r.total = conn.getContentLengthLong();
+            }
+            return r;
+        }
+
+        // First byte of a "Content-Range: bytes a-b/total" answer, or -1 if it is missing
+        static long contentRangeStart(HttpURLConnection conn) {
+            String range = conn.getHeaderField("Content-Range");
+            if (range == null || !range.startsWith("bytes ")) return -1;
+            int dash = range.indexOf('-');
+            if (dash < 0) return -1;
+            try {
+                return Long.parseLong(range.substring(6, dash).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+}
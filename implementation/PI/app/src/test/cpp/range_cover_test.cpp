@@ -0,0 +1,89 @@
+// Host-side checks of the range-cover layout in v2.cpp, which needs no Android or crypto
+// headers. Build and run from app/src/test/cpp:
+//     g++ -std=c++17 -O2 range_cover_test.cpp -o range_cover_test && ./range_cover_test
+#include <cstdlib>
+#include <random>
+#include <unordered_map>
+#include "../../main/cpp/v2.cpp"
+
+static int failures = 0;
+
+static void check(bool ok, const string &what)
+{
+    if (!ok) {
+        failures++;
+        cerr << "FAIL: " << what << endl;
+    }
+}
+
+// Random files over [0, range), with duplicates and gaps
+static vector<tuple<string, int>> randomFiles(mt19937 &rng, int range, int files)
+{
+    uniform_int_distribution<int> keyword(0, range - 1);
+    vector<tuple<string, int>> inp;
+    for (int i = 0; i < files; i++) inp.emplace_back("ID" + to_string(i), keyword(rng));
+    return inp;
+}
+
+// The first non-empty node of rangeCoverPrefix(b) ends at (files with keyword < b) - 1, and
+// no node is non-empty when no file lies below b
+static void checkPrefixRanks(vector<tuple<string, int>> inp, int range)
+{
+    vector<int> keywords;
+    for (const auto &entry : inp) keywords.push_back(get<1>(entry));
+    sort(keywords.begin(), keywords.end());
+
+    unordered_map<string, int> lastFile;
+    for (const auto &token : RangeCoverConversion(inp, range)) lastFile[get<1>(token)] = get<0>(token);
+
+    for (long long b = 0; b <= range; b++) {
+        long long below = lower_bound(keywords.begin(), keywords.end(), b) - keywords.begin();
+        long long end = -1;
+        for (const string &node : rangeCoverPrefix(b, range)) {
+            auto found = lastFile.find(node);
+            if (found != lastFile.end()) {
+                end = found->second;
+                break;
+            }
+        }
+        check(end == below - 1, "range " + to_string(range) + ", files " + to_string(inp.size()) + ", bound "
+              + to_string(b) + ": node ends at " + to_string(end) + ", expected " + to_string(below - 1));
+    }
+}
+
+// tokenCount agrees with what the conversions actually derive
+static void checkTokenCount(vector<tuple<string, int>> inp, int range)
+{
+    vector<int> keywords;
+    for (const auto &entry : inp) keywords.push_back(get<1>(entry));
+    auto flat = inp;
+    check(tokenCount(keywords, range, false) == (long long)DBConversion(flat, range).size(),
+          "flat token count, range " + to_string(range));
+    check(tokenCount(keywords, range, true) == (long long)RangeCoverConversion(inp, range).size(),
+          "range-cover token count, range " + to_string(range) + ", files " + to_string(inp.size()));
+}
+
+int main()
+{
+    mt19937 rng(20240917);
+    for (int range : {1, 2, 3, 7, 8, 9, 64, 100, 1000}) {
+        for (int files : {0, 1, 2, 5, 50, 300}) {
+            for (int round = 0; round < 5; round++) {
+                auto inp = randomFiles(rng, range, files);
+                checkPrefixRanks(inp, range);
+                checkTokenCount(inp, range);
+            }
+        }
+    }
+    // Every file on one value, and on both ends of the domain
+    checkPrefixRanks({{"ID0", 5}, {"ID1", 5}, {"ID2", 5}}, 10);
+    checkPrefixRanks({{"ID0", 0}, {"ID1", 1023}}, 1024);
+    checkTokenCount({{"ID0", 0}, {"ID1", 1023}}, 1024);
+
+    if (failures > 0) {
+        cerr << failures << " check(s) failed" << endl;
+        return EXIT_FAILURE;
+    }
+    cout << "range cover: all checks passed" << endl;
+    return EXIT_SUCCESS;
+}
@@ -0,0 +1,150 @@
+package com.example.pi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ProgressDispatcherTest {
+
+    private static final long TICK = 50;
+
+    // Runs posted ticks only when the test advances the clock
+    private static final class ManualScheduler implements ProgressDispatcher.Scheduler {
+        long now = 1000;
+        Runnable task;
+        long dueAt;
+
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            assertNull("a second tick was scheduled", this.task);
+            this.task = task;
+            this.dueAt = now + delayMs;
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            if (this.task == task) this.task = null;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+
+        void advance(long ms) {
+            now += ms;
+            while (task != null && dueAt <= now) {
+                Runnable run = task;
+                task = null;
+                run.run();
+            }
+        }
+    }
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final List<String> delivered = new ArrayList<>();
+
+    private ProgressDispatcher<Integer, String> dispatcher(int minPercentStep, int maxPerTick) {
+        return new ProgressDispatcher<>(scheduler, TICK, minPercentStep, maxPerTick,
+                (key, update) -> delivered.add(key + ":" + update));
+    }
+
+    @Test
+    public void firstUpdateIsDeliveredOnTheNextTick() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(1, 10);
+        dispatcher.publish(1, "started");
+        assertTrue(delivered.isEmpty());
+        scheduler.advance(0);
+        assertEquals(List.of("1:started"), delivered);
+    }
+
+    @Test
+    public void onlyTheNewestUpdateOfAKeyIsDelivered() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(1, 10);
+        dispatcher.publish(1, "downloading");
+        dispatcher.publish(2, "downloading");
+        dispatcher.publish(1, "decrypting");
+        scheduler.advance(0);
+
+        assertEquals(List.of("1:decrypting", "2:downloading"), delivered);
+        assertEquals(3, dispatcher.getPublishedCount());
+        assertEquals(2, dispatcher.getDeliveredCount());
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void ticksAreSpacedByTheTickInterval() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(1, 10);
+        dispatcher.publish(1, "a");
+        scheduler.advance(0);
+        dispatcher.publish(1, "b");
+        scheduler.advance(TICK - 1);
+        assertEquals(List.of("1:a"), delivered);
+        scheduler.advance(1);
+        assertEquals(List.of("1:a", "1:b"), delivered);
+    }
+
+    @Test
+    public void smallProgressStepsAreDroppedButCompletionIsNot() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(5, 10);
+        dispatcher.publishProgress(1, 10, "10%");
+        scheduler.advance(0);
+        dispatcher.publishProgress(1, 12, "12%");
+        dispatcher.publishProgress(1, 99, "99%");
+        scheduler.advance(TICK);
+        dispatcher.publishProgress(1, 100, "100%");
+        scheduler.advance(TICK);
+
+        assertEquals(List.of("1:10%", "1:99%", "1:100%"), delivered);
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void stateChangeResetsTheProgressFilter() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(5, 10);
+        dispatcher.publishProgress(1, 50, "download 50%");
+        scheduler.advance(0);
+        dispatcher.publish(1, "decrypting");
+        scheduler.advance(TICK);
+        dispatcher.publishProgress(1, 51, "decrypt 51%");
+        scheduler.advance(TICK);
+        assertEquals(List.of("1:download 50%", "1:decrypting", "1:decrypt 51%"), delivered);
+    }
+
+    @Test
+    public void aTickDeliversAtMostMaxPerTickOldestFirst() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(1, 2);
+        for (int key = 0; key < 5; key++) dispatcher.publish(key, "x");
+        scheduler.advance(0);
+        assertEquals(List.of("0:x", "1:x"), delivered);
+        scheduler.advance(TICK);
+        assertEquals(4, delivered.size());
+        scheduler.advance(TICK);
+        assertEquals(List.of("0:x", "1:x", "2:x", "3:x", "4:x"), delivered);
+        assertNull(scheduler.task);
+    }
+
+    @Test
+    public void flushDeliversEverythingAndCancelDropsIt() {
+        ProgressDispatcher<Integer, String> dispatcher = dispatcher(1, 1);
+        dispatcher.publish(1, "a");
+        dispatcher.publish(2, "b");
+        dispatcher.flush();
+        assertEquals(List.of("1:a", "2:b"), delivered);
+        assertNull(scheduler.task);
+
+        dispatcher.publish(3, "c");
+        dispatcher.cancel();
+        scheduler.advance(TICK);
+        assertEquals(2, delivered.size());
+        assertEquals(1, dispatcher.getDroppedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroPerTick() {
+        dispatcher(1, 0);
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.pi;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ResultFileCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File root;
+    private File results;
+
+    @Before
+    public void setUp() throws Exception {
+        root = temp.newFolder("result_cache");
+        results = temp.newFolder("PI_SearchResults");
+    }
+
+    private File plaintext(String name, int size) throws Exception {
+        byte[] content = new byte[size];
+        new Random(name.hashCode()).nextBytes(content);
+        File file = new File(temp.newFolder(), name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static File cached(File root, String dbName, String fileId, String name) {
+        return new File(new File(new File(root, dbName), fileId), name);
+    }
+
+    @Test
+    public void restoreCopiesTheCachedFileUnderItsName() throws Exception {
+        ResultFileCache cache = new ResultFileCache(root, 1000);
+        File a = plaintext("a.txt", 100);
+        cache.put("space", "ID1", a);
+
+        File restored = cache.restore("space", "ID1", results);
+        assertEquals(new File(results, "a.txt"), restored);
+        assertArrayEquals(Files.readAllBytes(a.toPath()), Files.readAllBytes(restored.toPath()));
+        assertNull(cache.restore("space", "ID2", results));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedFileIsEvictedFirst() throws Exception {
+        ResultFileCache cache = new ResultFileCache(root, 250);
+        cache.put("space", "ID1", plaintext("a.txt", 100));
+        cache.put("space", "ID2", plaintext("b.txt", 100));
+        // A hit makes ID1 the most recently used, so ID2 goes when ID3 arrives
+        assertNotNull(cache.restore("space", "ID1", results));
+        cache.put("space", "ID3", plaintext("c.txt", 100));
+
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(200, cache.getSizeBytes());
+        assertNull(cache.restore("space", "ID2", results));
+        assertFalse(cached(root, "space", "ID2", "b.txt").getParentFile().exists());
+        assertNotNull(cache.restore("space", "ID1", results));
+        assertNotNull(cache.restore("space", "ID3", results));
+    }
+
+    @Test
+    public void recencyComesFromModificationTimesAfterARestart() throws Exception {
+        ResultFileCache before = new ResultFileCache(root, 1000);
+        before.put("space", "ID1", plaintext("a.txt", 100));
+        before.put("space", "ID2", plaintext("b.txt", 100));
+        before.put("other", "ID3", plaintext("c.txt", 100));
+        long now = System.currentTimeMillis();
+        cached(root, "space", "ID1", "a.txt").setLastModified(now - 1000);
+        cached(root, "space", "ID2", "b.txt").setLastModified(now - 3000);
+        cached(root, "other", "ID3", "c.txt").setLastModified(now - 2000);
+
+        ResultFileCache after = new ResultFileCache(root, 1000);
+        assertEquals(300, after.getSizeBytes());
+        after.setMaxBytes(150);
+        assertEquals(1, after.getEntryCount());
+        assertNotNull(after.restore("space", "ID1", results));
+        assertNull(after.restore("space", "ID2", results));
+        assertNull(after.restore("other", "ID3", results));
+    }
+
+    @Test
+    public void fileLargerThanTheBudgetIsNotCached() throws Exception {
+        ResultFileCache cache = new ResultFileCache(root, 50);
+        cache.put("space", "ID1", plaintext("a.txt", 100));
+        assertEquals(0, cache.getEntryCount());
+        assertNull(cache.restore("space", "ID1", results));
+    }
+
+    @Test
+    public void invalidateDropsOnlyThatSpace() throws Exception {
+        ResultFileCache cache = new ResultFileCache(root, 1000);
+        cache.put("space", "ID1", plaintext("a.txt", 100));
+        cache.put("other", "ID1", plaintext("b.txt", 100));
+        cache.invalidate("space");
+
+        assertFalse(new File(root, "space").exists());
+        assertEquals(100, cache.getSizeBytes());
+        assertNull(cache.restore("space", "ID1", results));
+        assertNotNull(cache.restore("other", "ID1", results));
+    }
+
+    @Test
+    public void interruptedCopiesAreSweptOnLoad() throws Exception {
+        File leftover = cached(root, "space", "ID1", "a.txt.tmp");
+        leftover.getParentFile().mkdirs();
+        Files.write(leftover.toPath(), new byte[10]);
+
+        ResultFileCache cache = new ResultFileCache(root, 1000);
+        assertEquals(0, cache.getEntryCount());
+        assertFalse(leftover.exists());
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.pi;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SearchResultCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File root;
+    private SearchResultCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        root = temp.newFolder("search_cache");
+        cache = new SearchResultCache(root);
+    }
+
+    // Keyword token, state token and count of both params
+    private static String[][] tokens(String tag) {
+        return new String[][]{{"kw1" + tag, "st1" + tag, "3"}, {"kw2" + tag, "st2" + tag, "5"}};
+    }
+
+    private static SearchResult result(int... runs) {
+        return SearchResult.fromRuns(runs);
+    }
+
+    private static void assertSameRuns(SearchResult expected, SearchResult actual) {
+        assertNotNull(actual);
+        assertArrayEquals(expected.toArray(), actual.toArray());
+        assertEquals(expected.getRunCount(), actual.getRunCount());
+    }
+
+    private File onlyDiskEntry(String dbName) {
+        File[] files = new File(root, dbName).listFiles();
+        assertNotNull(files);
+        assertEquals(Arrays.toString(files), 1, files.length);
+        return files[0];
+    }
+
+    @Test
+    public void memoryHitReturnsTheSameResult() {
+        SearchResult result = result(2, 5, 9, 10);
+        cache.put("space", tokens("a"), result);
+        assertSame(result, cache.get("space", tokens("a")));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void entryComesBackFromDiskOnceEvictedFromMemory() {
+        SearchResult first = result(2, 5, 9, 10);
+        cache.put("space", tokens("first"), first);
+        // Push the first entry out of the 64-entry memory tier
+        for (int i = 0; i < 64; i++) cache.put("space", tokens("filler" + i), result(i, i + 1));
+
+        SearchResult fromDisk = cache.get("space", tokens("first"));
+        assertNotSame(first, fromDisk);
+        assertSameRuns(first, fromDisk);
+        // Read back into memory, so the next lookup does not touch the disk
+        assertSame(fromDisk, cache.get("space", tokens("first")));
+    }
+
+    @Test
+    public void entriesOutliveTheProcess() {
+        cache.put("space", tokens("a"), result(0, 100));
+        cache.put("space", tokens("empty"), SearchResult.EMPTY);
+        SearchResultCache restarted = new SearchResultCache(root);
+        assertSameRuns(result(0, 100), restarted.get("space", tokens("a")));
+        assertTrue(restarted.get("space", tokens("empty")).isEmpty());
+    }
+
+    @Test
+    public void disabledDiskTierIsNeitherWrittenNorRead() {
+        cache.setDiskEnabled(false);
+        cache.put("space", tokens("a"), result(1, 2));
+        assertFalse(new File(root, "space").exists());
+        assertNull(new SearchResultCache(root).get("space", tokens("a")));
+    }
+
+    @Test
+    public void differentTokensOfOneSpaceAreSeparateEntries() {
+        cache.put("space", tokens("a"), result(1, 2));
+        cache.put("space", tokens("b"), result(7, 9));
+        // Same tokens, other order of the params
+        String[][] swapped = {tokens("a")[1], tokens("a")[0]};
+        cache.put("space", swapped, result(20, 21));
+
+        assertSameRuns(result(1, 2), cache.get("space", tokens("a")));
+        assertSameRuns(result(7, 9), cache.get("space", tokens("b")));
+        assertSameRuns(result(20, 21), cache.get("space", swapped));
+        assertNull(cache.get("other", tokens("a")));
+        assertEquals(3, new File(root, "space").listFiles().length);
+    }
+
+    @Test
+    public void invalidateDropsBothTiersOfThatSpaceOnly() {
+        cache.put("space", tokens("a"), result(1, 2));
+        cache.put("other", tokens("a"), result(3, 4));
+        cache.invalidate("space");
+
+        assertFalse(new File(root, "space").exists());
+        assertNull(cache.get("space", tokens("a")));
+        assertNull(new SearchResultCache(root).get("space", tokens("a")));
+        assertSameRuns(result(3, 4), cache.get("other", tokens("a")));
+    }
+
+    @Test
+    public void truncatedDiskEntryIsAMiss() throws Exception {
+        cache.put("space", tokens("a"), result(1, 2, 5, 8));
+        File entry = onlyDiskEntry("space");
+        byte[] bytes = Files.readAllBytes(entry.toPath());
+        Files.write(entry.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertNull(new SearchResultCache(root).get("space", tokens("a")));
+        assertFalse(entry.exists());
+    }
+
+    @Test
+    public void corruptDiskEntriesAreMisses() throws Exception {
+        cache.put("space", tokens("a"), result(1, 2));
+        File entry = onlyDiskEntry("space");
+        String key = "space\u0000kw1a\u0000st1a\u00003\u0000kw2a\u0000st2a\u00005";
+
+        // Garbage, a negative or absurd run count, runs that are not ascending
+        byte[][] corrupt = {
+                new byte[]{1, 2, 3},
+                entryBytes(key, -2),
+                entryBytes(key, Integer.MAX_VALUE),
+                entryBytes(key, 2, 9, 3),
+        };
+        for (byte[] bytes : corrupt) {
+            Files.write(entry.toPath(), bytes);
+            assertNull(new SearchResultCache(root).get("space", tokens("a")));
+            assertFalse(entry.exists());
+        }
+    }
+
+    @Test
+    public void entryOfAnotherKeyUnderTheSameNameIsAMiss() throws Exception {
+        cache.put("space", tokens("a"), result(1, 2));
+        File entry = onlyDiskEntry("space");
+        Files.write(entry.toPath(), entryBytes("space\u0000something else", 2, 1, 2));
+        assertNull(new SearchResultCache(root).get("space", tokens("a")));
+    }
+
+    // Format version 1: key, run bound count, bounds
+    private byte[] entryBytes(String key, int count, int... bounds) throws Exception {
+        File file = temp.newFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(1);
+            out.writeUTF(key);
+            out.writeInt(count);
+            for (int bound : bounds) out.writeInt(bound);
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+}
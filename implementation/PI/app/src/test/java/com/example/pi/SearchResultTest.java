@@ -0,0 +1,75 @@
+package com.example.pi;
+
+import org.junit.Test;
+
+import java.util.PrimitiveIterator;
+
+import static org.junit.Assert.*;
+
+public class SearchResultTest {
+
+    private static final int[] RUNS = {2, 5, 9, 10, 20, 23};
+    private static final int[] IDS = {2, 3, 4, 9, 20, 21, 22};
+
+    @Test
+    public void sizeAndRunsComeFromThePairs() {
+        SearchResult result = SearchResult.fromRuns(RUNS);
+        assertEquals(IDS.length, result.size());
+        assertFalse(result.isEmpty());
+        assertEquals(3, result.getRunCount());
+        assertEquals(9, result.getRunStart(1));
+        assertEquals(10, result.getRunEnd(1));
+    }
+
+    @Test
+    public void getAndIndexOfAgreeWithTheExpandedIds() {
+        SearchResult result = SearchResult.fromRuns(RUNS);
+        for (int position = 0; position < IDS.length; position++) {
+            assertEquals(IDS[position], result.get(position));
+            assertEquals(position, result.indexOf(IDS[position]));
+        }
+        for (int id : new int[]{0, 1, 5, 8, 10, 19, 23, 100}) {
+            assertEquals(-1, result.indexOf(id));
+            assertFalse(result.contains(id));
+        }
+    }
+
+    @Test
+    public void iteratesAndMaterializesInAscendingOrder() {
+        SearchResult result = SearchResult.fromRuns(RUNS);
+        assertArrayEquals(IDS, result.toArray());
+
+        PrimitiveIterator.OfInt it = result.iterator();
+        for (int id : IDS) assertEquals(id, it.nextInt());
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void emptyRunsGiveTheEmptyResult() {
+        assertSame(SearchResult.EMPTY, SearchResult.fromRuns(null));
+        assertSame(SearchResult.EMPTY, SearchResult.fromRuns(new int[0]));
+        assertTrue(SearchResult.EMPTY.isEmpty());
+        assertFalse(SearchResult.EMPTY.iterator().hasNext());
+        assertEquals(0, SearchResult.EMPTY.toArray().length);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getRejectsPositionsPastTheEnd() {
+        SearchResult.fromRuns(RUNS).get(IDS.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnpairedRuns() {
+        SearchResult.fromRuns(new int[]{1, 2, 3});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyRun() {
+        SearchResult.fromRuns(new int[]{1, 1});
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlappingRuns() {
+        SearchResult.fromRuns(new int[]{1, 4, 3, 6});
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.pi;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+
+import static org.junit.Assert.*;
+
+public class SelectionModelTest {
+
+    // Matches 2, 3, 4, 9, 20, 21, 22
+    private static final SearchResult RESULT = SearchResult.fromRuns(new int[]{2, 5, 9, 10, 20, 23});
+
+    private static List<Integer> selected(SelectionModel model) {
+        List<Integer> ids = new ArrayList<>();
+        PrimitiveIterator.OfInt it = model.iterator();
+        while (it.hasNext()) ids.add(it.nextInt());
+        return ids;
+    }
+
+    @Test
+    public void onlyMatchedIdsCanBeSelected() {
+        SelectionModel model = new SelectionModel(RESULT);
+        model.setSelected(3, true);
+        model.setSelected(5, true);
+        model.setSelected(-1, true);
+        assertTrue(model.isSelected(3));
+        assertFalse(model.isSelected(5));
+        assertFalse(model.isSelected(-1));
+        assertEquals(1, model.getSelectedCount());
+    }
+
+    @Test
+    public void toggleAndRepeatedSelectKeepTheCount() {
+        SelectionModel model = new SelectionModel(RESULT);
+        model.toggle(9);
+        model.setSelected(9, true);
+        assertEquals(1, model.getSelectedCount());
+        model.toggle(9);
+        assertTrue(model.isEmpty());
+    }
+
+    @Test
+    public void rangesOnlyTouchMatchedIds() {
+        SelectionModel model = new SelectionModel(RESULT);
+        model.setSelected(4, true);
+        model.selectRange(3, 21);
+        assertEquals(List.of(3, 4, 9, 20), selected(model));
+        assertEquals(4, model.getSelectedCount());
+
+        model.deselectRange(0, 10);
+        assertEquals(List.of(20), selected(model));
+        assertEquals(1, model.getSelectedCount());
+    }
+
+    @Test
+    public void selectAllInvertAndClear() {
+        SelectionModel model = new SelectionModel(RESULT);
+        model.selectAll();
+        assertTrue(model.isAllSelected());
+        assertEquals(RESULT.size(), model.getSelectedCount());
+
+        model.deselectRange(2, 5);
+        model.invert();
+        assertEquals(List.of(2, 3, 4), selected(model));
+        assertEquals(3, model.getSelectedCount());
+
+        model.clear();
+        assertTrue(model.isEmpty());
+        assertFalse(model.isAllSelected());
+        assertFalse(model.iterator().hasNext());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        SelectionModel model = new SelectionModel(RESULT);
+        model.setSelected(2, true);
+        SelectionModel snapshot = model.copy();
+        model.setSelected(21, true);
+        snapshot.setSelected(2, false);
+
+        assertEquals(List.of(2, 21), selected(model));
+        assertTrue(snapshot.isEmpty());
+        assertSame(RESULT, snapshot.getResult());
+    }
+
+    @Test
+    public void emptyResultIsNeverAllSelected() {
+        SelectionModel model = new SelectionModel(SearchResult.EMPTY);
+        model.selectAll();
+        assertFalse(model.isAllSelected());
+        assertTrue(model.isEmpty());
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.pi;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+public class SpaceParamsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void spaceWithoutParametersKeepsTheOldFixedDomain() throws Exception {
+        SpaceParams params = SpaceParams.load(temp.newFolder());
+        assertEquals(0, params.getDeclaredDomain());
+        assertEquals(SpaceParams.DEFAULT_DOMAIN, params.getDomain());
+        assertEquals(SpaceParams.DEFAULT_DOMAIN, params.getFileCount());
+        assertEquals(SpaceParams.INDEX_FLAT, params.getIndexMode());
+        assertFalse(params.isRangeCover());
+    }
+
+    @Test
+    public void parametersSurviveAReload() throws Exception {
+        File storage = temp.newFolder();
+        SpaceParams params = SpaceParams.load(storage);
+        params.setDeclaredDomain(500);
+        params.setIndexMode(SpaceParams.INDEX_RANGE_COVER);
+        params.setIndexed(500, 42);
+
+        SpaceParams reloaded = SpaceParams.load(storage);
+        assertEquals(500, reloaded.getDeclaredDomain());
+        assertTrue(reloaded.isRangeCover());
+        assertEquals(500, reloaded.getDomain());
+        assertEquals(42, reloaded.getFileCount());
+        assertFalse(new File(storage, "space.properties.tmp").exists());
+    }
+
+    @Test
+    public void saveCreatesTheStorageDirectory() throws Exception {
+        File storage = new File(temp.getRoot(), "new_space");
+        SpaceParams.load(storage).setDeclaredDomain(10);
+        assertEquals(10, SpaceParams.load(storage).getDeclaredDomain());
+    }
+
+    @Test
+    public void clearForgetsEverything() throws Exception {
+        File storage = temp.newFolder();
+        SpaceParams.load(storage).setIndexed(7, 3);
+        SpaceParams.clear(storage);
+        assertEquals(SpaceParams.DEFAULT_DOMAIN, SpaceParams.load(storage).getDomain());
+    }
+
+    @Test
+    public void unreadableFileReadsAsNoParameters() throws Exception {
+        File storage = temp.newFolder();
+        try (FileOutputStream out = new FileOutputStream(new File(storage, "space.properties"))) {
+            out.write("domain=\\u00zz\n".getBytes("ISO-8859-1"));
+        }
+        assertEquals(SpaceParams.DEFAULT_DOMAIN, SpaceParams.load(storage).getDomain());
+    }
+
+    @Test
+    public void domainIsDeclaredOrDerivedFromTheLargestKeyword() {
+        assertEquals(1000, SpaceParams.domainFor(1000, new int[]{5, 9}));
+        assertEquals(10, SpaceParams.domainFor(0, new int[]{5, 9, 0}));
+        assertEquals(1, SpaceParams.domainFor(0, new int[0]));
+    }
+
+    @Test
+    public void rangeCoverAllowsTheLargerDomain() {
+        assertEquals(SpaceParams.MAX_DOMAIN, SpaceParams.maxDomain(SpaceParams.INDEX_FLAT));
+        assertEquals(SpaceParams.MAX_RANGE_COVER_DOMAIN, SpaceParams.maxDomain(SpaceParams.INDEX_RANGE_COVER));
+    }
+}
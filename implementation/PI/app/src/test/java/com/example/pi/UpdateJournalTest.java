@@ -0,0 +1,120 @@
+package com.example.pi;
+
+import com.example.pi.network.IndexBatchFormat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class UpdateJournalTest {
+
+    private static final int CHUNK = 4;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private UpdateJournal create(File storage) throws Exception {
+        return UpdateJournal.create(storage, "space", new String[]{"/in/a.txt", "/in/b.txt"}, new int[]{7, 3},
+                10, SpaceParams.INDEX_FLAT, CHUNK, 5);
+    }
+
+    private static byte[] chunk(int records, int fill) {
+        byte[] chunk = new byte[records * IndexBatchFormat.RECORD_SIZE];
+        Arrays.fill(chunk, (byte) fill);
+        return chunk;
+    }
+
+    @Test
+    public void reopensWithTheJobItWasCreatedFor() throws Exception {
+        File storage = temp.newFolder();
+        assertFalse(UpdateJournal.exists(storage));
+        create(storage);
+        assertTrue(UpdateJournal.exists(storage));
+
+        UpdateJournal journal = UpdateJournal.open(storage);
+        assertEquals("space", journal.getDbName());
+        assertEquals(10, journal.getDomain());
+        assertEquals(SpaceParams.INDEX_FLAT, journal.getIndexMode());
+        assertEquals(CHUNK, journal.getTokenChunkSize());
+        assertEquals(5, journal.getFileBatchSize());
+        assertArrayEquals(new String[]{"/in/a.txt", "/in/b.txt"}, journal.getInputPaths());
+        assertArrayEquals(new int[]{7, 3}, journal.getKeywords());
+        assertFalse(journal.isGenerationComplete());
+    }
+
+    @Test
+    public void chunksReadBackAsWritten() throws Exception {
+        UpdateJournal journal = create(temp.newFolder());
+        journal.appendTokenChunk(chunk(CHUNK, 1));
+        journal.appendTokenChunk(chunk(2, 2));
+        journal.markGenerationComplete(new String[0]);
+
+        assertEquals(2, journal.getCommittedChunks());
+        assertArrayEquals(chunk(CHUNK, 1), journal.readTokenChunk(0));
+        assertArrayEquals(chunk(2, 2), journal.readTokenChunk(1));
+    }
+
+    @Test
+    public void truncateDropsChunksPastTheCommittedTokens() throws Exception {
+        File storage = temp.newFolder();
+        UpdateJournal journal = create(storage);
+        for (int i = 0; i < 3; i++) journal.appendTokenChunk(chunk(CHUNK, i));
+        journal.markTokenBatchesAcked(3);
+
+        // Native code only committed the first two chunks before the process died
+        UpdateJournal resumed = UpdateJournal.open(storage);
+        resumed.truncateToCommitted(2 * CHUNK);
+        assertEquals(2, resumed.getCommittedChunks());
+        assertEquals(2, resumed.getAckedTokenBatches());
+        assertEquals(2 * CHUNK * IndexBatchFormat.RECORD_SIZE, new File(storage, "update_journal/tokens.bin").length());
+    }
+
+    @Test
+    public void acknowledgementsOnlyMoveForward() throws Exception {
+        File storage = temp.newFolder();
+        UpdateJournal journal = create(storage);
+        journal.markTokenBatchesAcked(3);
+        journal.markTokenBatchesAcked(1);
+        journal.markFilesAcked(2);
+
+        UpdateJournal reopened = UpdateJournal.open(storage);
+        assertEquals(3, reopened.getAckedTokenBatches());
+        assertEquals(2, reopened.getAckedFiles());
+    }
+
+    @Test
+    public void encryptedFilesAreReusedOnlyWhileTheyExist() throws Exception {
+        File storage = temp.newFolder();
+        UpdateJournal journal = create(storage);
+        assertFalse(journal.areFilesEncrypted());
+
+        File a = temp.newFile("ID0.txt");
+        File b = temp.newFile("ID1.txt");
+        String[] paths = {a.getPath(), b.getPath()};
+        journal.markFilesEncrypted(paths);
+
+        UpdateJournal reopened = UpdateJournal.open(storage);
+        assertTrue(reopened.areFilesEncrypted());
+        assertArrayEquals(paths, reopened.getEncryptedPaths());
+
+        assertTrue(b.delete());
+        assertFalse(reopened.areFilesEncrypted());
+    }
+
+    @Test
+    public void deleteRemovesTheJournalAndItsInputs() throws Exception {
+        File storage = temp.newFolder();
+        create(storage);
+        File input = new File(UpdateJournal.getInputDir(storage), "0_a.txt");
+        assertTrue(input.createNewFile());
+
+        UpdateJournal.open(storage).delete();
+        assertFalse(UpdateJournal.exists(storage));
+        assertFalse(input.exists());
+    }
+}
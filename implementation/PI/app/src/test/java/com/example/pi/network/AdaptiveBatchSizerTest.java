@@ -0,0 +1,114 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveBatchSizerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(3000);
+
+    private static AdaptiveBatchSizer sizer() {
+        // 10..100 in steps of 10, aiming for batches of at most a second
+        return new AdaptiveBatchSizer(10, 40, 100, 10, 1000);
+    }
+
+    @Test
+    public void fastBatchesGrowTheSizeUpToMax() {
+        AdaptiveBatchSizer sizer = sizer();
+        sizer.onSuccess(40, 4000, FAST);
+        assertEquals(50, sizer.getBatchSize());
+        for (int i = 0; i < 10; i++) sizer.onSuccess(sizer.getBatchSize(), 1000, FAST);
+        assertEquals(100, sizer.getBatchSize());
+        assertEquals(6, sizer.getIncreaseCount());
+    }
+
+    @Test
+    public void slowBatchOrFailureHalvesTheSizeDownToMin() {
+        AdaptiveBatchSizer sizer = sizer();
+        sizer.onSuccess(40, 4000, SLOW);
+        assertEquals(20, sizer.getBatchSize());
+        sizer.onFailure(20, new IOException("reset"));
+        assertEquals(10, sizer.getBatchSize());
+        sizer.onFailure(10, new IOException("reset"));
+        assertEquals(10, sizer.getBatchSize());
+        assertEquals(2, sizer.getDecreaseCount());
+        assertEquals(2, sizer.getFailureCount());
+    }
+
+    @Test
+    public void batchesCutBeforeADecreaseDoNotHalveAgain() {
+        AdaptiveBatchSizer sizer = sizer();
+        // Three batches of 40 were in flight when the link went down
+        sizer.onFailure(40, new IOException("reset"));
+        sizer.onFailure(40, new IOException("reset"));
+        sizer.onFailure(40, new IOException("reset"));
+        assertEquals(20, sizer.getBatchSize());
+        assertEquals(1, sizer.getDecreaseCount());
+        assertEquals(3, sizer.getFailureCount());
+    }
+
+    @Test
+    public void onlyABatchOfTheCurrentSizeGrowsIt() {
+        AdaptiveBatchSizer sizer = sizer();
+        // The last, smaller batch of an upload says nothing about the current size
+        sizer.onSuccess(7, 700, FAST);
+        assertEquals(40, sizer.getBatchSize());
+    }
+
+    @Test
+    public void timeoutsAreCountedApart() {
+        AdaptiveBatchSizer sizer = sizer();
+        sizer.onFailure(40, new IOException("upload failed", new SocketTimeoutException()));
+        sizer.onFailure(20, new HttpStatusException(503, "busy"));
+        assertEquals(2, sizer.getFailureCount());
+        assertEquals(1, sizer.getTimeoutCount());
+    }
+
+    @Test
+    public void reportsEveryResizeWithItsReason() {
+        List<String> resizes = new ArrayList<>();
+        AdaptiveBatchSizer sizer = sizer().setResizeListener((from, to, reason) -> resizes.add(from + "->" + to));
+        sizer.onSuccess(40, 4000, FAST);
+        sizer.onFailure(50, new IOException("reset"));
+        assertEquals(List.of("40->50", "50->25"), resizes);
+    }
+
+    @Test
+    public void tracksThroughputOfAcknowledgedBatches() {
+        AdaptiveBatchSizer sizer = sizer();
+        sizer.onSuccess(40, 1_000_000, TimeUnit.SECONDS.toNanos(1) / 2);
+        assertEquals(1_000_000, sizer.getBytes());
+        assertEquals(2_000_000, sizer.getAverageBytesPerSecond());
+        assertEquals(2_000_000, sizer.getBytesPerSecond());
+        assertEquals(500, sizer.getLatencyMs());
+        assertEquals(1, sizer.getBatchCount());
+    }
+
+    @Test
+    public void fixedSizerNeverMoves() {
+        AdaptiveBatchSizer sizer = AdaptiveBatchSizer.fixed(25);
+        sizer.onSuccess(25, 100, FAST);
+        sizer.onSuccess(25, 100, SLOW);
+        sizer.onFailure(25, new IOException("reset"));
+        assertEquals(25, sizer.getBatchSize());
+    }
+
+    @Test
+    public void initialSizeIsClampedToTheBounds() {
+        assertEquals(100, new AdaptiveBatchSizer(10, 500, 100, 10, 1000).getBatchSize());
+        assertEquals(10, new AdaptiveBatchSizer(10, 1, 100, 10, 1000).getBatchSize());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMaxBelowMin() {
+        new AdaptiveBatchSizer(10, 10, 5, 1, 1000);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class AsyncIoTest {
+
+    private static Throwable failureOf(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+        } catch (ExecutionException | CancellationException e) {
+            return e;
+        } catch (TimeoutException e) {
+            fail("future never completed");
+        }
+        fail("future completed normally");
+        return null;
+    }
+
+    @Test
+    public void supplyRunsOnThePoolAndWrapsCheckedExceptions() throws Exception {
+        assertTrue(AsyncIo.supply(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS).startsWith("pi-io-"));
+
+        IOException thrown = new IOException("offline");
+        Throwable failure = failureOf(AsyncIo.supply(() -> { throw thrown; }));
+        assertSame(thrown, AsyncIo.rootCause(failure));
+    }
+
+    @Test
+    public void pendingFutureTimesOut() throws Exception {
+        CompletableFuture<String> future = AsyncIo.withTimeout(new CompletableFuture<>(), 50, TimeUnit.MILLISECONDS);
+        Throwable cause = AsyncIo.rootCause(failureOf(future));
+        assertTrue(cause instanceof TimeoutException);
+        assertTrue(cause.getMessage().contains("50 ms"));
+    }
+
+    @Test
+    public void futureCompletedInTimeKeepsItsResult() throws Exception {
+        CompletableFuture<String> future = AsyncIo.withTimeout(new CompletableFuture<>(), 100, TimeUnit.MILLISECONDS);
+        future.complete("done");
+        Thread.sleep(200);
+        assertEquals("done", future.get());
+    }
+
+    @Test
+    public void cancelledFutureStaysCancelledPastTheDeadline() throws Exception {
+        CompletableFuture<String> future = AsyncIo.withTimeout(new CompletableFuture<>(), 50, TimeUnit.MILLISECONDS);
+        assertTrue(future.cancel(true));
+        Thread.sleep(150);
+        assertTrue(future.isCancelled());
+        assertTrue(failureOf(future) instanceof CancellationException);
+    }
+
+    @Test
+    public void timeoutReachesDependentStages() throws Exception {
+        CountDownLatch never = new CountDownLatch(1);
+        CompletableFuture<String> stage = AsyncIo.supply(() -> {
+            never.await(5, TimeUnit.SECONDS);
+            return "late";
+        });
+        CompletableFuture<Integer> query = AsyncIo.withTimeout(stage.thenApply(String::length), 50, TimeUnit.MILLISECONDS);
+        assertTrue(AsyncIo.rootCause(failureOf(query)) instanceof TimeoutException);
+        never.countDown();
+    }
+
+    @Test
+    public void rootCauseUnwrapsCompletionAndExecutionLayers() {
+        IOException cause = new IOException("reset");
+        assertSame(cause, AsyncIo.rootCause(new CompletionException(new ExecutionException(new CompletionException(cause)))));
+        assertSame(cause, AsyncIo.rootCause(cause));
+    }
+
+    @Test
+    public void rootCauseKeepsAWrapperWithoutCause() {
+        CompletionException bare = new CompletionException("no cause", null);
+        assertSame(bare, AsyncIo.rootCause(bare));
+        // Other wrappers are not unwrapped
+        RuntimeException wrapper = new RuntimeException(new IOException());
+        assertSame(wrapper, AsyncIo.rootCause(wrapper));
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchUploadPipelineTest {
+
+    @Test
+    public void reportsCompletionsInSubmissionOrder() throws Exception {
+        List<Integer> reported = Collections.synchronizedList(new ArrayList<>());
+        try (BatchUploadPipeline<Integer> pipeline = new BatchUploadPipeline<>(4,
+                (index, batch) -> Thread.sleep(20 - batch * 2), // later batches finish first
+                reported::add)) {
+            for (int i = 0; i < 8; i++) pipeline.submit(i);
+            pipeline.awaitCompletion();
+            assertEquals(8, pipeline.getCompletedInOrder());
+        }
+        for (int i = 1; i < reported.size(); i++) {
+            assertTrue("completion count went backwards: " + reported, reported.get(i) > reported.get(i - 1));
+        }
+        assertEquals(Integer.valueOf(8), reported.get(reported.size() - 1));
+    }
+
+    @Test
+    public void neverExceedsTheInFlightWindow() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        try (BatchUploadPipeline<Integer> pipeline = new BatchUploadPipeline<>(3, (index, batch) -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(10);
+            inFlight.decrementAndGet();
+        }, null)) {
+            for (int i = 0; i < 12; i++) pipeline.submit(i);
+            pipeline.awaitCompletion();
+        }
+        assertTrue("peak " + peak.get(), peak.get() <= 3);
+    }
+
+    @Test
+    public void submitBlocksWhileTheWindowIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        try (BatchUploadPipeline<Integer> pipeline = new BatchUploadPipeline<>(1,
+                (index, batch) -> release.await(), null)) {
+            pipeline.submit(0);
+            Thread second = new Thread(() -> {
+                try {
+                    pipeline.submit(1);
+                } catch (Exception ignored) {
+                }
+            });
+            second.start();
+            second.join(100);
+            assertTrue("second submit returned with the window full", second.isAlive());
+            release.countDown();
+            second.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(second.isAlive());
+            pipeline.awaitCompletion();
+        }
+    }
+
+    @Test
+    public void firstFailureIsRethrownAndStopsLaterBatches() throws Exception {
+        IllegalStateException boom = new IllegalStateException("boom");
+        AtomicInteger uploaded = new AtomicInteger();
+        try (BatchUploadPipeline<Integer> pipeline = new BatchUploadPipeline<>(1, (index, batch) -> {
+            if (batch == 1) throw boom;
+            uploaded.incrementAndGet();
+        }, null)) {
+            pipeline.submit(0);
+            pipeline.submit(1);
+            try {
+                pipeline.awaitCompletion();
+                fail("failure was not reported");
+            } catch (IllegalStateException e) {
+                assertSame(boom, e);
+            }
+            try {
+                pipeline.submit(2);
+                fail("submit after a failure was accepted");
+            } catch (IllegalStateException e) {
+                assertSame(boom, e);
+            }
+            assertEquals(1, pipeline.getCompletedInOrder());
+        }
+        assertEquals(1, uploaded.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyWindow() {
+        new BatchUploadPipeline<Integer>(0, (index, batch) -> { }, null);
+    }
+}
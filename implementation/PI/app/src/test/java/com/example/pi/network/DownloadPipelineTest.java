@@ -0,0 +1,156 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public class DownloadPipelineTest {
+
+    // Records what the pipeline reported for each ID
+    private static final class Recorder implements DownloadPipeline.Listener {
+        final List<Integer> downloaded = Collections.synchronizedList(new ArrayList<>());
+        final Map<Integer, File> completed = new ConcurrentHashMap<>();
+        final Map<Integer, Exception> failed = new ConcurrentHashMap<>();
+
+        @Override
+        public void onDownloaded(int id) {
+            downloaded.add(id);
+        }
+
+        @Override
+        public void onCompleted(int id, File decrypted) {
+            completed.put(id, decrypted);
+        }
+
+        @Override
+        public void onFailed(int id, Exception e) {
+            failed.put(id, e);
+        }
+    }
+
+    private static PrimitiveIterator.OfInt ids(int count) {
+        return IntStream.range(0, count).iterator();
+    }
+
+    private static File encrypted(int id) {
+        return new File("ID" + id + ".enc");
+    }
+
+    private static File decrypt(int id, File encrypted) {
+        assertEquals(encrypted(id), encrypted);
+        return new File("ID" + id + ".txt");
+    }
+
+    @Test
+    public void downloadsAndDecryptsEveryId() throws Exception {
+        Recorder recorder = new Recorder();
+        int completed;
+        try (DownloadPipeline pipeline = new DownloadPipeline(3, 2, 2,
+                DownloadPipelineTest::encrypted, DownloadPipelineTest::decrypt, recorder)) {
+            completed = pipeline.run(ids(20));
+        }
+        assertEquals(20, completed);
+        assertEquals(20, recorder.downloaded.size());
+        assertEquals(20, recorder.completed.size());
+        assertEquals(new File("ID7.txt"), recorder.completed.get(7));
+        assertTrue(recorder.failed.isEmpty());
+    }
+
+    @Test
+    public void failedFilesDoNotStopTheOthers() throws Exception {
+        Recorder recorder = new Recorder();
+        IOException lost = new IOException("lost");
+        IllegalStateException corrupt = new IllegalStateException("corrupt");
+        int completed;
+        try (DownloadPipeline pipeline = new DownloadPipeline(2, 1, 1, id -> {
+            if (id == 3) throw lost;
+            return encrypted(id);
+        }, (id, file) -> {
+            if (id == 5) throw corrupt;
+            return decrypt(id, file);
+        }, recorder)) {
+            completed = pipeline.run(ids(8));
+        }
+        assertEquals(6, completed);
+        assertSame(lost, recorder.failed.get(3));
+        assertSame(corrupt, recorder.failed.get(5));
+        assertFalse(recorder.downloaded.contains(3));
+        assertTrue(recorder.downloaded.contains(5));
+    }
+
+    @Test
+    public void batchesFetchGroupsOfIds() throws Exception {
+        Recorder recorder = new Recorder();
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        int completed;
+        try (DownloadPipeline pipeline = new DownloadPipeline(2, 2, 4, id -> {
+            throw new AssertionError("single download of " + id);
+        }, DownloadPipelineTest::decrypt, recorder)) {
+            completed = pipeline.run(ids(10), 4, (batch, handoff) -> {
+                batchSizes.add(batch.length);
+                for (int id : batch) handoff.accept(id, encrypted(id));
+            });
+        }
+        assertEquals(10, completed);
+        Collections.sort(batchSizes);
+        assertEquals(List.of(2, 4, 4), batchSizes);
+    }
+
+    @Test
+    public void idsABrokenBatchNeverHandedOverAreFetchedAlone() throws Exception {
+        Recorder recorder = new Recorder();
+        AtomicInteger singles = new AtomicInteger();
+        int completed;
+        try (DownloadPipeline pipeline = new DownloadPipeline(1, 1, 4, id -> {
+            singles.incrementAndGet();
+            return encrypted(id);
+        }, DownloadPipelineTest::decrypt, recorder)) {
+            completed = pipeline.run(ids(4), 4, (batch, handoff) -> {
+                handoff.accept(batch[0], encrypted(batch[0]));
+                handoff.accept(batch[1], encrypted(batch[1]));
+                throw new IOException("connection reset");
+            });
+        }
+        assertEquals(4, completed);
+        assertEquals(2, singles.get());
+        assertTrue(recorder.failed.isEmpty());
+    }
+
+    @Test
+    public void idsABatchFailsAreNotFetchedAgain() throws Exception {
+        Recorder recorder = new Recorder();
+        AtomicInteger singles = new AtomicInteger();
+        IOException missing = new IOException("not on the server");
+        int completed;
+        try (DownloadPipeline pipeline = new DownloadPipeline(1, 1, 4, id -> {
+            singles.incrementAndGet();
+            return encrypted(id);
+        }, DownloadPipelineTest::decrypt, recorder)) {
+            completed = pipeline.run(ids(3), 3, (batch, handoff) -> {
+                handoff.accept(0, encrypted(0));
+                handoff.fail(1, missing);
+                handoff.accept(2, encrypted(2));
+            });
+        }
+        assertEquals(2, completed);
+        assertEquals(0, singles.get());
+        assertSame(missing, recorder.failed.get(1));
+        assertFalse(recorder.downloaded.contains(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyStages() {
+        new DownloadPipeline(1, 0, 1, DownloadPipelineTest::encrypted, DownloadPipelineTest::decrypt, new Recorder());
+    }
+}
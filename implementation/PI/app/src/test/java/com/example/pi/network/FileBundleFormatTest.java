@@ -0,0 +1,157 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileBundleFormatTest {
+
+    // Builds a bundle the way server/src/utils/fileBundleFormat.js frames it
+    private static final class Bundle {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        Bundle() throws IOException {
+            out.write(FileBundleFormat.MAGIC);
+        }
+
+        Bundle file(String fileId, String fileName, byte[] body) throws IOException {
+            out.writeByte(FileBundleFormat.FRAME_FILE);
+            string(fileId);
+            string(fileName);
+            out.writeLong(body.length);
+            out.write(body);
+            return this;
+        }
+
+        Bundle missing(String fileId) throws IOException {
+            out.writeByte(FileBundleFormat.FRAME_MISSING);
+            string(fileId);
+            return this;
+        }
+
+        byte[] end() throws IOException {
+            out.writeByte(FileBundleFormat.FRAME_END);
+            return bytes.toByteArray();
+        }
+
+        byte[] cut() {
+            return bytes.toByteArray();
+        }
+
+        private void string(String value) throws IOException {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static byte[] bytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int n;
+        while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    private static FileBundleFormat.Reader reader(byte[] bundle) throws IOException {
+        return new FileBundleFormat.Reader(new ByteArrayInputStream(bundle));
+    }
+
+    @Test
+    public void readsFilesAndMissingEntriesInOrder() throws Exception {
+        byte[] first = bytes(70_000, 1);
+        byte[] empty = new byte[0];
+        FileBundleFormat.Reader reader = reader(new Bundle()
+                .file("ID3", "ID3.txt", first)
+                .missing("ID99")
+                .file("ID1", "r\u00e9sum\u00e9.txt", empty)
+                .end());
+
+        FileBundleFormat.Entry entry = reader.next();
+        assertEquals("ID3", entry.getFileId());
+        assertEquals("ID3.txt", entry.getFileName());
+        assertEquals(first.length, entry.getLength());
+        assertArrayEquals(first, readAll(entry.getBody()));
+
+        entry = reader.next();
+        assertEquals("ID99", entry.getFileId());
+        assertTrue(entry.isMissing());
+        assertNull(entry.getFileName());
+
+        entry = reader.next();
+        assertEquals("r\u00e9sum\u00e9.txt", entry.getFileName());
+        assertFalse(entry.isMissing());
+        assertEquals(-1, entry.getBody().read());
+
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void unreadBodiesAreSkippedByNext() throws Exception {
+        byte[] second = bytes(5000, 2);
+        FileBundleFormat.Reader reader = reader(new Bundle()
+                .file("ID1", "ID1.txt", bytes(100_000, 3))
+                .file("ID2", "ID2.txt", second)
+                .end());
+
+        FileBundleFormat.Entry entry = reader.next();
+        assertEquals(10, entry.getBody().read(new byte[10]));
+        entry = reader.next();
+        assertEquals("ID2", entry.getFileId());
+        assertArrayEquals(second, readAll(entry.getBody()));
+        assertNull(reader.next());
+    }
+
+    @Test
+    public void bundleCutInsideAFileFailsTheBody() throws Exception {
+        byte[] body = bytes(1000, 4);
+        byte[] whole = new Bundle().file("ID1", "ID1.txt", body).end();
+        FileBundleFormat.Reader reader = reader(Arrays.copyOf(whole, whole.length - 500));
+
+        InputStream in = reader.next().getBody();
+        try {
+            readAll(in);
+            fail("cut body read to its end");
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void bundleWithoutEndFrameFails() throws Exception {
+        FileBundleFormat.Reader reader = reader(new Bundle().missing("ID1").cut());
+        assertTrue(reader.next().isMissing());
+        reader.next();
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownMagic() throws Exception {
+        reader("PIX1".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownFrameType() throws Exception {
+        Bundle bundle = new Bundle();
+        bundle.out.writeByte(7);
+        bundle.out.writeShort(3);
+        bundle.out.writeBytes("ID1");
+        reader(bundle.cut()).next();
+    }
+}
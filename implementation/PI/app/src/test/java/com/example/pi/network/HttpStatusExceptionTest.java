@@ -0,0 +1,33 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.*;
+
+public class HttpStatusExceptionTest {
+
+    @Test
+    public void serverSideStatusesAreRetryable() {
+        for (int status : new int[]{408, 429, 500, 502, 503, 504}) {
+            assertTrue(String.valueOf(status), new HttpStatusException(status, "").isRetryable());
+        }
+    }
+
+    @Test
+    public void refusedRequestsAreNot() {
+        for (int status : new int[]{400, 401, 403, 404, 409, 413, 416}) {
+            assertFalse(String.valueOf(status), new HttpStatusException(status, "").isRetryable());
+        }
+    }
+
+    @Test
+    public void failuresWithoutAStatusAreRetryable() {
+        assertTrue(HttpStatusException.isRetryable(new SocketTimeoutException()));
+        assertTrue(HttpStatusException.isRetryable(new IOException("reset")));
+        assertTrue(HttpStatusException.isRetryable(new HttpStatusException(503, "busy")));
+        assertFalse(HttpStatusException.isRetryable(new HttpStatusException(403, "locked")));
+    }
+}
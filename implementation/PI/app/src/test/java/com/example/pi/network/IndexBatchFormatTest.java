@@ -0,0 +1,59 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexBatchFormatTest {
+
+    @Test
+    public void writesHeaderThenRecords() throws Exception {
+        byte[] records = new byte[3 * IndexBatchFormat.RECORD_SIZE];
+        new Random(1).nextBytes(records);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexBatchFormat.write(out, records, 3);
+        byte[] body = out.toByteArray();
+
+        assertEquals(IndexBatchFormat.byteLength(3), body.length);
+        ByteBuffer header = ByteBuffer.wrap(body);
+        byte[] magic = new byte[4];
+        header.get(magic);
+        assertArrayEquals(IndexBatchFormat.MAGIC, magic);
+        assertEquals(3, header.getInt());
+        assertEquals(IndexBatchFormat.KEY_SIZE, header.getShort());
+        assertEquals(IndexBatchFormat.VALUE_SIZE, header.getShort());
+        assertArrayEquals(records, Arrays.copyOfRange(body, IndexBatchFormat.HEADER_SIZE, body.length));
+    }
+
+    @Test
+    public void writesOnlyTheFirstCountRecords() throws Exception {
+        byte[] records = new byte[4 * IndexBatchFormat.RECORD_SIZE];
+        new Random(2).nextBytes(records);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexBatchFormat.write(out, records, 2);
+        byte[] body = out.toByteArray();
+
+        assertEquals(IndexBatchFormat.byteLength(2), body.length);
+        assertArrayEquals(Arrays.copyOf(records, 2 * IndexBatchFormat.RECORD_SIZE),
+                Arrays.copyOfRange(body, IndexBatchFormat.HEADER_SIZE, body.length));
+    }
+
+    @Test
+    public void emptyBatchIsHeaderOnly() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IndexBatchFormat.write(out, new byte[0], 0);
+        assertEquals(IndexBatchFormat.HEADER_SIZE, out.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCountBeyondBuffer() throws Exception {
+        IndexBatchFormat.write(new ByteArrayOutputStream(), new byte[IndexBatchFormat.RECORD_SIZE], 2);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.pi.network;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexPairsJsonBodyTest {
+
+    // Every character JSON escapes, the ones some encoders escape as well, and a surrogate pair
+    private static final String ESCAPE_WORTHY;
+
+    static {
+        StringBuilder s = new StringBuilder();
+        for (char c = 0; c < 0xa0; c++) s.append(c);
+        s.append("\u2028\u2029\u2000\u20ac\ufeff\ud83d\ude00");
+        ESCAPE_WORTHY = s.toString();
+    }
+
+    // The body as UpdateActivity built it before IndexPairsJsonBody; Base64.getEncoder() is
+    // android.util.Base64 with NO_WRAP
+    private static JSONObject legacyBody(String dbName, byte[] records, int count) {
+        JSONArray pairs = new JSONArray();
+        Base64.Encoder base64 = Base64.getEncoder();
+        for (int i = 0; i < count; i++) {
+            int offset = i * IndexBatchFormat.RECORD_SIZE;
+            byte[] key = new byte[IndexBatchFormat.KEY_SIZE];
+            byte[] value = new byte[IndexBatchFormat.VALUE_SIZE];
+            System.arraycopy(records, offset, key, 0, key.length);
+            System.arraycopy(records, offset + key.length, value, 0, value.length);
+            JSONObject pair = new JSONObject();
+            pair.put("key", base64.encodeToString(key));
+            pair.put("value", base64.encodeToString(value));
+            pairs.put(pair);
+        }
+        JSONObject body = new JSONObject();
+        body.put("dbName", dbName);
+        body.put("pairs", pairs);
+        return body;
+    }
+
+    private static String write(IndexPairsJsonBody body) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        assertEquals("contentLength() does not match the body", body.contentLength(), out.size());
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void assertSameDocument(String dbName, byte[] records, int count) throws Exception {
+        String written = write(new IndexPairsJsonBody(dbName, records, count));
+        JSONObject parsed = new JSONObject(written);
+        assertTrue("fields differ from the org.json body: " + written, legacyBody(dbName, records, count).similar(parsed));
+        assertEquals(dbName, parsed.getString("dbName"));
+        // Same member order as the org.json body, which the server never relied on anyway
+        assertTrue(written.startsWith("{\"dbName\":"));
+    }
+
+    @Test
+    public void matchesTheOrgJsonBodyForRandomRecords() throws Exception {
+        Random random = new Random(42);
+        // Enough pairs to refill the 16 KB write buffer several times
+        for (int count : new int[]{0, 1, 2, 3, 255, 1000}) {
+            byte[] records = new byte[count * IndexBatchFormat.RECORD_SIZE];
+            random.nextBytes(records);
+            assertSameDocument("space_" + count, records, count);
+        }
+    }
+
+    @Test
+    public void escapesEveryCharacterOfTheSpaceName() throws Exception {
+        byte[] records = new byte[4 * IndexBatchFormat.RECORD_SIZE];
+        new Random(7).nextBytes(records);
+        assertSameDocument(ESCAPE_WORTHY, records, 4);
+        // One at a time as well, so no character hides behind an earlier escape
+        for (int c : ESCAPE_WORTHY.codePoints().toArray()) {
+            assertSameDocument("a" + new String(Character.toChars(c)) + "b", records, 1);
+        }
+    }
+
+    @Test
+    public void base64CoversBothEndsOfTheAlphabet() throws Exception {
+        // All-zero and all-one records encode to the first and last letters, with their padding
+        byte[] records = new byte[2 * IndexBatchFormat.RECORD_SIZE];
+        Arrays.fill(records, IndexBatchFormat.RECORD_SIZE, records.length, (byte) 0xff);
+        assertSameDocument("edges", records, 2);
+    }
+
+    @Test
+    public void writesOnlyTheFirstCountRecords() throws Exception {
+        byte[] records = new byte[5 * IndexBatchFormat.RECORD_SIZE];
+        new Random(3).nextBytes(records);
+        JSONObject parsed = new JSONObject(write(new IndexPairsJsonBody("space", records, 2)));
+        assertEquals(2, parsed.getJSONArray("pairs").length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCountBeyondBuffer() {
+        new IndexPairsJsonBody("space", new byte[IndexBatchFormat.RECORD_SIZE], 2);
+    }
+}
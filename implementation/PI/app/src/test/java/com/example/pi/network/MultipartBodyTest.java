@@ -0,0 +1,132 @@
+package com.example.pi.network;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class MultipartBodyTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File file(String name, int size) throws IOException {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        File file = temp.newFile(name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    private static void append(File file, int bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[bytes]);
+        }
+    }
+
+    @Test
+    public void regularFilesGiveTheExactContentLength() throws Exception {
+        // One file larger than the 256 KB copy buffer
+        List<File> files = Arrays.asList(file("a.bin", 0), file("b.bin", 1000), file("c.bin", 600 * 1024));
+        MultipartBody body = new MultipartBody("files", files);
+        long length = body.contentLength();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<long[]> progress = new ArrayList<>();
+        body.writeTo(out, length, (sent, total) -> progress.add(new long[]{sent, total}));
+
+        assertEquals(length, out.size());
+        long[] last = progress.get(progress.size() - 1);
+        assertEquals(length, last[0]);
+        assertEquals(length, last[1]);
+    }
+
+    @Test
+    public void partsCarryTheFilesBetweenBoundaries() throws Exception {
+        File a = file("a.bin", 10);
+        File b = file("b.bin", 20);
+        MultipartBody body = new MultipartBody("files", Arrays.asList(a, b));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, body.contentLength(), null);
+
+        String boundary = body.getContentType().substring(body.getContentType().indexOf("boundary=") + 9);
+        String written = new String(out.toByteArray(), StandardCharsets.ISO_8859_1);
+        String a0 = new String(Files.readAllBytes(a.toPath()), StandardCharsets.ISO_8859_1);
+        String b0 = new String(Files.readAllBytes(b.toPath()), StandardCharsets.ISO_8859_1);
+        assertTrue(written.contains("filename=\"a.bin\"\r\nContent-Type: text/plain\r\n\r\n" + a0 + "\r\n--" + boundary + "\r\n"));
+        assertTrue(written.contains("filename=\"b.bin\"\r\nContent-Type: text/plain\r\n\r\n" + b0 + "\r\n--" + boundary + "--\r\n"));
+        assertTrue(written.endsWith("--" + boundary + "--\r\n"));
+    }
+
+    @Test
+    public void partWithoutAKnownLengthFallsBackToChunked() throws Exception {
+        File device = new File("/dev/null");
+        assumeTrue(device.exists() && !device.isFile());
+        MultipartBody body = new MultipartBody("files", Arrays.asList(file("a.bin", 10), device));
+        assertEquals(-1, body.contentLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<Long> totals = new ArrayList<>();
+        body.writeTo(out, -1, (sent, total) -> totals.add(total));
+        assertTrue(out.size() > 10);
+        assertEquals(Collections.singleton(-1L), new HashSet<>(totals));
+    }
+
+    @Test
+    public void fileThatGrewSinceTheLengthWasTakenFailsTheUpload() throws Exception {
+        File a = file("a.bin", 100);
+        MultipartBody body = new MultipartBody("files", Collections.singletonList(a));
+        long length = body.contentLength();
+        append(a, 5);
+        try {
+            body.writeTo(new ByteArrayOutputStream(), length, null);
+            fail("a body longer than its Content-Length was written");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("a.bin"));
+        }
+    }
+
+    @Test
+    public void fileThatShrankFailsTheUpload() throws Exception {
+        File a = file("a.bin", 100);
+        MultipartBody body = new MultipartBody("files", Collections.singletonList(a));
+        long length = body.contentLength();
+        Files.write(a.toPath(), new byte[40]);
+        try {
+            body.writeTo(new ByteArrayOutputStream(), length, null);
+            fail("a body shorter than its Content-Length was written");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void chunkedBodyToleratesAChangedFile() throws Exception {
+        File a = file("a.bin", 100);
+        MultipartBody body = new MultipartBody("files", Collections.singletonList(a));
+        append(a, 5);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out, -1, null);
+        assertEquals(body.contentLength() + 5, out.size());
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void missingFileIsRejectedUpFront() throws Exception {
+        new MultipartBody("files", Collections.singletonList(new File(temp.getRoot(), "gone.bin")));
+    }
+}
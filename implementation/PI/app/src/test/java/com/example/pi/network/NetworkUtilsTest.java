@@ -0,0 +1,15 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NetworkUtilsTest {
+
+    @Test
+    public void spaceNameIsEncodedIntoTheQuery() throws Exception {
+        assertEquals("http://h/api/x?dbName=plain_1", NetworkUtils.withDbName("http://h/api/x", "plain_1"));
+        assertEquals("http://h/api/x?dbName=a%26b%23c+d%3D%C3%A9",
+                NetworkUtils.withDbName("http://h/api/x", "a&b#c d=\u00e9"));
+    }
+}
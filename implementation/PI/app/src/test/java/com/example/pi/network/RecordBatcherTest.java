@@ -0,0 +1,104 @@
+package com.example.pi.network;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RecordBatcherTest {
+
+    private final List<byte[]> batches = new ArrayList<>();
+
+    // Records numbered from first, one byte value per record so batches can be told apart
+    private static byte[] chunk(int first, int records) {
+        byte[] chunk = new byte[records * IndexBatchFormat.RECORD_SIZE];
+        for (int i = 0; i < records; i++) {
+            for (int b = 0; b < IndexBatchFormat.RECORD_SIZE; b++) {
+                chunk[i * IndexBatchFormat.RECORD_SIZE + b] = (byte) (first + i);
+            }
+        }
+        return chunk;
+    }
+
+    private static int records(byte[] batch) {
+        return batch.length / IndexBatchFormat.RECORD_SIZE;
+    }
+
+    private byte[] allBatches() {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (byte[] batch : batches) all.write(batch, 0, batch.length);
+        return all.toByteArray();
+    }
+
+    @Test
+    public void smallChunksAreMergedIntoBatches() throws Exception {
+        RecordBatcher batcher = new RecordBatcher(AdaptiveBatchSizer.fixed(5), batches::add);
+        batcher.add(chunk(0, 2));
+        batcher.add(chunk(2, 2));
+        assertTrue(batches.isEmpty());
+        batcher.add(chunk(4, 2));
+        assertEquals(1, batches.size());
+        assertEquals(5, records(batches.get(0)));
+
+        batcher.flush();
+        assertEquals(2, batches.size());
+        assertEquals(1, records(batches.get(1)));
+        assertArrayEquals(chunk(0, 6), allBatches());
+    }
+
+    @Test
+    public void largeChunksAreSplit() throws Exception {
+        RecordBatcher batcher = new RecordBatcher(AdaptiveBatchSizer.fixed(4), batches::add);
+        batcher.add(chunk(0, 10));
+        batcher.flush();
+        assertEquals(3, batches.size());
+        assertEquals(4, records(batches.get(0)));
+        assertEquals(2, records(batches.get(2)));
+        assertArrayEquals(chunk(0, 10), allBatches());
+    }
+
+    @Test
+    public void chunkOfExactlyOneBatchIsPassedOnAsIs() throws Exception {
+        RecordBatcher batcher = new RecordBatcher(AdaptiveBatchSizer.fixed(3), batches::add);
+        byte[] chunk = chunk(0, 3);
+        batcher.add(chunk);
+        assertSame(chunk, batches.get(0));
+    }
+
+    @Test
+    public void followsTheSizerAsItChanges() throws Exception {
+        AdaptiveBatchSizer sizer = new AdaptiveBatchSizer(2, 4, 8, 4, 1000);
+        RecordBatcher batcher = new RecordBatcher(sizer, batches::add);
+        batcher.add(chunk(0, 4));
+        sizer.onSuccess(4, 0, 1);
+        batcher.add(chunk(4, 8));
+        batcher.flush();
+        assertEquals(List.of(4, 8), List.of(records(batches.get(0)), records(batches.get(1))));
+        assertArrayEquals(chunk(0, 12), allBatches());
+    }
+
+    @Test
+    public void countsTheChunksEachBatchCompletes() throws Exception {
+        RecordBatcher batcher = new RecordBatcher(AdaptiveBatchSizer.fixed(3), batches::add);
+        // Chunks end at records 2, 4 and 9; batches at 3, 6 and 9
+        batcher.add(chunk(0, 2));
+        batcher.add(chunk(2, 2));
+        batcher.add(chunk(4, 5));
+        assertEquals(3, batches.size());
+        assertEquals(0, batcher.chunksCompletedBy(0));
+        assertEquals(1, batcher.chunksCompletedBy(1));
+        assertEquals(2, batcher.chunksCompletedBy(2));
+        assertEquals(3, batcher.chunksCompletedBy(3));
+    }
+
+    @Test
+    public void emptyChunksAreIgnored() throws Exception {
+        RecordBatcher batcher = new RecordBatcher(AdaptiveBatchSizer.fixed(2), batches::add);
+        batcher.add(new byte[0]);
+        batcher.flush();
+        assertTrue(batches.isEmpty());
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.pi.network;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResumableDownloadTest {
+
+    private static final int SIZE = 256 * 1024;
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private ServerSocket server;
+    private Thread acceptor;
+    private String url;
+
+    // Serves one file the way Express' res.download does, with ways to misbehave. A raw socket
+    // server, so a response can really be cut off mid-body.
+    private volatile byte[] content;
+    private volatile String etag;
+    private volatile boolean honourRanges = true;
+    // The next dropsLeft responses break off after dropAfter body bytes
+    private final AtomicInteger dropsLeft = new AtomicInteger();
+    private volatile int dropAfter;
+    // The next refusalsLeft requests are closed before any answer
+    private final AtomicInteger refusalsLeft = new AtomicInteger();
+    // Called once the first response has broken off
+    private volatile Runnable afterDrop;
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> ifRanges = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void startServer() throws IOException {
+        content = bytes(SIZE, 1);
+        etag = "\"v1\"";
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    serve(socket);
+                } catch (IOException e) {
+                    // Closed by the client or by stopServer()
+                }
+            }
+        });
+        acceptor.start();
+        url = "http://127.0.0.1:" + server.getLocalPort() + "/download";
+    }
+
+    @After
+    public void stopServer() throws Exception {
+        server.close();
+        acceptor.join();
+    }
+
+    // One request per connection
+    private void serve(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        if (in.readLine() == null) return;
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+        }
+        String range = headers.get("range");
+        String ifRange = headers.get("if-range");
+        ranges.add(range);
+        ifRanges.add(ifRange);
+        // Closing without an answer is what a refused or reset reconnect looks like to the client
+        if (refusalsLeft.getAndDecrement() > 0) return;
+        refusalsLeft.set(0);
+
+        byte[] body = content;
+        int start = 0, end = body.length;
+        // A weak If-Range never matches (RFC 9110 13.1.5), so the whole body is sent
+        boolean partial = honourRanges && range != null
+                && (ifRange == null || (!ifRange.startsWith("W/") && ifRange.equals(etag)));
+        StringBuilder head = new StringBuilder(partial ? "HTTP/1.1 206 Partial Content\r\n" : "HTTP/1.1 200 OK\r\n");
+        if (partial) {
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            start = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) end = Integer.parseInt(bounds[1]) + 1;
+            head.append("Content-Range: bytes ").append(start).append('-').append(end - 1).append('/').append(body.length).append("\r\n");
+        }
+        head.append("ETag: ").append(etag).append("\r\n")
+                .append("Content-Disposition: attachment; filename=\"ID7.txt\"\r\n")
+                .append("Content-Length: ").append(end - start).append("\r\n")
+                .append("Connection: close\r\n\r\n");
+
+        int length = end - start;
+        boolean drop = dropsLeft.getAndDecrement() > 0;
+        if (drop) length = Math.min(length, dropAfter);
+        else dropsLeft.set(0);
+        OutputStream out = socket.getOutputStream();
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body, start, length);
+        out.flush();
+        if (drop && afterDrop != null) {
+            afterDrop.run();
+            afterDrop = null;
+        }
+    }
+
+    private static byte[] bytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private ResumableDownload download() {
+        return new ResumableDownload(NetworkUtils.getInstance(), url, null);
+    }
+
+    private byte[] streamed(ResumableDownload download) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals("ID7.txt", download.toStream(fileName -> out, null));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void fileResumesFromWhereTheBodyDropped() throws Exception {
+        dropsLeft.set(1);
+        dropAfter = SIZE / 3;
+        File file = download().toFile(temp.getRoot(), null);
+
+        assertEquals("ID7.txt", file.getName());
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(List.of("bytes=0-", "bytes=" + SIZE / 3 + "-" + (SIZE - 1)), ranges);
+        assertArrayEquals(new String[]{"ID7.txt"}, temp.getRoot().list());
+    }
+
+    @Test
+    public void streamResumesFromWhereTheBodyDropped() throws Exception {
+        dropsLeft.set(2);
+        dropAfter = SIZE / 4;
+        assertArrayEquals(content, streamed(download()));
+        assertEquals(List.of("bytes=" + SIZE / 4 + "-" + (SIZE - 1), "bytes=" + SIZE / 2 + "-" + (SIZE - 1)),
+                ranges.subList(1, 3));
+    }
+
+    @Test
+    public void refusedReconnectsAreRetriedWithinTheAttempts() throws Exception {
+        dropsLeft.set(1);
+        dropAfter = SIZE / 2;
+        afterDrop = () -> refusalsLeft.set(2);
+        File file = download().setMaxAttempts(4).toFile(temp.getRoot(), null);
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void refusedReconnectsFailOnceTheAttemptsRunOut() throws Exception {
+        dropsLeft.set(1);
+        dropAfter = SIZE / 2;
+        afterDrop = () -> refusalsLeft.set(Integer.MAX_VALUE);
+        try {
+            streamed(download().setMaxAttempts(2));
+            fail("download succeeded without a server");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void partialFileIsKeptForTheNextCall() throws Exception {
+        dropsLeft.set(1);
+        dropAfter = SIZE / 2;
+        try {
+            download().setMaxAttempts(1).toFile(temp.getRoot(), null);
+            fail("dropped download reported success");
+        } catch (IOException expected) {
+        }
+
+        File file = download().toFile(temp.getRoot(), null);
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals("bytes=" + SIZE / 2 + "-" + (SIZE - 1), ranges.get(ranges.size() - 1));
+    }
+
+    @Test
+    public void fullAnswerToARangeRestartsTheFile() throws Exception {
+        dropsLeft.set(1);
+        dropAfter = SIZE / 3;
+        afterDrop = () -> honourRanges = false;
+        File file = download().toFile(temp.getRoot(), null);
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void fullAnswerToARangeFailsTheStream() throws Exception {
+        dropsLeft.set(1);
+        dropAfter = SIZE / 3;
+        afterDrop = () -> honourRanges = false;
+        try {
+            streamed(download());
+            fail("stream was resumed from a full body");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("could not resume"));
+        }
+    }
+
+    @Test
+    public void fileChangedSinceTheDropIsFetchedAgainWhole() throws Exception {
+        byte[] changed = bytes(SIZE + 100, 2);
+        dropsLeft.set(1);
+        dropAfter = SIZE / 2;
+        afterDrop = () -> {
+            content = changed;
+            etag = "\"v2\"";
+        };
+        File file = download().toFile(temp.getRoot(), null);
+
+        // The If-Range mismatch answers with the whole new file, never a mix of both versions
+        assertArrayEquals(changed, Files.readAllBytes(file.toPath()));
+        assertEquals("bytes=" + SIZE / 2 + "-" + (SIZE - 1), ranges.get(1));
+    }
+
+    @Test
+    public void weakETagAloneIsNotUsedAsAValidator() throws Exception {
+        etag = "W/\"v1\"";
+        dropsLeft.set(1);
+        dropAfter = SIZE / 3;
+        File file = download().toFile(temp.getRoot(), null);
+
+        // Nothing to guard a range with, so the retry starts the file again from zero
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertEquals(Collections.nCopies(ifRanges.size(), null), ifRanges);
+        assertEquals(List.of("bytes=0-", "bytes=0-" + (SIZE - 1)), ranges);
+        assertArrayEquals(new String[]{"ID7.txt"}, temp.getRoot().list());
+    }
+
+    @Test
+    public void streamWithOnlyAWeakETagIsNotResumed() throws Exception {
+        etag = "W/\"v1\"";
+        dropsLeft.set(1);
+        dropAfter = SIZE / 3;
+        try {
+            streamed(download());
+            fail("stream was resumed without a validator");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, ranges.size());
+    }
+}
@@ -127,6 +127,30 @@ int main(int argc, char* argv[]) {
             count++;
         }
         cout << "Batch update successful: " << count << " entries" << endl;
+    } else if (opCode == 3) { // Batch Search - read keyword_token\tstate_token\tcount lines from stdin
+        string line;
+        int query = 0;
+        while (getline(cin, line)) {
+            trim(line);
+            if (line.empty()) continue;
+
+            // Results are tagged with the query's position so the caller can regroup them
+            stringstream fields(line);
+            string keyword_b64, state_b64, count_str;
+            getline(fields, keyword_b64, '\t');
+            getline(fields, state_b64, '\t');
+            getline(fields, count_str, '\t');
+
+            int c = count_str.empty() ? 0 : stoi(count_str);
+            if (c > 0) {
+                vector<string> results;
+                dsse.Search_server(make_tuple(fromBase64(keyword_b64), fromBase64(state_b64), c), results);
+                for(const auto& res : results) {
+                    cout << "RESULT:" << query << ":" << toBase64(res) << endl;
+                }
+            }
+            query++;
+        }
     } else {
         cerr << "Invalid OpCode" << endl;
         return 1;
@@ -6,11 +6,18 @@
 
 using namespace std;
 
-static const int RANGE = 100000;
+// Smallest domain that holds every keyword in inp
+int domainFor(const vector<tuple<string, int>> &inp)
+{
+    int range = 1;
+    for (const auto &entry : inp) range = max(range, get<1>(entry) + 1);
+    return range;
+}
 
-vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp)
+// Keywords must lie in [0, range); range is the space's value domain
+vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp, int range)
 {
-    vector<tuple<int, int>> res(RANGE, make_tuple(0, -1));
+    vector<tuple<int, int>> res(range, make_tuple(0, -1));
 
     if (inp.empty()) {
         return res;
@@ -42,12 +49,12 @@ vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp)
 
     //debug print 
 
-    // for(int i=0 ; i<RANGE ; i++){
+    // for(int i=0 ; i<range ; i++){
     //     cout<<i<<" - "<<get<0>(res[i])<<" : "<<get<1>(res[i])<<endl;
     // }
 
     bool flag = true;
-    for(int i=1 ; i<RANGE ; i++){
+    for(int i=1 ; i<range ; i++){
         if(get<0>(res[i]) == 0 && get<1>(res[i]) == -1){
             if(flag){
                 get<0>(res[i]) = get<1>(res[i-1])+1;
@@ -67,25 +74,26 @@ vector<tuple<int, int>> esGen(vector<tuple<string, int>> &inp)
 
     // cout<<"\nafter post processing\n"<<endl;
     
-    // for(int i=0 ; i<RANGE ; i++){
+    // for(int i=0 ; i<range ; i++){
     //     cout<<i<<" - "<<get<0>(res[i])<<" : "<<get<1>(res[i])<<endl;
     // }
 
     return res;
 }
 
-vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp){
+// Two (index, keyword) pairs per value of the domain, so 2 * range tokens in all
+vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp, int range){
     vector<tuple<int, int>> res;
-    res.reserve(RANGE*2);
+    res.reserve(range*2);
 
-    auto res1 = esGen(inp);
+    auto res1 = esGen(inp, range);
 
     //debug print
     // for(int i=0 ; i<res1.size() ; i++){
     //     cout<<i<<" - "<<get<0>(res1[i])<<" : "<<get<1>(res1[i])<<endl;
     // }
 
-    for(int i=0 ; i<RANGE ; i++){
+    for(int i=0 ; i<range ; i++){
         res.emplace_back(get<0>(res1[i]), i);
         res.emplace_back(get<1>(res1[i]), i);
     }
@@ -103,7 +111,7 @@ vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp){
 //         {"ID6", 22},
 //         {"ID7", 18}
 //     };
-//     auto res = DBConversion(inp);
+//     auto res = DBConversion(inp, domainFor(inp));
 
 //     //debug print
 //     for(int i=0 ; i<res.size() ; i++){
@@ -2,6 +2,7 @@ const fs = require('fs');
 const path = require('path');
 const multer = require('multer');
 const DBSpace = require('../models/DBSpace');
+const { MAX_BUNDLE_FILES, MAX_FILE_ID_BYTES, writeFileBundle } = require('../utils/fileBundleFormat');
 
 // We need a custom storage engine or dynamic destination for multer
 // but standard multer usage requires middleware setup in routes.
@@ -119,7 +120,8 @@ const downloadFile = async (req, res) => {
                 console.error('Download error:', err);
                 // Response might have partially sent, so checks are limited here
                 if (!res.headersSent) {
-                    res.status(500).json({ message: 'Error downloading file' });
+                    // Keep 416 for ranges past the end so resuming clients can tell the file changed
+                    res.status(err.status || 500).json({ message: 'Error downloading file' });
                 }
             }
         });
@@ -130,4 +132,49 @@ const downloadFile = async (req, res) => {
     }
 };
 
-module.exports = { upload, uploadFiles, getFiles, downloadFile };
+// Several files in one streamed application/x-pi-file-bundle response, in request order;
+// IDs without a file get a missing frame instead of failing the whole request
+const downloadFiles = async (req, res) => {
+    const { dbName, fileIds } = req.body;
+    const user = req.user;
+
+    if (!dbName || !Array.isArray(fileIds) || fileIds.length === 0 || fileIds.some(id => typeof id !== 'string' || !id)) {
+        return res.status(400).json({ message: 'dbName and fileIds (array of IDs, e.g. ["ID0", "ID1"]) are required' });
+    }
+    if (fileIds.length > MAX_BUNDLE_FILES) {
+        return res.status(400).json({ message: `At most ${MAX_BUNDLE_FILES} files per request` });
+    }
+    if (fileIds.some(id => Buffer.byteLength(id, 'utf8') > MAX_FILE_ID_BYTES)) {
+        return res.status(400).json({ message: `File IDs are at most ${MAX_FILE_ID_BYTES} bytes` });
+    }
+
+    try {
+        const space = await DBSpace.findOne({ owner: user._id, dbName: dbName });
+        if (!space) {
+            return res.status(404).json({ message: 'Space not found' });
+        }
+
+        // Same matching as downloadFile, against one directory listing for the whole bundle
+        const files = fs.readdirSync(space.path);
+        const entries = fileIds.map(fileId => {
+            const actualFileName = files.find(f => f.startsWith(fileId + ".") || f === fileId);
+            return {
+                fileId,
+                fileName: actualFileName,
+                filePath: actualFileName ? path.join(space.path, actualFileName) : null,
+            };
+        });
+
+        await writeFileBundle(res, entries);
+    } catch (error) {
+        console.error('Bundle download error:', error);
+        if (!res.headersSent) {
+            res.status(500).json({ message: 'Server Error downloading files' });
+        } else {
+            // Without the end frame the client knows the bundle is incomplete
+            res.destroy();
+        }
+    }
+};
+
+module.exports = { upload, uploadFiles, getFiles, downloadFile, downloadFiles };
@@ -1,4 +1,5 @@
 const rocksdbService = require('../services/rocksdbService');
+const { decodeIndexBatch } = require('../utils/indexBatchFormat');
 const DBSpace = require('../models/DBSpace');
 const fs = require('fs');
 const path = require('path');
@@ -33,6 +34,32 @@ const getIndexValue = async (req, res) => {
     }
 };
 
+const getIndexValues = async (req, res) => {
+    // Batched Search: several keyword searches answered in one round trip
+    // Body: { dbName, queries: [{keyword_token, state_token, count}, ...] }
+    // Response: { results: [[...], ...] } in query order; count 0 yields an empty list
+    const { dbName, queries } = req.body;
+
+    if (!dbName || !Array.isArray(queries) || queries.length === 0) {
+        return res.status(400).json({ message: 'Missing required parameters: dbName, queries (array of {keyword_token, state_token, count})' });
+    }
+    const invalid = queries.some(q => !q || !/^\d+$/.test(String(q.count))
+        || (Number(q.count) > 0 && (!q.keyword_token || !q.state_token)));
+    if (invalid) {
+        return res.status(400).json({ message: 'Each query needs keyword_token, state_token and a non-negative count' });
+    }
+
+    try {
+        const dbPath = await getDbPath(req.user, dbName);
+
+        const results = await rocksdbService.searchIndexBatch(dbPath, queries);
+        res.json({ results });
+    } catch (error) {
+        console.error(error);
+        res.status(500).json({ message: error.message || 'Error searching index' });
+    }
+};
+
 const saveIndexValue = async (req, res) => {
     // mapped to Update functionality
     // Body: { dbName, key, value }
@@ -74,4 +101,35 @@ const bulkSaveIndexValue = async (req, res) => {
     }
 };
 
-module.exports = { getIndexValue, saveIndexValue, bulkSaveIndexValue };
+const bulkSaveIndexBinary = async (req, res) => {
+    // Binary variant of bulkSaveIndexValue
+    // Query: ?dbName=x, Body: application/x-pi-index-batch (see utils/indexBatchFormat.js)
+    const { dbName } = req.query;
+
+    if (!dbName || !Buffer.isBuffer(req.body)) {
+        return res.status(400).json({ message: 'Missing required parameters: dbName query and binary index batch body' });
+    }
+
+    let pairs;
+    try {
+        pairs = decodeIndexBatch(req.body).pairs;
+    } catch (error) {
+        return res.status(400).json({ message: error.message });
+    }
+    if (pairs.length === 0) {
+        return res.status(400).json({ message: 'Index batch contains no records' });
+    }
+
+    try {
+        const dbPath = await getDbPath(req.user, dbName, true);
+
+        const result = await rocksdbService.bulkUpdateIndex(dbPath, pairs);
+        console.log(`[BulkUpdateBinary] ${pairs.length} entries saved to ${dbName}: ${result}`);
+        res.json({ message: `Batch update successful: ${pairs.length} entries`, result });
+    } catch (error) {
+        console.error(error);
+        res.status(500).json({ message: error.message || 'Error in bulk update' });
+    }
+};
+
+module.exports = { getIndexValue, getIndexValues, saveIndexValue, bulkSaveIndexValue, bulkSaveIndexBinary };
@@ -1,11 +1,12 @@
 const express = require('express');
 const router = express.Router();
 const { protect } = require('../middlewares/authMiddleware');
+const { CONTENT_TYPE: INDEX_BATCH_TYPE } = require('../utils/indexBatchFormat');
 
 const { registerUser, loginUser, logoutUser } = require('../controllers/authController');
 const { createSpace, deleteSpace, getSpaces, lockSpace } = require('../controllers/spaceController');
-const { getIndexValue, saveIndexValue, bulkSaveIndexValue } = require('../controllers/indexController');
-const { upload, uploadFiles, getFiles, downloadFile } = require('../controllers/fileController');
+const { getIndexValue, getIndexValues, saveIndexValue, bulkSaveIndexValue, bulkSaveIndexBinary } = require('../controllers/indexController');
+const { upload, uploadFiles, getFiles, downloadFile, downloadFiles } = require('../controllers/fileController');
 
 // Auth Routes
 router.post('/register', registerUser); // Optional but helpful
@@ -20,12 +21,15 @@ router.post('/lock-space', protect, lockSpace);
 
 // Index Routes (RocksDB)
 router.get('/get-index_value', protect, getIndexValue);
+router.post('/get-index_values', protect, getIndexValues);
 router.post('/save-index_value', protect, saveIndexValue);
 router.post('/bulk-save-index_value', protect, bulkSaveIndexValue);
+router.post('/bulk-save-index_value-bin', protect, express.raw({ type: INDEX_BATCH_TYPE, limit: '50mb' }), bulkSaveIndexBinary);
 
 // File Routes
 router.post('/upload_files', protect, upload.array('files'), uploadFiles);
 router.get('/get-files', protect, getFiles);
 router.get('/download-file', protect, downloadFile);
+router.post('/download-files', protect, downloadFiles);
 
 module.exports = router;
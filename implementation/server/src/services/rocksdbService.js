@@ -63,6 +63,47 @@ const searchIndex = async (dbPath, keywordToken, stateToken, count) => {
     return results;
 };
 
+const searchIndexBatch = async (dbPath, queries) => {
+    // OpCode 3: Batch Search
+    // Feeds keyword_token\tstate_token\tcount lines via stdin to a single C++ process,
+    // which answers with "RESULT:<query index>:<value>" lines
+    return new Promise((resolve, reject) => {
+        const proc = spawn(EXE_PATH, [dbPath, '3']);
+
+        let stdoutData = '';
+        let stderrData = '';
+
+        proc.stdout.on('data', (data) => {
+            stdoutData += data.toString();
+        });
+
+        proc.stderr.on('data', (data) => {
+            stderrData += data.toString();
+        });
+
+        proc.on('close', (code) => {
+            if (code !== 0) {
+                return reject(new Error(`DSSE Batch Search exited with code ${code}: ${stderrData}`));
+            }
+            const results = queries.map(() => []);
+            for (const line of stdoutData.split('\n')) {
+                const match = /^RESULT:(\d+):(.*)$/.exec(line.trim());
+                if (match && results[Number(match[1])]) results[Number(match[1])].push(match[2]);
+            }
+            resolve(results);
+        });
+
+        proc.on('error', (err) => {
+            reject(err);
+        });
+
+        for (const query of queries) {
+            proc.stdin.write(`${query.keyword_token}\t${query.state_token}\t${query.count}\n`);
+        }
+        proc.stdin.end();
+    });
+};
+
 const bulkUpdateIndex = async (dbPath, pairs) => {
     // OpCode 2: Batch Update
     // Feeds key\tvalue pairs via stdin to a single C++ process
@@ -103,5 +144,6 @@ const bulkUpdateIndex = async (dbPath, pairs) => {
 module.exports = {
     updateIndex,
     searchIndex,
+    searchIndexBatch,
     bulkUpdateIndex
 };
@@ -0,0 +1,128 @@
+// Streamed multi-file download format (application/x-pi-file-bundle).
+// Mirrors com.example.pi.network.FileBundleFormat on the Android client:
+//
+//   magic     4 bytes   "PIF1"
+//   frames, one per requested file in request order, then an end frame:
+//     type      1 byte    0 = file, 1 = missing, 2 = end of bundle
+//     idLen     2 bytes   length of the fileId, big-endian (file and missing frames)
+//     fileId    idLen bytes, UTF-8
+//     nameLen   2 bytes   length of the stored file name, big-endian (file frames only)
+//     name      nameLen bytes, UTF-8
+//     length    8 bytes   body length, big-endian (file frames only)
+//     body      length bytes of the file as stored
+//
+// Every file frame announces its length up front, so the client can hand a file on as soon
+// as its last byte arrives; the end frame tells a complete bundle from a cut connection.
+
+const fs = require('fs');
+
+const CONTENT_TYPE = 'application/x-pi-file-bundle';
+const MAGIC = Buffer.from('PIF1', 'ascii');
+const FRAME_FILE = 0;
+const FRAME_MISSING = 1;
+const FRAME_END = 2;
+// Most files one request may ask for
+const MAX_BUNDLE_FILES = 1000;
+// Longest fileId, in UTF-8 bytes, one request may name; frames store lengths in 16 bits
+const MAX_FILE_ID_BYTES = 255;
+const MAX_FRAME_STRING_BYTES = 0xffff;
+
+const idHeader = (type, fileId) => {
+    const id = Buffer.from(fileId, 'utf8');
+    const header = Buffer.alloc(3);
+    header.writeUInt8(type, 0);
+    header.writeUInt16BE(id.length, 1);
+    return Buffer.concat([header, id]);
+};
+
+const fileHeader = (fileId, fileName, length) => {
+    const name = Buffer.from(fileName, 'utf8');
+    const tail = Buffer.alloc(2 + name.length + 8);
+    tail.writeUInt16BE(name.length, 0);
+    name.copy(tail, 2);
+    tail.writeBigUInt64BE(BigInt(length), 2 + name.length);
+    return Buffer.concat([idHeader(FRAME_FILE, fileId), tail]);
+};
+
+// Waits for the socket to take more data when write() reports a full buffer
+const write = (res, chunk) => new Promise((resolve, reject) => {
+    if (res.destroyed) return reject(new Error('Client closed the connection'));
+    if (res.write(chunk)) return resolve();
+    const onDrain = () => { res.off('close', onClose); resolve(); };
+    const onClose = () => { res.off('drain', onDrain); reject(new Error('Client closed the connection')); };
+    res.once('drain', onDrain);
+    res.once('close', onClose);
+});
+
+// Streams entries [{ fileId, filePath, fileName }] (filePath null for a missing file) as one
+// bundle. Files are read one at a time with backpressure, so memory use does not grow with
+// the bundle. Resolves once the end frame is written. An ID or name too long for its frame is
+// refused before the status line goes out, so the caller can still answer with an error.
+const writeFileBundle = async (res, entries) => {
+    for (const entry of entries) {
+        for (const value of [entry.fileId, entry.fileName]) {
+            if (value && Buffer.byteLength(value, 'utf8') > MAX_FRAME_STRING_BYTES) {
+                throw new RangeError(`File bundle cannot frame a ${Buffer.byteLength(value, 'utf8')}-byte ID or name`);
+            }
+        }
+    }
+    res.status(200);
+    res.setHeader('Content-Type', CONTENT_TYPE);
+    await write(res, MAGIC);
+    for (const entry of entries) {
+        if (!entry.filePath) {
+            await write(res, idHeader(FRAME_MISSING, entry.fileId));
+            continue;
+        }
+        const { size } = await fs.promises.stat(entry.filePath);
+        await write(res, fileHeader(entry.fileId, entry.fileName, size));
+        for await (const chunk of fs.createReadStream(entry.filePath, { highWaterMark: 256 * 1024 })) {
+            await write(res, chunk);
+        }
+    }
+    await write(res, Buffer.from([FRAME_END]));
+    res.end();
+};
+
+// Decodes a complete bundle into [{ fileId, fileName, body }] and [fileId] of missing files;
+// used by the verification scripts to play the client. Throws if the end frame is missing.
+const decodeFileBundle = (buffer) => {
+    if (buffer.length < MAGIC.length || !buffer.subarray(0, MAGIC.length).equals(MAGIC)) {
+        throw new Error('File bundle has an unknown magic');
+    }
+    const files = [];
+    const missing = [];
+    let offset = MAGIC.length;
+    const need = (n) => {
+        if (offset + n > buffer.length) throw new Error(`File bundle is truncated at byte ${offset}`);
+    };
+    while (true) {
+        need(1);
+        const type = buffer.readUInt8(offset++);
+        if (type === FRAME_END) break;
+        need(2);
+        const idLength = buffer.readUInt16BE(offset);
+        need(2 + idLength);
+        const fileId = buffer.toString('utf8', offset + 2, offset + 2 + idLength);
+        offset += 2 + idLength;
+        if (type === FRAME_MISSING) {
+            missing.push(fileId);
+            continue;
+        }
+        if (type !== FRAME_FILE) throw new Error(`File bundle has an unknown frame type ${type}`);
+        need(2);
+        const nameLength = buffer.readUInt16BE(offset);
+        need(2 + nameLength + 8);
+        const fileName = buffer.toString('utf8', offset + 2, offset + 2 + nameLength);
+        offset += 2 + nameLength;
+        const length = Number(buffer.readBigUInt64BE(offset));
+        offset += 8;
+        need(length);
+        files.push({ fileId, fileName, body: buffer.subarray(offset, offset + length) });
+        offset += length;
+    }
+    if (offset !== buffer.length) throw new Error('File bundle has trailing bytes after the end frame');
+    return { files, missing };
+};
+
+module.exports = { CONTENT_TYPE, MAX_BUNDLE_FILES, MAX_FILE_ID_BYTES, writeFileBundle, decodeFileBundle };
@@ -0,0 +1,69 @@
+// Reference codec for the binary bulk index upload format (application/x-pi-index-batch).
+// Mirrors com.example.pi.network.IndexBatchFormat on the Android client:
+//
+//   magic     4 bytes   "PIX1"
+//   count     4 bytes   number of records, big-endian
+//   keyLen    2 bytes   length of every u, big-endian (32)
+//   valueLen  2 bytes   length of every e, big-endian (32)
+//   records   count * (keyLen + valueLen) bytes, each u immediately followed by its e
+
+const CONTENT_TYPE = 'application/x-pi-index-batch';
+const MAGIC = Buffer.from('PIX1', 'ascii');
+const HEADER_SIZE = 12;
+
+// Decodes a batch into the same [{ key, value }] Base64 pairs the JSON endpoint receives,
+// so both upload modes end up in the same dsse_server batch update.
+const decodeIndexBatch = (buffer) => {
+    if (!Buffer.isBuffer(buffer) || buffer.length < HEADER_SIZE) {
+        throw new Error('Index batch is truncated: missing header');
+    }
+    if (!buffer.subarray(0, 4).equals(MAGIC)) {
+        throw new Error('Index batch has an unknown magic');
+    }
+
+    const count = buffer.readUInt32BE(4);
+    const keyLength = buffer.readUInt16BE(8);
+    const valueLength = buffer.readUInt16BE(10);
+    const recordSize = keyLength + valueLength;
+
+    if (keyLength === 0 || valueLength === 0) {
+        throw new Error('Index batch declares empty keys or values');
+    }
+    if (buffer.length !== HEADER_SIZE + count * recordSize) {
+        throw new Error(`Index batch length mismatch: expected ${HEADER_SIZE + count * recordSize} bytes, got ${buffer.length}`);
+    }
+
+    const pairs = new Array(count);
+    for (let i = 0, offset = HEADER_SIZE; i < count; i++, offset += recordSize) {
+        pairs[i] = {
+            key: buffer.toString('base64', offset, offset + keyLength),
+            value: buffer.toString('base64', offset + keyLength, offset + recordSize),
+        };
+    }
+    return { keyLength, valueLength, pairs };
+};
+
+// Encodes [{ key, value }] Base64 pairs; used by the verification scripts to play the client.
+const encodeIndexBatch = (pairs) => {
+    const keys = pairs.map(p => Buffer.from(p.key, 'base64'));
+    const values = pairs.map(p => Buffer.from(p.value, 'base64'));
+    const keyLength = keys.length ? keys[0].length : 32;
+    const valueLength = values.length ? values[0].length : 32;
+
+    const header = Buffer.alloc(HEADER_SIZE);
+    MAGIC.copy(header, 0);
+    header.writeUInt32BE(pairs.length, 4);
+    header.writeUInt16BE(keyLength, 8);
+    header.writeUInt16BE(valueLength, 10);
+
+    const chunks = [header];
+    for (let i = 0; i < pairs.length; i++) {
+        if (keys[i].length !== keyLength || values[i].length !== valueLength) {
+            throw new Error('All records in a batch must share key and value lengths');
+        }
+        chunks.push(keys[i], values[i]);
+    }
+    return Buffer.concat(chunks);
+};
+
+module.exports = { CONTENT_TYPE, HEADER_SIZE, decodeIndexBatch, encodeIndexBatch };
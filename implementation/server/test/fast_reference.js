@@ -0,0 +1,79 @@
+// Reference implementation of the FAST primitives used by the app (Update_client) and by
+// dsse_server (Search_server), for stand-in endpoints and verification scripts.
+// Byte layouts match implementation/PI/app/src/main/cpp/Update.cpp and cpp/Search.cpp.
+const crypto = require('crypto');
+
+const ZERO_IV = Buffer.alloc(16);
+
+const sha256 = (data) => crypto.createHash('sha256').update(data).digest();
+const shake128 = (data, length) => crypto.createHash('shake128', { outputLength: length }).update(data).digest();
+const xor = (a, b) => Buffer.from(a.map((byte, i) => byte ^ b[i]));
+
+// AES-128-CBC with a zero IV and no padding, as encryptAES/decryptAES in Utilities.cpp
+const aesEncrypt = (key, data) => {
+    const cipher = crypto.createCipheriv('aes-128-cbc', key, ZERO_IV).setAutoPadding(false);
+    return Buffer.concat([cipher.update(data), cipher.final()]);
+};
+const aesDecrypt = (key, data) => {
+    const decipher = crypto.createDecipheriv('aes-128-cbc', key, ZERO_IV).setAutoPadding(false);
+    return Buffer.concat([decipher.update(data), decipher.final()]);
+};
+
+// Client side: a Sigma map (keyword -> {st, c}) plus the secret key
+const createClient = () => ({ secretKey: crypto.randomBytes(16), sigma: new Map() });
+
+// Update_client: returns the { key, value } pair (Base64) to store on the server
+const clientUpdate = (client, keyword, ind) => {
+    const tKeyword = aesEncrypt(client.secretKey, sha256(String(keyword)));
+    const state = client.sigma.get(String(keyword)) || { st: crypto.randomBytes(16), c: 0 };
+
+    const k = crypto.randomBytes(16);
+    const stNext = aesEncrypt(k, state.st);
+    client.sigma.set(String(keyword), { st: stNext, c: state.c + 1 });
+
+    const indFixed = Buffer.alloc(15);
+    Buffer.from(String(ind)).copy(indFixed, 0, 0, 15);
+    const plain = Buffer.concat([indFixed, Buffer.from('1'), k]);
+    const seed = Buffer.concat([tKeyword, stNext]);
+    return { key: sha256(seed).toString('base64'), value: xor(plain, shake128(seed, 32)).toString('base64') };
+};
+
+// Search_client: { keyword_token, state_token, count } as sent to /get-index_value
+const clientSearchToken = (client, keyword) => {
+    const state = client.sigma.get(String(keyword));
+    if (!state) return { keyword_token: '', state_token: '', count: 0 };
+    return {
+        keyword_token: aesEncrypt(client.secretKey, sha256(String(keyword))).toString('base64'),
+        state_token: state.st.toString('base64'),
+        count: state.c,
+    };
+};
+
+// Search_server over an index Map<Base64 u, Base64 e>; returns Base64 ind values
+const serverSearch = (index, keywordToken, stateToken, count) => {
+    const tKeyword = Buffer.from(keywordToken, 'base64');
+    let st = Buffer.from(stateToken, 'base64');
+    const results = [];
+    const deleted = [];
+
+    for (let i = Number(count); i > 0; i--) {
+        const seed = Buffer.concat([tKeyword, st]);
+        const stored = index.get(sha256(seed).toString('base64'));
+        if (!stored) break; // chain is broken
+
+        const plain = xor(Buffer.from(stored, 'base64'), shake128(seed, 32));
+        const ind = plain.subarray(0, 15).toString('base64');
+        const op = String.fromCharCode(plain[15]);
+        if (op === '0') {
+            deleted.push(ind);
+        } else if (op === '1') {
+            const at = deleted.indexOf(ind);
+            if (at >= 0) deleted.splice(at, 1);
+            else results.push(ind);
+        }
+        st = aesDecrypt(plain.subarray(16, 32), st);
+    }
+    return results;
+};
+
+module.exports = { createClient, clientUpdate, clientSearchToken, serverSearch };
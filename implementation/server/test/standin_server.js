@@ -0,0 +1,193 @@
+// Local stand-in for the PI API used to exercise client wire formats without MongoDB,
+// JWT sessions or the dsse_server binary. Any Bearer token is accepted and every
+// space lives in memory.
+//
+// Run standalone:  node test/standin_server.js [port]
+// Or require it:   const { createStandinApp } = require('./standin_server');
+
+const express = require('express');
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+const { CONTENT_TYPE: INDEX_BATCH_TYPE, decodeIndexBatch } = require('../src/utils/indexBatchFormat');
+const { MAX_BUNDLE_FILES, MAX_FILE_ID_BYTES, writeFileBundle } = require('../src/utils/fileBundleFormat');
+const { serverSearch } = require('./fast_reference');
+
+// options.filesDir holds result files as <filesDir>/<dbName>/<fileId>.<ext>, like a space's path
+const createStandinApp = (options = {}) => {
+    const app = express();
+    const filesDir = options.filesDir || path.join(os.tmpdir(), 'pi-standin-files');
+
+    // dbName -> { index: Map<key, value>, requests: number, bytes: number, searchRequests: number }
+    const spaces = new Map();
+    const spaceFor = (dbName) => {
+        if (!spaces.has(dbName)) spaces.set(dbName, { index: new Map(), requests: 0, bytes: 0, searchRequests: 0 });
+        return spaces.get(dbName);
+    };
+
+    const requireToken = (req, res, next) => {
+        if (!req.headers.authorization || !req.headers.authorization.startsWith('Bearer')) {
+            return res.status(401).json({ message: 'Not authorized, no token' });
+        }
+        next();
+    };
+
+    const savePairs = (dbName, pairs, bytes) => {
+        const space = spaceFor(dbName);
+        for (const pair of pairs) space.index.set(pair.key, pair.value);
+        space.requests++;
+        space.bytes += bytes;
+    };
+
+    app.post('/api/bulk-save-index_value', requireToken, express.json({ limit: '50mb' }), (req, res) => {
+        const { dbName, pairs } = req.body;
+        if (!dbName || !Array.isArray(pairs) || pairs.length === 0) {
+            return res.status(400).json({ message: 'Missing required parameters: dbName, pairs (array of {key, value})' });
+        }
+        savePairs(dbName, pairs, Number(req.headers['content-length'] || 0));
+        res.json({ message: `Batch update successful: ${pairs.length} entries` });
+    });
+
+    app.post('/api/bulk-save-index_value-bin', requireToken, express.raw({ type: INDEX_BATCH_TYPE, limit: '50mb' }), (req, res) => {
+        const { dbName } = req.query;
+        if (!dbName || !Buffer.isBuffer(req.body)) {
+            return res.status(400).json({ message: 'Missing required parameters: dbName query and binary index batch body' });
+        }
+        try {
+            const { pairs } = decodeIndexBatch(req.body);
+            savePairs(dbName, pairs, req.body.length);
+            res.json({ message: `Batch update successful: ${pairs.length} entries` });
+        } catch (error) {
+            res.status(400).json({ message: error.message });
+        }
+    });
+
+    app.get('/api/get-index_value', requireToken, (req, res) => {
+        const { dbName, keyword_token, state_token, count } = req.query;
+        if (!dbName || !keyword_token || !state_token || !count) {
+            return res.status(400).json({ message: 'Missing required parameters: dbName, keyword_token, state_token, count' });
+        }
+        const space = spaceFor(dbName);
+        space.searchRequests++;
+        res.json({ results: serverSearch(space.index, keyword_token, state_token, count) });
+    });
+
+    app.post('/api/get-index_values', requireToken, express.json(), (req, res) => {
+        const { dbName, queries } = req.body;
+        if (!dbName || !Array.isArray(queries) || queries.length === 0) {
+            return res.status(400).json({ message: 'Missing required parameters: dbName, queries (array of {keyword_token, state_token, count})' });
+        }
+        const invalid = queries.some(q => !q || !/^\d+$/.test(String(q.count))
+            || (Number(q.count) > 0 && (!q.keyword_token || !q.state_token)));
+        if (invalid) {
+            return res.status(400).json({ message: 'Each query needs keyword_token, state_token and a non-negative count' });
+        }
+        const space = spaceFor(dbName);
+        space.searchRequests++;
+        res.json({
+            results: queries.map(q => Number(q.count) > 0 ? serverSearch(space.index, q.keyword_token, q.state_token, q.count) : []),
+        });
+    });
+
+    // Fault injection: cut the connection after dropAfterBytes body bytes of the next dropCount downloads
+    const injectFaults = (res) => {
+        const faults = app.locals.faults;
+        if (faults.dropCount <= 0) return;
+        faults.dropCount--;
+        let sent = 0;
+        const write = res.write.bind(res);
+        res.write = (chunk, ...args) => {
+            if (sent + chunk.length <= faults.dropAfterBytes) {
+                sent += chunk.length;
+                return write(chunk, ...args);
+            }
+            const socket = res.socket;
+            if (sent < faults.dropAfterBytes) {
+                // Destroy only once the partial chunk is flushed, so the client sees a short body
+                write(chunk.subarray(0, faults.dropAfterBytes - sent), () => socket.destroy());
+                sent = faults.dropAfterBytes;
+            }
+            return false;
+        };
+    };
+
+    const findFile = (dbName, fileId) => {
+        const spaceDir = path.join(filesDir, dbName);
+        const files = fs.existsSync(spaceDir) ? fs.readdirSync(spaceDir) : [];
+        return files.find(f => f.startsWith(fileId + '.') || f === fileId);
+    };
+
+    // Same lookup as fileController.downloadFile; res.download answers Range and If-Range requests
+    app.get('/api/download-file', requireToken, (req, res) => {
+        const { dbName, fileId } = req.query;
+        if (!dbName || !fileId) {
+            return res.status(400).json({ message: 'dbName and fileId (e.g. ID0) are required' });
+        }
+        const actualFileName = findFile(dbName, fileId);
+        if (!actualFileName) {
+            return res.status(404).json({ message: 'File not found' });
+        }
+        app.locals.downloads.push({ fileId, range: req.headers.range || null, ifRange: req.headers['if-range'] || null });
+
+        injectFaults(res);
+        res.download(path.join(filesDir, dbName, actualFileName), actualFileName, (err) => {
+            if (err && !res.headersSent) res.status(err.status || 500).json({ message: 'Error downloading file' });
+        });
+    });
+
+    // Same bundle as fileController.downloadFiles
+    app.post('/api/download-files', requireToken, express.json(), async (req, res) => {
+        const { dbName, fileIds } = req.body;
+        if (!dbName || !Array.isArray(fileIds) || fileIds.length === 0 || fileIds.some(id => typeof id !== 'string' || !id)) {
+            return res.status(400).json({ message: 'dbName and fileIds (array of IDs, e.g. ["ID0", "ID1"]) are required' });
+        }
+        if (fileIds.length > MAX_BUNDLE_FILES) {
+            return res.status(400).json({ message: `At most ${MAX_BUNDLE_FILES} files per request` });
+        }
+        if (fileIds.some(id => Buffer.byteLength(id, 'utf8') > MAX_FILE_ID_BYTES)) {
+            return res.status(400).json({ message: `File IDs are at most ${MAX_FILE_ID_BYTES} bytes` });
+        }
+        app.locals.bundles.push({ fileIds });
+
+        injectFaults(res);
+        const entries = fileIds.map(fileId => {
+            const actualFileName = findFile(dbName, fileId);
+            return {
+                fileId,
+                fileName: actualFileName,
+                filePath: actualFileName ? path.join(filesDir, dbName, actualFileName) : null,
+            };
+        });
+        try {
+            await writeFileBundle(res, entries);
+        } catch (error) {
+            if (!res.headersSent) res.status(500).json({ message: 'Error downloading files' });
+            else res.destroy();
+        }
+    });
+
+    // Introspection for verification scripts
+    app.get('/standin/spaces/:dbName', (req, res) => {
+        const space = spaces.get(req.params.dbName);
+        if (!space) return res.status(404).json({ message: 'Space not found' });
+        res.json({ entries: space.index.size, requests: space.requests, bytes: space.bytes, searchRequests: space.searchRequests });
+    });
+
+    app.locals.spaces = spaces;
+    app.locals.filesDir = filesDir;
+    // Range headers of every download request, fileIds of every bundle request,
+    // and the next dropCount downloads or bundles to cut short
+    app.locals.downloads = [];
+    app.locals.bundles = [];
+    app.locals.faults = { dropCount: 0, dropAfterBytes: 0 };
+    return app;
+};
+
+if (require.main === module) {
+    const port = Number(process.argv[2] || process.env.STANDIN_PORT || 3100);
+    createStandinApp().listen(port, () => {
+        console.log(`PI stand-in server running on port ${port}`);
+    });
+}
+
+module.exports = { createStandinApp };
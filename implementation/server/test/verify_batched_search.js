@@ -0,0 +1,84 @@
+// Verifies the batched search endpoint (POST /api/get-index_values) against per-keyword
+// GET /api/get-index_value calls using the local stand-in and the FAST reference code.
+// Usage: node test/verify_batched_search.js
+const { createStandinApp } = require('./standin_server');
+const { createClient, clientUpdate, clientSearchToken } = require('./fast_reference');
+
+const KEYWORDS = 200;
+
+function log(message) {
+    console.log(`[${new Date().toISOString()}] ${message}`);
+}
+
+async function runTest() {
+    const app = createStandinApp();
+    const server = app.listen(0);
+    const BASE_URL = `http://localhost:${server.address().port}`;
+    const headers = { 'Authorization': 'Bearer standin', 'Content-Type': 'application/json' };
+    const dbName = 'standin_search';
+    let failures = 0;
+
+    try {
+        log('--- Starting Batched Search Verification ---');
+
+        // 1. Build an index shaped like DBConversion output: two updates per keyword
+        const client = createClient();
+        const pairs = [];
+        for (let keyword = 0; keyword < KEYWORDS; keyword++) {
+            pairs.push(clientUpdate(client, keyword, keyword * 2));
+            pairs.push(clientUpdate(client, keyword, keyword * 2 + 1));
+        }
+        let res = await fetch(`${BASE_URL}/api/bulk-save-index_value`, {
+            method: 'POST', headers, body: JSON.stringify({ dbName, pairs })
+        });
+        log(`[1] Uploaded ${pairs.length} index entries, status: ${res.status}`);
+
+        // 2. Two separate GET round trips, as the client did before
+        const queries = [clientSearchToken(client, 17), clientSearchToken(client, 150)];
+        const single = [];
+        for (const q of queries) {
+            const url = `${BASE_URL}/api/get-index_value?dbName=${dbName}&keyword_token=${encodeURIComponent(q.keyword_token)}`
+                + `&state_token=${encodeURIComponent(q.state_token)}&count=${q.count}`;
+            single.push((await (await fetch(url, { headers })).json()).results);
+        }
+        const searchesBefore = app.locals.spaces.get(dbName).searchRequests;
+
+        // 3. The same two searches in one batched request
+        res = await fetch(`${BASE_URL}/api/get-index_values`, {
+            method: 'POST', headers, body: JSON.stringify({ dbName, queries })
+        });
+        const batched = (await res.json()).results;
+        const roundTrips = app.locals.spaces.get(dbName).searchRequests - searchesBefore;
+        const same = JSON.stringify(batched) === JSON.stringify(single);
+        log(`[2] Batched results match per-keyword results in ${roundTrips} round trip: ${same ? 'SUCCESS' : 'FAILURE'}`);
+        if (!same || roundTrips !== 1) failures++;
+
+        // 4. Results decode to the indices that were inserted (newest first)
+        const decoded = batched[0].map(r => Buffer.from(r, 'base64').toString().replace(/\0+$/, ''));
+        const expected = JSON.stringify(decoded) === JSON.stringify(['35', '34']);
+        log(`[3] Decoded results ${JSON.stringify(decoded)}: ${expected ? 'SUCCESS' : 'FAILURE'}`);
+        if (!expected) failures++;
+
+        // 5. Unknown keywords (count 0) give an empty list; malformed queries are rejected
+        res = await fetch(`${BASE_URL}/api/get-index_values`, {
+            method: 'POST', headers, body: JSON.stringify({ dbName, queries: [clientSearchToken(client, 'missing'), queries[1]] })
+        });
+        const withEmpty = (await res.json()).results;
+        res = await fetch(`${BASE_URL}/api/get-index_values`, {
+            method: 'POST', headers, body: JSON.stringify({ dbName, queries: [{ count: 'x' }] })
+        });
+        const edgeCases = withEmpty[0].length === 0 && withEmpty[1].length === 2 && res.status === 400;
+        log(`[4] Empty and malformed queries handled: ${edgeCases ? 'SUCCESS' : 'FAILURE'}`);
+        if (!edgeCases) failures++;
+
+        log(failures === 0 ? '--- Verification Complete: all checks passed ---' : `--- Verification Complete: ${failures} failure(s) ---`);
+    } catch (error) {
+        log('Verification Failed: ' + error);
+        failures++;
+    } finally {
+        server.close();
+        process.exitCode = failures === 0 ? 0 : 1;
+    }
+}
+
+runTest();
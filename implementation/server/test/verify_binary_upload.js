@@ -0,0 +1,79 @@
+// Verifies the binary bulk index upload format against the JSON one using the local stand-in.
+// Usage: node test/verify_binary_upload.js
+const crypto = require('crypto');
+const { createStandinApp } = require('./standin_server');
+const { CONTENT_TYPE, encodeIndexBatch, decodeIndexBatch } = require('../src/utils/indexBatchFormat');
+
+const PAIR_COUNT = 5000;
+
+function log(message) {
+    console.log(`[${new Date().toISOString()}] ${message}`);
+}
+
+async function runTest() {
+    const app = createStandinApp();
+    const server = app.listen(0);
+    const BASE_URL = `http://localhost:${server.address().port}`;
+    const headers = { 'Authorization': 'Bearer standin' };
+    let failures = 0;
+
+    try {
+        log('--- Starting Binary Index Upload Verification ---');
+
+        const pairs = Array.from({ length: PAIR_COUNT }, () => ({
+            key: crypto.randomBytes(32).toString('base64'),
+            value: crypto.randomBytes(32).toString('base64'),
+        }));
+
+        // 1. Codec round trip
+        const body = encodeIndexBatch(pairs);
+        const decoded = decodeIndexBatch(body).pairs;
+        const roundTrip = decoded.every((p, i) => p.key === pairs[i].key && p.value === pairs[i].value);
+        log(`[1] Codec round trip: ${roundTrip ? 'SUCCESS' : 'FAILURE'}`);
+        if (!roundTrip) failures++;
+
+        // 2. Truncated batches are rejected
+        try {
+            decodeIndexBatch(body.subarray(0, body.length - 1));
+            log('[2] FAILURE: truncated batch accepted');
+            failures++;
+        } catch (e) {
+            log(`[2] SUCCESS: truncated batch rejected (${e.message})`);
+        }
+
+        // 3. JSON upload
+        const jsonBody = JSON.stringify({ dbName: 'standin_json', pairs });
+        let res = await fetch(`${BASE_URL}/api/bulk-save-index_value`, {
+            method: 'POST',
+            headers: { ...headers, 'Content-Type': 'application/json' },
+            body: jsonBody
+        });
+        log(`[3] JSON upload status: ${res.status}, payload ${jsonBody.length} bytes`);
+
+        // 4. Binary upload
+        res = await fetch(`${BASE_URL}/api/bulk-save-index_value-bin?dbName=standin_bin`, {
+            method: 'POST',
+            headers: { ...headers, 'Content-Type': CONTENT_TYPE },
+            body
+        });
+        log(`[4] Binary upload status: ${res.status}, payload ${body.length} bytes (${(100 * body.length / jsonBody.length).toFixed(1)}% of JSON)`);
+
+        // 5. Both modes stored the same index
+        const jsonSpace = app.locals.spaces.get('standin_json');
+        const binSpace = app.locals.spaces.get('standin_bin');
+        const same = jsonSpace && binSpace && jsonSpace.index.size === PAIR_COUNT
+            && pairs.every(p => binSpace.index.get(p.key) === p.value);
+        log(`[5] Stored index matches across modes: ${same ? 'SUCCESS' : 'FAILURE'}`);
+        if (!same) failures++;
+
+        log(failures === 0 ? '--- Verification Complete: all checks passed ---' : `--- Verification Complete: ${failures} failure(s) ---`);
+    } catch (error) {
+        log('Verification Failed: ' + error);
+        failures++;
+    } finally {
+        server.close();
+        process.exitCode = failures === 0 ? 0 : 1;
+    }
+}
+
+runTest();
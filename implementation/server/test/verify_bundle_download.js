@@ -0,0 +1,123 @@
+// Verifies the streamed multi-file download (POST /api/download-files) against the local
+// stand-in: files come back in request order with missing IDs flagged, the response is
+// streamed rather than buffered, a cut connection is detectable, and bad requests are refused.
+// Usage: node test/verify_bundle_download.js
+const crypto = require('crypto');
+const fs = require('fs');
+const os = require('os');
+const path = require('path');
+const http = require('http');
+const { createStandinApp } = require('./standin_server');
+const { MAX_BUNDLE_FILES, MAX_FILE_ID_BYTES, decodeFileBundle, writeFileBundle } = require('../src/utils/fileBundleFormat');
+
+const SIZES = { ID1: 1500, ID2: 0, ID3: 2 * 1024 * 1024 + 7, ID4: 64 * 1024, ID5: 33 };
+
+function log(message) {
+    console.log(`[${new Date().toISOString()}] ${message}`);
+}
+
+// POST with a JSON body that resolves with whatever arrived, even if the connection is cut
+function post(url, body) {
+    return new Promise((resolve, reject) => {
+        const payload = Buffer.from(JSON.stringify(body));
+        const req = http.request(url, {
+            method: 'POST',
+            headers: { 'Authorization': 'Bearer standin', 'Content-Type': 'application/json', 'Content-Length': payload.length },
+        }, (res) => {
+            const chunks = [];
+            let firstChunkAt = null;
+            const done = (complete) => resolve({ status: res.statusCode, headers: res.headers, body: Buffer.concat(chunks), complete, firstChunkAt });
+            res.on('data', c => {
+                if (firstChunkAt === null) firstChunkAt = Date.now();
+                chunks.push(c);
+            });
+            res.on('end', () => done(true));
+            res.on('aborted', () => done(false));
+            res.on('error', () => done(false));
+        });
+        req.on('error', reject);
+        req.end(payload);
+    });
+}
+
+async function runTest() {
+    const filesDir = fs.mkdtempSync(path.join(os.tmpdir(), 'pi-bundle-'));
+    const dbName = 'bundle_space';
+    fs.mkdirSync(path.join(filesDir, dbName));
+    const contents = {};
+    for (const [fileId, size] of Object.entries(SIZES)) {
+        contents[fileId] = crypto.randomBytes(size);
+        fs.writeFileSync(path.join(filesDir, dbName, `${fileId}.txt`), contents[fileId]);
+    }
+
+    const app = createStandinApp({ filesDir });
+    const server = app.listen(0);
+    const url = `http://localhost:${server.address().port}/api/download-files`;
+    let failures = 0;
+    const check = (label, ok, detail = '') => {
+        log(`${label}: ${ok ? 'SUCCESS' : 'FAILURE'} ${detail}`);
+        if (!ok) failures++;
+    };
+
+    try {
+        log('--- Starting Bundle Download Verification ---');
+
+        // 1. Files in request order, with a missing ID flagged in place
+        const requested = ['ID3', 'ID1', 'ID99', 'ID2', 'ID5', 'ID4'];
+        const full = await post(url, { dbName, fileIds: requested });
+        const { files, missing } = decodeFileBundle(full.body);
+        const inOrder = files.map(f => f.fileId).join(',') === 'ID3,ID1,ID2,ID5,ID4';
+        const intact = files.every(f => f.fileName === `${f.fileId}.txt` && f.body.equals(contents[f.fileId]));
+        check('[1] Files in request order', full.status === 200 && inOrder && intact
+            && missing.length === 1 && missing[0] === 'ID99', `(${files.length} files, missing ${missing.join(',')})`);
+
+        // 2. Streamed: no Content-Length, so nothing was buffered to compute one
+        check('[2] Streamed response', full.headers['transfer-encoding'] === 'chunked'
+            && full.headers['content-type'] === 'application/x-pi-file-bundle', `(${full.headers['transfer-encoding']})`);
+
+        // 3. One request in place of one per file
+        const payload = Object.values(SIZES).reduce((a, b) => a + b, 0);
+        check('[3] Single request', app.locals.bundles.length === 1,
+            `(${full.body.length - payload} framing bytes for ${requested.length} IDs)`);
+
+        // 4. A cut connection leaves a bundle without its end frame
+        app.locals.faults.dropCount = 1;
+        app.locals.faults.dropAfterBytes = 300000;
+        const cut = await post(url, { dbName, fileIds: requested });
+        let truncated = false;
+        try {
+            decodeFileBundle(cut.body);
+        } catch (error) {
+            truncated = /truncated/.test(error.message);
+        }
+        check('[4] Cut bundle is detected', !cut.complete && truncated, `(cut at ${cut.body.length} bytes)`);
+
+        // 5. Malformed and oversized requests are refused
+        const empty = await post(url, { dbName, fileIds: [] });
+        const tooMany = await post(url, { dbName, fileIds: Array.from({ length: MAX_BUNDLE_FILES + 1 }, (_, i) => `ID${i}`) });
+        const longId = await post(url, { dbName, fileIds: ['ID1', 'I'.repeat(MAX_FILE_ID_BYTES + 1)] });
+        check('[5] Invalid requests', empty.status === 400 && tooMany.status === 400 && longId.status === 400,
+            `(${empty.status}, ${tooMany.status}, ${longId.status})`);
+
+        // 6. An ID too long for its frame fails before anything is sent, not halfway through the bundle
+        let statusSet = false;
+        let refused = false;
+        try {
+            await writeFileBundle({ status: () => { statusSet = true; } }, [{ fileId: 'I'.repeat(0x10000), filePath: null }]);
+        } catch (error) {
+            refused = error instanceof RangeError;
+        }
+        check('[6] Overlong ID refused up front', refused && !statusSet);
+    } catch (error) {
+        log(`FATAL: ${error.message}`);
+        failures++;
+    } finally {
+        server.close();
+        fs.rmSync(filesDir, { recursive: true, force: true });
+    }
+
+    log(failures === 0 ? '--- All bundle download checks passed ---' : `--- ${failures} check(s) failed ---`);
+    process.exit(failures === 0 ? 0 : 1);
+}
+
+runTest();
@@ -29,6 +29,33 @@ vector<tuple<string, int>> generate_random_input(int size) {
     return inp;
 }
 
+// Keyword of a converted pair: values in the flat index, node names in the range-cover one
+string keyword_of(int value) { return to_string(value); }
+string keyword_of(const string &node) { return node; }
+
+// Search token for one end of a range query. The flat index looks the value itself up. With
+// RANGE_COVER the bound is param (lower end) or param + 1 (upper end), and the token is that
+// of the rightmost node below the bound that holds a file, empty if there is none.
+void search_client(DSSE &FAST_, const string &param, bool upper, tuple<string, string, int> &s_token) {
+#ifdef RANGE_COVER
+    long long bound = stoll(param) + (upper ? 1 : 0);
+    for (const string &keyword : rangeCoverPrefix(bound)) {
+        FAST_.Search_client(keyword, s_token);
+        if (!get<0>(s_token).empty()) return;
+    }
+#else
+    FAST_.Search_client(param, s_token);
+#endif
+}
+
+// Range-cover post-processing: each result holds the last position below its bound, so the
+// matches are the positions between them and no bitmaps are needed
+size_t range_cover_matches(const vector<string> &search_result1, const vector<string> &search_result2) {
+    size_t low = search_result1.empty() ? 0 : stoull(search_result1[0]) + 1;
+    size_t high = search_result2.empty() ? 0 : stoull(search_result2[0]) + 1;
+    return high > low ? high - low : 0;
+}
+
 int main(){
     cout<<"works"<<endl;
 
@@ -50,10 +77,15 @@ int main(){
 
     cout << "============================= PI: DB Conversion =============================" << endl; 
     start = chrono::high_resolution_clock::now();
+#ifdef RANGE_COVER
+    auto res = RangeCoverConversion(inp);
+#else
     auto res = DBConversion(inp);
+#endif
     end = chrono::high_resolution_clock::now();
     elapsed = end - start;
     cout << "DB Conversion took: " << elapsed.count() << " seconds" << endl;
+    cout << "Update tokens: " << res.size() << endl;
 
     // debug print
     // for(int i=0 ; i<res.size() ; i++){
@@ -67,7 +99,7 @@ int main(){
     for(int i=0 ; i<res.size() ; i++){
         tuple<string, string> u_token;
         string ind = to_string(get<0>(res[i]));
-        string keyword = to_string(get<1>(res[i]));
+        string keyword = keyword_of(get<1>(res[i]));
         bool op = true;
         FAST_.Update_client(ind, keyword, op, u_token);
         u_List.push_back(u_token);
@@ -105,11 +137,11 @@ int main(){
         vector<string> warmup_result;
 
         // Warmup Phase (to mitigate cold start for Search 1)
-        FAST_.Search_client(param1, s_token_warmup);
+        search_client(FAST_, param1, false, s_token_warmup);
         FAST_.Search_server(s_token_warmup, warmup_result);
 
         auto start_search = chrono::high_resolution_clock::now();
-        FAST_.Search_client(param1, s_token);
+        search_client(FAST_, param1, false, s_token);
         auto end_search = chrono::high_resolution_clock::now();
         chrono::duration<double> elapsed_search1_client = end_search - start_search;
         cout << "Search 1 Client took: " << elapsed_search1_client.count() << " seconds" << endl;
@@ -121,7 +153,7 @@ int main(){
         cout << "Search 1 Server took: " << elapsed_search1_server.count() << " seconds" << endl;
 
         start_search = chrono::high_resolution_clock::now();
-        FAST_.Search_client(param2, s_token2);
+        search_client(FAST_, param2, true, s_token2);
         end_search = chrono::high_resolution_clock::now();
         chrono::duration<double> elapsed_search2_client = end_search - start_search;
         cout << "Search 2 Client took: " << elapsed_search2_client.count() << " seconds" << endl;
@@ -138,6 +170,11 @@ int main(){
 
         cout<<"============================= PI: Post Processing ============================="<<endl;
         auto start_post = chrono::high_resolution_clock::now();
+#ifdef RANGE_COVER
+        size_t matches = range_cover_matches(search_result1, search_result2);
+        auto end_post = chrono::high_resolution_clock::now();
+        cout << "Matching IDs: " << matches << endl;
+#else
         BitSequence<uint64_t> param1_L_bitmap = less_than(index_range, stoull(search_result1[1]));
         BitSequence<uint64_t> param2_L_bitmap = less_than(index_range, stoull(search_result2[1]));
         BitSequence<uint64_t> param1_GE_bitmap = param1_L_bitmap.ones_complement();
@@ -146,6 +183,7 @@ int main(){
         BitSequence<uint64_t> param2_LE_bitmap = param2_L_bitmap.bitwise_or(param2_E_bitmap);
         BitSequence<uint64_t> result_bitmap = param1_GE_bitmap.bitwise_and(param2_LE_bitmap);
         auto end_post = chrono::high_resolution_clock::now();
+#endif
         chrono::duration<double> elapsed_post = end_post - start_post;
         cout << "Post Processing took: " << elapsed_post.count() << " seconds" << endl;
         choice = 0; 
@@ -159,7 +197,7 @@ int main(){
         tuple<string, string, int> s_token;
         
         auto start_search = chrono::high_resolution_clock::now();
-        FAST_.Search_client(param1, s_token);
+        search_client(FAST_, param1, false, s_token);
         auto end_search = chrono::high_resolution_clock::now();
         chrono::duration<double> elapsed_search = end_search - start_search;
         cout << "Search 1 client took: " << elapsed_search.count() << " seconds" << endl;
@@ -177,7 +215,7 @@ int main(){
         tuple<string, string, int> s_token2;
         
         start_search = chrono::high_resolution_clock::now();
-        FAST_.Search_client(param2, s_token2);
+        search_client(FAST_, param2, true, s_token2);
         end_search = chrono::high_resolution_clock::now();
         elapsed_search = end_search - start_search;
         cout << "Search 2 client took: " << elapsed_search.count() << " seconds" << endl;
@@ -202,6 +240,11 @@ int main(){
         cout<<"============================= PI: Post Processing ============================="<<endl;
         auto start_post = chrono::high_resolution_clock::now();
 
+#ifdef RANGE_COVER
+        size_t matches = range_cover_matches(search_result1, search_result2);
+        auto end_post = chrono::high_resolution_clock::now();
+        cout << "Matching IDs: " << matches << endl;
+#else
         BitSequence<uint64_t> param1_L_bitmap = less_than(index_range, stoull(search_result1[1]));
         BitSequence<uint64_t> param2_L_bitmap = less_than(index_range, stoull(search_result2[1]));
 
@@ -231,6 +274,7 @@ int main(){
         BitSequence<uint64_t> result_bitmap = param1_GE_bitmap.bitwise_and(param2_LE_bitmap);
 
         auto end_post = chrono::high_resolution_clock::now();
+#endif
 
         // cout << "result bitmap (GE & LE) is : "; result_bitmap.print_range(0, index_range);
 
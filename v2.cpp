@@ -95,6 +95,62 @@ vector<tuple<int, int>> DBConversion(vector<tuple<string, int>> &inp){
     return res;
 }
 
+// Hierarchical (range-cover) layout. Values are grouped into dyadic nodes: node (l, j) holds
+// the values [j * 2^l, (j + 1) * 2^l) for levels l = 0 .. rangeCoverLevels(), the top one
+// being a single root over the whole RANGE. Files are sorted by keyword as in esGen, so the
+// files of a node take up consecutive positions. Each node holding at least one file gets a
+// single token recording the position of its last file; empty nodes get none.
+
+// Levels below the root: the smallest L with 2^L >= RANGE
+int rangeCoverLevels()
+{
+    int levels = 0;
+    while (levels < 31 && (1LL << levels) < RANGE) levels++;
+    return levels;
+}
+
+string rangeCoverKeyword(int level, long long node)
+{
+    return "r" + to_string(level) + ":" + to_string(node);
+}
+
+// One (index, keyword) pair per non-empty node: at most n * (L + 1) and about 2 * RANGE
+vector<tuple<int, string>> RangeCoverConversion(vector<tuple<string, int>> &inp)
+{
+    vector<tuple<int, string>> res;
+
+    sort(inp.begin(), inp.end(),
+    [](const tuple<string,int>& a,
+        const tuple<string,int>& b) {
+        return get<1>(a) < get<1>(b);
+    });
+
+    int levels = rangeCoverLevels();
+    for (int level = 0; level <= levels; level++) {
+        for (size_t i = 0; i < inp.size(); i++) {
+            long long node = get<1>(inp[i]) >> level;
+            if (i + 1 == inp.size() || (get<1>(inp[i + 1]) >> level) != node) {
+                res.emplace_back((int)i, rangeCoverKeyword(level, node));
+            }
+        }
+    }
+    return res;
+}
+
+// Keywords of the nodes that exactly cover the values [0, bound), rightmost node first: one
+// per set bit of bound, so at most L + 1 of them. The first of these that holds any file
+// ends at the number of files with a keyword below bound.
+vector<string> rangeCoverPrefix(long long bound)
+{
+    vector<string> keywords;
+    int levels = rangeCoverLevels();
+    bound = max(0LL, min(bound, 1LL << levels));
+    for (int level = 0; level <= levels; level++) {
+        if ((bound >> level) & 1) keywords.push_back(rangeCoverKeyword(level, (bound >> level) - 1));
+    }
+    return keywords;
+}
+
 // int main() {
 //     vector<tuple<string, int>> inp = {
 //         {"ID1", 22},
@@ -32,7 +32,7 @@ function renderTable(data) {
         const avgServer = (row.search_1_server_s + row.search_2_server_s) / 2;
 
         tr.innerHTML = `
-            <td>${formatNumber(row.input_index_range)}</td>
+            <td>${formatNumber(row.input_index_range)}${row.index_mode === 'range_cover' ? ' (RC)' : ''}</td>
             <td>${formatTime(row.db_conversion_time_s)}</td>
             <td>${formatTime(row.setup_time_s)}</td>
             <td>${formatTime(avgClient)}</td>
@@ -68,7 +68,7 @@ function renderCharts(data) {
 
     // Chart customization remains largely same...
     const sortedData = [...processedData].sort((a, b) => a.run - b.run);
-    const labels = sortedData.map(d => `Run #${d.run} (${formatNumber(d.input_index_range)})`);
+    const labels = sortedData.map(d => `Run #${d.run} (${formatNumber(d.input_index_range)}${d.index_mode === 'range_cover' ? ', RC' : ''})`);
 
     metrics.forEach(metric => {
         const card = document.createElement('div');